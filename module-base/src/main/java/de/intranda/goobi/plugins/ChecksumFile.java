@@ -0,0 +1,131 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Checksums of the exported images and ALTO files of an issue. The file has the format of sha256sum and md5sum, the export can be checked
+ * with these tools in the export folder.
+ */
+public class ChecksumFile {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final String algorithm;
+    // target file -> checksum as hex string, sorted by path
+    private final Map<Path, String> checksums;
+
+    public ChecksumFile(String algorithm, Map<Path, String> checksums) {
+        this.algorithm = algorithm;
+        this.checksums = Collections.unmodifiableMap(new TreeMap<>(checksums));
+    }
+
+    public Map<Path, String> getChecksums() {
+        return checksums;
+    }
+
+    /**
+     * Returns the file extension used by the tools of the algorithm, e.g. sha256 for SHA-256.
+     */
+    public static String getFileExtension(String algorithm) {
+        return algorithm.toLowerCase(Locale.ROOT).replace("-", "");
+    }
+
+    /**
+     * Writes one line per file. Files inside of the base folder are written with their relative path.
+     */
+    public void write(Path file, Path baseFolder) throws IOException {
+        Path absoluteBase = baseFolder.toAbsolutePath();
+        List<String> lines = new ArrayList<>(checksums.size());
+        for (Map.Entry<Path, String> entry : checksums.entrySet()) {
+            Path target = entry.getKey().toAbsolutePath();
+            String name = target.startsWith(absoluteBase) ? absoluteBase.relativize(target).toString() : target.toString();
+            lines.add(entry.getValue() + "  " + name);
+        }
+        Files.write(file, lines, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a file written by {@link #write(Path, Path)}.
+     *
+     * @return target file -> checksum as hex string, relative paths are resolved against the base folder
+     */
+    public static Map<Path, String> read(Path file, Path baseFolder) throws IOException {
+        Path absoluteBase = baseFolder.toAbsolutePath();
+        Map<Path, String> checksums = new HashMap<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            int separator = line.indexOf("  ");
+            if (separator > 0) {
+                checksums.put(absoluteBase.resolve(line.substring(separator + 2)).normalize(), line.substring(0, separator));
+            }
+        }
+        return checksums;
+    }
+
+    /**
+     * Reads the files again and compares their checksums.
+     *
+     * @return the files that are missing or have a different checksum
+     */
+    public List<Path> verify() throws IOException {
+        List<Path> invalidFiles = new ArrayList<>();
+        for (Map.Entry<Path, String> entry : checksums.entrySet()) {
+            if (!Files.isRegularFile(entry.getKey()) || !entry.getValue().equals(calculate(entry.getKey(), algorithm))) {
+                invalidFiles.add(entry.getKey());
+            }
+        }
+        return invalidFiles;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the java runtime does not support the algorithm
+     */
+    public static MessageDigest createDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("Unknown checksum algorithm " + algorithm, e);
+        }
+    }
+
+    /**
+     * Reads the file and returns its checksum as hex string.
+     */
+    public static String calculate(Path file, String algorithm) throws IOException {
+        MessageDigest digest = createDigest(algorithm);
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (in.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Returns the bytes of a digest as lower case hex string, as written by sha256sum and md5sum.
+     */
+    public static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,122 @@
+package de.intranda.goobi.plugins;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import de.sub.goobi.helper.StorageProvider;
+
+/**
+ * Fingerprints of the exported issues of a volume. The manifest is stored in the export folder and read by the next incremental export,
+ * issues with an unchanged fingerprint are not exported again.
+ */
+public class ExportManifest {
+
+    private static final String HEADER = "# newspaper export manifest: issue identifier and fingerprint";
+
+    // issue identifier -> fingerprint, in the order of the issues
+    private final Map<String, String> fingerprints = new LinkedHashMap<>();
+
+    /**
+     * Reads the manifest file. If the file does not exist, an empty manifest is returned.
+     */
+    public static ExportManifest read(Path manifestFile) throws IOException {
+        ExportManifest manifest = new ExportManifest();
+        if (!StorageProvider.getInstance().isFileExists(manifestFile)) {
+            return manifest;
+        }
+        try (BufferedReader reader =
+                new BufferedReader(new InputStreamReader(StorageProvider.getInstance().newInputStream(manifestFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.lastIndexOf('\t');
+                if (line.startsWith("#") || separator < 1) {
+                    continue;
+                }
+                manifest.fingerprints.put(line.substring(0, separator), line.substring(separator + 1));
+            }
+        }
+        return manifest;
+    }
+
+    public void write(Path manifestFile) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(
+                new OutputStreamWriter(StorageProvider.getInstance().newOutputStream(manifestFile), StandardCharsets.UTF_8))) {
+            writer.write(HEADER);
+            writer.newLine();
+            for (Map.Entry<String, String> entry : fingerprints.entrySet()) {
+                writer.write(entry.getKey() + "\t" + entry.getValue());
+                writer.newLine();
+            }
+        }
+    }
+
+    public String getFingerprint(String issueIdentifier) {
+        return fingerprints.get(issueIdentifier);
+    }
+
+    public void setFingerprint(String issueIdentifier, String fingerprint) {
+        fingerprints.put(issueIdentifier, fingerprint);
+    }
+
+    public void removeFingerprint(String issueIdentifier) {
+        fingerprints.remove(issueIdentifier);
+    }
+
+    public Set<String> getIssueIdentifiers() {
+        return Collections.unmodifiableSet(fingerprints.keySet());
+    }
+
+    /**
+     * Collects the content of an issue into a SHA-256 hash. Each value is written with its length, so different values cannot result in the
+     * same input.
+     */
+    public static class Fingerprint {
+
+        private final MessageDigest digest;
+
+        public Fingerprint() {
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                // every java runtime supports SHA-256
+                throw new IllegalStateException(e);
+            }
+        }
+
+        public Fingerprint add(String value) {
+            if (value == null) {
+                add(-1);
+            } else {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                add(bytes.length);
+                digest.update(bytes);
+            }
+            return this;
+        }
+
+        public Fingerprint add(long value) {
+            for (int i = 56; i >= 0; i -= 8) {
+                digest.update((byte) (value >>> i));
+            }
+            return this;
+        }
+
+        /**
+         * Returns the hash as hex string. The fingerprint cannot be used afterwards.
+         */
+        public String toHex() {
+            return ChecksumFile.toHex(digest.digest());
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package de.intranda.goobi.plugins;
+
+import org.goobi.beans.Process;
+
+/**
+ * Receives the durations and counters of an export. The issues and files are processed by several threads, so implementations must be
+ * thread safe. The durations of a phase that runs in parallel are added up, they can exceed the duration of the export.
+ */
+public interface ExportMetrics {
+
+    enum Phase {
+        // complete export of a process
+        EXPORT,
+        CONFIGURATION,
+        READ_METADATA,
+        VALIDATION,
+        // replacement of the variables in the METS header and the file group paths
+        METS_HEADER,
+        // streaming METS writer and translated metadata of the newspaper
+        PREPARATION,
+        // inherited metadata of the years, fingerprints of the incremental export and the export tasks of the issues
+        VOLUME_PREPARATION,
+        // creation and serialization of the METS file of an issue
+        METS,
+        IMAGE_COPY,
+        ALTO_COPY,
+        MAPPING_FILE,
+        SAVE_METADATA,
+        // move of the staged files to their targets
+        PUBLISH,
+        VERIFICATION
+    }
+
+    enum Counter {
+        EXPORTED_ISSUES,
+        UNCHANGED_ISSUES,
+        FAILED_ISSUES,
+        IMAGE_FILES,
+        IMAGE_BYTES,
+        ALTO_FILES,
+        ALTO_BYTES,
+        LINKED_FILES,
+        SKIPPED_FILES,
+        PUBLISHED_FILES
+    }
+
+    /**
+     * Adds the duration of a single operation of the phase.
+     */
+    void recordTime(Phase phase, long nanos);
+
+    void increment(Counter counter, long value);
+
+    /**
+     * Called when the export of the process is finished, also if it failed.
+     */
+    void exportFinished(Process process, boolean success);
+
+    /**
+     * Starts a timer, the duration is recorded when the timer is closed.
+     */
+    default Timer startTimer(Phase phase) {
+        return new Timer(this, phase);
+    }
+
+    class Timer implements AutoCloseable {
+
+        private final ExportMetrics metrics;
+        private final Phase phase;
+        private final long start = System.nanoTime();
+
+        Timer(ExportMetrics metrics, Phase phase) {
+            this.metrics = metrics;
+            this.phase = phase;
+        }
+
+        @Override
+        public void close() {
+            metrics.recordTime(phase, System.nanoTime() - start);
+        }
+    }
+}
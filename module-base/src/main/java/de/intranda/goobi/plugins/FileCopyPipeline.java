@@ -0,0 +1,484 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.sub.goobi.config.ConfigurationHelper;
+import de.sub.goobi.helper.StorageProvider;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Copies the images and ALTO files of an export. With more than one transfer the files are copied in the background while the issues are
+ * still being processed, {@link #await()} waits until all files are written. Local files are copied with {@link FileChannel#transferTo} or
+ * linked according to the configured {@link LinkMode}, other storages are accessed through the {@link StorageProvider}.
+ */
+@Log4j2
+public class FileCopyPipeline implements AutoCloseable {
+
+    /**
+     * Defines how a file is transferred into the export folder. If a link cannot be created, e.g. because source and target are on different
+     * file systems, the file is copied instead.
+     */
+    public enum LinkMode {
+        COPY,
+        HARDLINK,
+        SYMLINK,
+        // copy on write clone of the file, only available on some file systems like btrfs or xfs
+        REFLINK;
+
+        public static LinkMode fromConfiguration(String value) {
+            if (value == null) {
+                return COPY;
+            }
+            switch (value.trim().toLowerCase(Locale.ENGLISH)) {
+                case "hardlink":
+                    return HARDLINK;
+                case "symlink":
+                    return SYMLINK;
+                case "reflink":
+                case "reflink-if-available":
+                    return REFLINK;
+                default:
+                    return COPY;
+            }
+        }
+    }
+
+    // results of a transfer that did not copy the file
+    private static final long LINKED = -1;
+    private static final long SKIPPED = -2;
+    private static final int TRANSFER_BUFFER_SIZE = 1 << 20;
+    // interrupted transfers stop after the current block, the limit only protects against a hanging storage
+    private static final long TERMINATION_TIMEOUT_SECONDS = 30;
+    // one buffer per transfer thread, used if the files are digested while they are copied
+    private static final ThreadLocal<ByteBuffer> TRANSFER_BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(TRANSFER_BUFFER_SIZE));
+
+    private final ExecutorService executor;
+    private final boolean localFileSystem;
+    private final LinkMode linkMode;
+    // set after the first failed link, all following files are copied
+    private final AtomicBoolean linkingFailed = new AtomicBoolean();
+    private final Queue<Transfer> transfers = new ConcurrentLinkedQueue<>();
+    // keep existing targets with the same size and modification date as the source
+    private volatile boolean skipUnchanged;
+    // if set, the files are written into the staging area instead of their targets
+    private volatile StagingArea stagingArea;
+    // digest calculated while the files are copied, null if no checksums are needed
+    private volatile String checksumAlgorithm;
+    // group -> target -> checksum
+    private final Map<String, Map<Path, String>> checksums = new ConcurrentHashMap<>();
+    // group -> target -> checksum of the previous export, used for unchanged files
+    private final Map<String, Map<Path, String>> previousChecksums = new ConcurrentHashMap<>();
+    // receives the duration and size of the transfers that are copied with a phase
+    private volatile ExportMetrics metrics;
+
+    private final AtomicLong copiedFiles = new AtomicLong();
+    private final AtomicLong copiedBytes = new AtomicLong();
+    private final AtomicLong linkedFiles = new AtomicLong();
+    private final AtomicLong skippedFiles = new AtomicLong();
+    private final AtomicLong firstTransferStart = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong lastTransferEnd = new AtomicLong(Long.MIN_VALUE);
+
+    public FileCopyPipeline(int maxTransfers, LinkMode linkMode) {
+        this(maxTransfers, linkMode, !ConfigurationHelper.getInstance().useS3());
+    }
+
+    FileCopyPipeline(int maxTransfers, LinkMode linkMode, boolean localFileSystem) {
+        this.localFileSystem = localFileSystem;
+        this.linkMode = linkMode;
+        // a single transfer copies the files directly on the calling thread
+        executor = maxTransfers > 1 ? Executors.newFixedThreadPool(maxTransfers) : null;
+    }
+
+    /**
+     * Enables the incremental mode: a local target that has the same size and modification date as its source is not transferred again.
+     * Copies and links keep the modification date of the source, so an unchanged file is recognized in the next export.
+     */
+    public void setSkipUnchanged(boolean skipUnchanged) {
+        this.skipUnchanged = skipUnchanged;
+    }
+
+    /**
+     * Writes the files into the staging area, they are moved to their targets when the area is published. Unchanged files are still
+     * compared with their targets.
+     */
+    public void setStagingArea(StagingArea stagingArea) {
+        this.stagingArea = stagingArea;
+    }
+
+    public void setMetrics(ExportMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Calculates a checksum of each file of a group. Copied files are digested while they are written, so the files are read only once.
+     * Linked files are read from the source, unchanged files too unless their checksum is known from the previous export.
+     */
+    public void setChecksumAlgorithm(String checksumAlgorithm) {
+        this.checksumAlgorithm = checksumAlgorithm;
+    }
+
+    /**
+     * Sets the checksums of the previous export of a group. Unchanged files that are skipped use their previous checksum instead of reading
+     * the source again. Must be called before the files of the group are copied.
+     *
+     * @param checksums target -> checksum as hex string
+     */
+    public void setPreviousChecksums(String group, Map<Path, String> checksums) {
+        previousChecksums.put(group, checksums);
+    }
+
+    /**
+     * Returns the checksums of the transferred files of a group. Must be called after {@link #await()}.
+     *
+     * @return target -> checksum as hex string, empty if no file of the group was transferred
+     */
+    public Map<Path, String> getChecksums(String group) {
+        Map<Path, String> groupChecksums = checksums.get(group);
+        return groupChecksums == null ? Collections.emptyMap() : Collections.unmodifiableMap(groupChecksums);
+    }
+
+    /**
+     * Copies the source file to the target. The parent folder of the target must exist, unless the file is staged. Depending on the number
+     * of transfers the file is copied immediately or scheduled, errors of scheduled transfers are reported by {@link #await()}.
+     */
+    public void copy(Path source, Path target) throws IOException {
+        copy(source, target, null);
+    }
+
+    /**
+     * Copies the source file to the target like {@link #copy(Path, Path)}. The group of a failed scheduled transfer is reported by
+     * {@link #awaitFailures()}.
+     */
+    public void copy(Path source, Path target, String group) throws IOException {
+        copy(source, target, group, null);
+    }
+
+    /**
+     * Copies the source file to the target like {@link #copy(Path, Path, String)}. The duration and size of the transfer are added to the
+     * metrics of the phase, {@link ExportMetrics.Phase#IMAGE_COPY} or {@link ExportMetrics.Phase#ALTO_COPY}.
+     */
+    public void copy(Path source, Path target, String group, ExportMetrics.Phase phase) throws IOException {
+        if (executor == null) {
+            transfer(source, target, group, phase);
+        } else {
+            transfers.add(new Transfer(group, executor.submit(() -> {
+                transfer(source, target, group, phase);
+                return null;
+            })));
+        }
+    }
+
+    /**
+     * Waits until all scheduled transfers are finished.
+     *
+     * @throws IOException the error of the first failed transfer
+     */
+    public void await() throws IOException, InterruptedException {
+        Transfer transfer;
+        while ((transfer = transfers.poll()) != null) {
+            try {
+                transfer.future.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IOException(cause);
+            }
+        }
+    }
+
+    /**
+     * Waits until all scheduled transfers are finished. Unlike {@link #await()}, a failed transfer does not stop the waiting.
+     *
+     * @return the first error of each group with a failed transfer, in the order in which the transfers were scheduled
+     */
+    public Map<String, Exception> awaitFailures() throws InterruptedException {
+        Map<String, Exception> failures = new LinkedHashMap<>();
+        Transfer transfer;
+        while ((transfer = transfers.poll()) != null) {
+            try {
+                transfer.future.get();
+            } catch (ExecutionException e) {
+                Exception cause = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                failures.putIfAbsent(transfer.group, cause);
+            }
+        }
+        return failures;
+    }
+
+    public long getCopiedFiles() {
+        return copiedFiles.get();
+    }
+
+    public long getCopiedBytes() {
+        return copiedBytes.get();
+    }
+
+    public long getLinkedFiles() {
+        return linkedFiles.get();
+    }
+
+    public long getSkippedFiles() {
+        return skippedFiles.get();
+    }
+
+    /**
+     * Writes the number of copied files and the throughput between the start of the first and the end of the last transfer to the log.
+     */
+    public void logStatistics() {
+        if (linkedFiles.get() > 0) {
+            log.info("Linked {} files with link mode {}", linkedFiles.get(), linkMode);
+        }
+        if (skippedFiles.get() > 0) {
+            log.info("Skipped {} unchanged files", skippedFiles.get());
+        }
+        long files = copiedFiles.get();
+        if (files == 0) {
+            return;
+        }
+        long millis = Math.max(1, (lastTransferEnd.get() - firstTransferStart.get()) / 1_000_000);
+        double megabytes = copiedBytes.get() / (1024d * 1024d);
+        log.info(String.format(Locale.ENGLISH, "Copied %d files (%.1f MB) in %d ms: %.1f MB/s, %.1f files/s", files, megabytes, millis,
+                megabytes * 1000 / millis, files * 1000d / millis));
+    }
+
+    /**
+     * Cancels the remaining transfers and waits until the running transfers stopped, so the staging area can be deleted afterwards.
+     */
+    @Override
+    public void close() {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(TERMINATION_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("Transfers did not stop within {} seconds", TERMINATION_TIMEOUT_SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void transfer(Path source, Path finalTarget, String group, ExportMetrics.Phase phase) throws IOException {
+        ExportMetrics currentMetrics = phase == null ? null : metrics;
+        FileTransferEvent event = new FileTransferEvent();
+        event.begin();
+        long start = System.nanoTime();
+        long result = transferFile(source, finalTarget, group);
+        event.end();
+        if (event.shouldCommit()) {
+            event.source = source.toString();
+            event.target = finalTarget.toString();
+            event.result = result == SKIPPED ? "skipped" : result == LINKED ? "linked" : "copied";
+            event.bytes = result < 0 ? 0 : result;
+            event.commit();
+        }
+        if (currentMetrics == null) {
+            return;
+        }
+        currentMetrics.recordTime(phase, System.nanoTime() - start);
+        if (result == SKIPPED) {
+            currentMetrics.increment(ExportMetrics.Counter.SKIPPED_FILES, 1);
+        } else if (result == LINKED) {
+            currentMetrics.increment(ExportMetrics.Counter.LINKED_FILES, 1);
+        } else {
+            boolean image = phase == ExportMetrics.Phase.IMAGE_COPY;
+            currentMetrics.increment(image ? ExportMetrics.Counter.IMAGE_FILES : ExportMetrics.Counter.ALTO_FILES, 1);
+            currentMetrics.increment(image ? ExportMetrics.Counter.IMAGE_BYTES : ExportMetrics.Counter.ALTO_BYTES, result);
+        }
+    }
+
+    /**
+     * @return the number of copied bytes, {@link #LINKED} or {@link #SKIPPED}
+     */
+    private long transferFile(Path source, Path finalTarget, String group) throws IOException {
+        String algorithm = group == null ? null : checksumAlgorithm;
+        if (skipUnchanged && localFileSystem && isUnchanged(source, finalTarget)) {
+            skippedFiles.incrementAndGet();
+            if (algorithm != null) {
+                String checksum = getPreviousChecksum(group, finalTarget);
+                addChecksum(group, finalTarget, checksum == null ? ChecksumFile.calculate(source, algorithm) : checksum);
+            }
+            return SKIPPED;
+        }
+        Path target = stagingArea == null ? finalTarget : stagingArea.stage(group, finalTarget);
+        long start = System.nanoTime();
+        firstTransferStart.accumulateAndGet(start, Math::min);
+
+        if (localFileSystem && linkMode != LinkMode.COPY && !linkingFailed.get() && link(source, target)) {
+            linkedFiles.incrementAndGet();
+            if (algorithm != null) {
+                addChecksum(group, finalTarget, ChecksumFile.calculate(source, algorithm));
+            }
+            lastTransferEnd.accumulateAndGet(System.nanoTime(), Math::max);
+            return LINKED;
+        }
+
+        long size;
+        if (localFileSystem) {
+            MessageDigest digest = algorithm == null ? null : ChecksumFile.createDigest(algorithm);
+            size = transferLocalFile(source, target, digest);
+            if (digest != null) {
+                addChecksum(group, finalTarget, ChecksumFile.toHex(digest.digest()));
+            }
+        } else {
+            StorageProvider.getInstance().copyFile(source, target);
+            size = StorageProvider.getInstance().getFileSize(target);
+            if (algorithm != null) {
+                addChecksum(group, finalTarget, calculateStorageChecksum(target, algorithm));
+            }
+        }
+
+        copiedFiles.incrementAndGet();
+        copiedBytes.addAndGet(size);
+        lastTransferEnd.accumulateAndGet(System.nanoTime(), Math::max);
+        return size;
+    }
+
+    /**
+     * Links the target to the source file.
+     *
+     * @return false, if the link could not be created and the file must be copied
+     */
+    private boolean link(Path source, Path target) throws IOException {
+        try {
+            Files.deleteIfExists(target);
+            switch (linkMode) {
+                case HARDLINK:
+                    Files.createLink(target, source);
+                    return true;
+                case SYMLINK:
+                    Files.createSymbolicLink(target, source.toAbsolutePath());
+                    return true;
+                case REFLINK:
+                    return reflink(source, target);
+                default:
+                    return false;
+            }
+        } catch (NoSuchFileException e) {
+            // the source is missing, copying would fail as well
+            throw e;
+        } catch (IOException | UnsupportedOperationException e) {
+            if (!linkingFailed.getAndSet(true)) {
+                log.warn("Cannot use link mode {} for {}, files are copied instead: {}", linkMode, target, e.getMessage());
+            }
+            return false;
+        }
+    }
+
+    private void addChecksum(String group, Path target, String checksum) {
+        checksums.computeIfAbsent(group, g -> new ConcurrentHashMap<>()).put(target, checksum);
+    }
+
+    private String getPreviousChecksum(String group, Path target) {
+        Map<Path, String> groupChecksums = previousChecksums.get(group);
+        return groupChecksums == null ? null : groupChecksums.get(target.toAbsolutePath().normalize());
+    }
+
+    private static String calculateStorageChecksum(Path file, String algorithm) throws IOException {
+        MessageDigest digest = ChecksumFile.createDigest(algorithm);
+        byte[] buffer = new byte[TRANSFER_BUFFER_SIZE];
+        try (InputStream in = StorageProvider.getInstance().newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return ChecksumFile.toHex(digest.digest());
+    }
+
+    private static boolean isUnchanged(Path source, Path target) throws IOException {
+        if (!Files.exists(target)) {
+            return false;
+        }
+        // symbolic links are followed, a link to the unchanged source is unchanged as well
+        return Files.size(source) == Files.size(target) && Files.getLastModifiedTime(source).equals(Files.getLastModifiedTime(target));
+    }
+
+    private boolean reflink(Path source, Path target) throws IOException {
+        Process cp = new ProcessBuilder("cp", "--reflink=always", "--preserve=timestamps", source.toString(), target.toString())
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        try {
+            if (cp.waitFor() == 0) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            cp.destroy();
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        Files.deleteIfExists(target);
+        throw new IOException("file system does not support reflinks");
+    }
+
+    /**
+     * Copies a local file. Without digest the kernel copies the data, otherwise each block is added to the digest before it is written.
+     * An existing target is deleted first, it may be a hard or symbolic link to a master file of a previous export.
+     */
+    private static long transferLocalFile(Path source, Path target, MessageDigest digest) throws IOException {
+        Files.deleteIfExists(target);
+        long size;
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            size = in.size();
+            if (digest == null) {
+                long position = 0;
+                while (position < size) {
+                    position += in.transferTo(position, size - position, out);
+                }
+            } else {
+                ByteBuffer buffer = TRANSFER_BUFFER.get();
+                buffer.clear();
+                while (in.read(buffer) != -1) {
+                    buffer.flip();
+                    digest.update(buffer.duplicate());
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                    buffer.clear();
+                }
+            }
+        }
+        Files.setLastModifiedTime(target, Files.getLastModifiedTime(source));
+        return size;
+    }
+
+    private static class Transfer {
+
+        private final String group;
+        private final Future<?> future;
+
+        Transfer(String group, Future<?> future) {
+            this.group = group;
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package de.intranda.goobi.plugins;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder event of a single image or ALTO file transferred by the {@link FileCopyPipeline}.
+ */
+@Name("de.intranda.goobi.plugins.newspaper.FileTransfer")
+@Label("File Transfer")
+@Category({ "Goobi", "Newspaper Export" })
+@Description("Copy, link or skip of an exported file")
+public class FileTransferEvent extends jdk.jfr.Event {
+
+    @Label("Source")
+    String source;
+
+    @Label("Target")
+    String target;
+
+    // copied, linked or skipped
+    @Label("Result")
+    String result;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+}
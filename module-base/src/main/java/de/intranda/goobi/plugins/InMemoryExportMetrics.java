@@ -0,0 +1,54 @@
+package de.intranda.goobi.plugins;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.goobi.beans.Process;
+
+/**
+ * Keeps the metrics in memory. The values of several exports are added up, the results of the last export are available after it finished.
+ */
+public class InMemoryExportMetrics implements ExportMetrics {
+
+    private final AtomicLongArray nanos = new AtomicLongArray(Phase.values().length);
+    private final AtomicLongArray operations = new AtomicLongArray(Phase.values().length);
+    private final AtomicLongArray counters = new AtomicLongArray(Counter.values().length);
+    private volatile Boolean lastExportSuccessful;
+
+    @Override
+    public void recordTime(Phase phase, long duration) {
+        nanos.addAndGet(phase.ordinal(), duration);
+        operations.incrementAndGet(phase.ordinal());
+    }
+
+    @Override
+    public void increment(Counter counter, long value) {
+        counters.addAndGet(counter.ordinal(), value);
+    }
+
+    @Override
+    public void exportFinished(Process process, boolean success) {
+        lastExportSuccessful = success;
+    }
+
+    public long getNanos(Phase phase) {
+        return nanos.get(phase.ordinal());
+    }
+
+    /**
+     * Returns the number of recorded operations of the phase, e.g. the number of written METS files or copied images.
+     */
+    public long getOperations(Phase phase) {
+        return operations.get(phase.ordinal());
+    }
+
+    public long getCounter(Counter counter) {
+        return counters.get(counter.ordinal());
+    }
+
+    /**
+     * @return null, if no export finished yet
+     */
+    public Boolean getLastExportSuccessful() {
+        return lastExportSuccessful;
+    }
+}
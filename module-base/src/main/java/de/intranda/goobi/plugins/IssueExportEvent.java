@@ -0,0 +1,31 @@
+package de.intranda.goobi.plugins;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder event of the export of a single issue. The duration of the event covers the METS file and the scheduling of the
+ * file transfers, the transfers themselves are recorded as {@link FileTransferEvent}.
+ */
+@Name("de.intranda.goobi.plugins.newspaper.IssueExport")
+@Label("Issue Export")
+@Category({ "Goobi", "Newspaper Export" })
+@Description("Export of a single newspaper issue")
+public class IssueExportEvent extends jdk.jfr.Event {
+
+    @Label("Issue Identifier")
+    String issueIdentifier;
+
+    @Label("Pages")
+    int pages;
+
+    @Label("Supplements")
+    int supplements;
+
+    @Label("METS Write Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    long metsWriteDuration;
+}
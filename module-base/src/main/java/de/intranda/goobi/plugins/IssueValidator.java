@@ -0,0 +1,227 @@
+package de.intranda.goobi.plugins;
+
+import java.util.List;
+
+import org.apache.commons.lang.StringUtils;
+
+import lombok.extern.log4j.Log4j2;
+import ugh.dl.DocStruct;
+import ugh.dl.Metadata;
+import ugh.dl.MetadataType;
+import ugh.dl.Prefs;
+import ugh.exceptions.DocStructHasNoTypeException;
+import ugh.exceptions.MetadataTypeNotAllowedException;
+import ugh.exceptions.UGHException;
+
+/**
+ * Checks the issues of a year before the export and adds missing metadata that can be created from the issue, the year or the newspaper.
+ * The issues of a year are validated at the same time, each validation only changes its own issue.
+ */
+@Log4j2
+public class IssueValidator {
+
+    private final NewspaperExportContext context;
+    private final NewspaperExportConfiguration configuration;
+    private final DocStruct newspaper;
+    private final DocStruct newspaperYear;
+    private final String identifier;
+    private final String language;
+    private final String accessCondition;
+
+    private final MetadataType purlType;
+    private final MetadataType identifierType;
+    private final MetadataType mainTitleType;
+    private final MetadataType sortNumberType;
+    private final MetadataType languageType;
+    private final MetadataType accessConditionType;
+    private final MetadataType resourceType;
+
+    // resolved with the values of the newspaper and the year when the first issue needs a purl, concurrent validations may resolve it twice
+    private volatile PurlTemplate purlTemplate;
+
+    /**
+     * @param identifier the record id of the newspaper
+     * @param language the language used for issues without language
+     * @param accessCondition the licence used for issues without licence
+     */
+    public IssueValidator(NewspaperExportContext context, DocStruct newspaper, DocStruct newspaperYear, String identifier, String language,
+            String accessCondition) {
+        this.context = context;
+        this.configuration = context.getConfiguration();
+        this.newspaper = newspaper;
+        this.newspaperYear = newspaperYear;
+        this.identifier = identifier;
+        this.language = language;
+        this.accessCondition = accessCondition;
+
+        Prefs prefs = context.getPrefs();
+        purlType = prefs.getMetadataTypeByName(configuration.getPurlField());
+        identifierType = prefs.getMetadataTypeByName(configuration.getIdentifierField());
+        mainTitleType = prefs.getMetadataTypeByName(configuration.getMainTitleField());
+        sortNumberType = prefs.getMetadataTypeByName(configuration.getSortNumberField());
+        languageType = prefs.getMetadataTypeByName(configuration.getLanguageField());
+        accessConditionType = prefs.getMetadataTypeByName(configuration.getLicenceField());
+        resourceType = prefs.getMetadataTypeByName(configuration.getResourceTypeField());
+    }
+
+    /**
+     * Validates the issue and adds the missing metadata. If the issue cannot be exported, the cause is added to the problems of the export.
+     *
+     * @return the identifier of the issue, or null if the issue is invalid
+     */
+    public String validate(DocStruct issue) throws MetadataTypeNotAllowedException, DocStructHasNoTypeException {
+        return validate(issue, context.getProblems());
+    }
+
+    /**
+     * Validates the issue and adds the missing metadata. If the issue cannot be exported, the cause is added to the given problems.
+     *
+     * @param problems receives the problem of an invalid issue
+     * @return the identifier of the issue, or null if the issue is invalid
+     */
+    public String validate(DocStruct issue, List<String> problems) throws MetadataTypeNotAllowedException, DocStructHasNoTypeException {
+
+        // check if required metadata is available, otherwise add it
+        MetadataExtractor.Values issueValues = configuration.getMetadataExtractor().extract(issue);
+        String issueLabel = issueValues.get(MetadataExtractor.Field.TITLE_LABEL);
+        String issueTitle = issueValues.get(MetadataExtractor.Field.MAIN_TITLE);
+        String issueNo = issueValues.get(MetadataExtractor.Field.ISSUE_NUMBER);
+        String issueSortingNumber = issueValues.get(MetadataExtractor.Field.SORT_NUMBER);
+        String issueLanguage = issueValues.get(MetadataExtractor.Field.LANGUAGE);
+        String issueLicence = issueValues.get(MetadataExtractor.Field.LICENCE);
+
+        String issueIdentifier = issueValues.get(MetadataExtractor.Field.IDENTIFIER);
+        String dateValue = issueValues.get(MetadataExtractor.Field.ISSUE_DATE);
+        String resource = issueValues.get(MetadataExtractor.Field.RESOURCE_TYPE);
+        String purl = issueValues.get(MetadataExtractor.Field.PURL);
+        // used in the problems of a skipped issue
+        String issueName = StringUtils.isNotBlank(issueIdentifier) ? issueIdentifier : dateValue;
+
+        if (StringUtils.isBlank(dateValue)) {
+            return reject(problems, issueName, "Abort export, issue has no publication date");
+        }
+
+        if (configuration.isDdbMode() && !dateValue.matches("\\d{4}-\\d{2}-\\d{2}")) {
+            return reject(problems, issueName, "Issue date " + dateValue + " has the wrong format. Expected is YYYY-MM-DD");
+        }
+
+        // create default metadata, if missing
+        if (StringUtils.isBlank(issueTitle) && StringUtils.isNotBlank(issueLabel)) {
+            try {
+                Metadata md = new Metadata(mainTitleType);
+                md.setValue(issueLabel);
+                issue.addMetadata(md);
+            } catch (UGHException e) {
+                log.info(e);
+            }
+        }
+        // generate new values
+        if (StringUtils.isBlank(issueSortingNumber)) {
+            if (StringUtils.isNotBlank(issueNo) && StringUtils.isNumeric(issueNo)) {
+                issueSortingNumber = issueNo;
+            } else {
+                issueSortingNumber = dateValue.replace("-", "");
+            }
+            try {
+                Metadata md = new Metadata(sortNumberType);
+                md.setValue(issueSortingNumber);
+                issue.addMetadata(md);
+            } catch (UGHException e) {
+                log.info(e);
+                if (configuration.isDdbMode()) {
+                    return reject(problems, issueName, "Cannot add created sort number to issue");
+                }
+            }
+        }
+        if (StringUtils.isBlank(issueLanguage) && StringUtils.isNotBlank(language)) {
+            try {
+                Metadata md = new Metadata(languageType);
+                md.setValue(language);
+                issue.addMetadata(md);
+            } catch (UGHException e) {
+                log.info(e);
+                if (configuration.isDdbMode()) {
+                    return reject(problems, issueName, "Cannot add language to issue");
+                }
+            }
+        }
+
+        if (StringUtils.isBlank(issueLicence) && StringUtils.isNotBlank(accessCondition)) {
+            try {
+                Metadata md = new Metadata(accessConditionType);
+                md.setValue(accessCondition);
+                issue.addMetadata(md);
+            } catch (UGHException e) {
+                log.info(e);
+                if (configuration.isDdbMode()) {
+                    return reject(problems, issueName, "Cannot add license information to issue");
+                }
+            }
+        }
+
+        if (StringUtils.isBlank(issueIdentifier)) {
+            issueIdentifier = identifier + "_" + dateValue + "_" + issueSortingNumber;
+            Metadata md = new Metadata(identifierType);
+            md.setValue(issueIdentifier);
+            issue.addMetadata(md);
+        }
+        if (StringUtils.isBlank(resource)) {
+            try {
+                Metadata md = new Metadata(resourceType);
+                md.setValue("text");
+                issue.addMetadata(md);
+            } catch (UGHException e) {
+                log.info(e);
+                if (configuration.isDdbMode()) {
+                    return reject(problems, issueName, "Cannot add resource to issue");
+                }
+            }
+        }
+
+        if (StringUtils.isBlank(purl)) {
+            String url = null;
+            if (configuration.getPurlTemplate() != null) {
+                try {
+                    // the newspaper and volume values are the same for all issues, resolve them once
+                    if (purlTemplate == null) {
+                        purlTemplate = configuration.getPurlTemplate().resolve(newspaper, newspaperYear);
+                    }
+                    url = purlTemplate.render(issue);
+                } catch (PurlTemplate.MissingValueException e) {
+                    return reject(problems, issueName, "Cannot create purl for issue " + issueIdentifier + ": " + e.getMessage());
+                }
+            } else {
+                url = configuration.getPiResolverUrl() + issueIdentifier;
+            }
+
+            try {
+                Metadata md = new Metadata(purlType);
+                md.setValue(url);
+                issue.addMetadata(md);
+            } catch (UGHException e) {
+                log.info(e);
+                if (configuration.isDdbMode()) {
+                    return reject(problems, issueName, "Cannot add purl to issue");
+                }
+            }
+        }
+        return issueIdentifier;
+    }
+
+    /**
+     * Adds the problem of an invalid issue. If the export continues with the other issues or only the validation runs, the problem names the
+     * issue.
+     *
+     * @return always null
+     */
+    private String reject(List<String> problems, String issueName, String problem) {
+        if (configuration.isContinueOnError()) {
+            problems.add("Issue " + (issueName == null ? "without date" : issueName) + " skipped: " + problem);
+        } else if (context.isValidationOnly()) {
+            problems.add("Issue " + (issueName == null ? "without date" : issueName) + ": " + problem);
+        } else {
+            problems.add(problem);
+        }
+        return null;
+    }
+}
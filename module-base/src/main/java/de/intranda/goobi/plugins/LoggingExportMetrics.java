@@ -0,0 +1,38 @@
+package de.intranda.goobi.plugins;
+
+import java.util.Locale;
+
+import org.goobi.beans.Process;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Writes the metrics of an export to the log when it is finished. This is the default, each export uses its own instance.
+ */
+@Log4j2
+public class LoggingExportMetrics extends InMemoryExportMetrics {
+
+    @Override
+    public void exportFinished(Process process, boolean success) {
+        super.exportFinished(process, success);
+        log.info("Export of process {} {} in {} ms", process.getId(), success ? "finished" : "failed", getNanos(Phase.EXPORT) / 1_000_000);
+        if (!log.isDebugEnabled()) {
+            return;
+        }
+        StringBuilder phases = new StringBuilder();
+        for (Phase phase : Phase.values()) {
+            if (phase != Phase.EXPORT && getOperations(phase) > 0) {
+                phases.append(String.format(Locale.ENGLISH, " %s=%d ms (%d)", phase.name().toLowerCase(Locale.ENGLISH),
+                        getNanos(phase) / 1_000_000, getOperations(phase)));
+            }
+        }
+        StringBuilder counters = new StringBuilder();
+        for (Counter counter : Counter.values()) {
+            if (getCounter(counter) > 0) {
+                counters.append(' ').append(counter.name().toLowerCase(Locale.ENGLISH)).append('=').append(getCounter(counter));
+            }
+        }
+        log.debug("Phases of process {}:{}", process.getId(), phases);
+        log.debug("Counters of process {}:{}", process.getId(), counters);
+    }
+}
@@ -0,0 +1,96 @@
+package de.intranda.goobi.plugins;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import ugh.dl.DocStruct;
+import ugh.dl.Metadata;
+
+/**
+ * Reads the metadata configured in the /metadata section from a docstruct. The configured names are mapped once to the fields, then each
+ * docstruct is read in a single pass over its metadata.
+ */
+public class MetadataExtractor {
+
+    public enum Field {
+        ZDB_ID_ANALOG,
+        ZDB_ID_DIGITAL,
+        IDENTIFIER,
+        TITLE_LABEL,
+        MAIN_TITLE,
+        ISSUE_NUMBER,
+        SORT_NUMBER,
+        ISSUE_DATE,
+        LANGUAGE,
+        LICENCE,
+        RESOURCE_TYPE,
+        PURL
+    }
+
+    /**
+     * Values of a single docstruct.
+     */
+    public static class Values {
+        // value of the last metadata of each field
+        private final String[] lastValues = new String[Field.values().length];
+        // first value that is not null
+        private final String[] firstValues = new String[Field.values().length];
+
+        private void set(Field field, String value) {
+            lastValues[field.ordinal()] = value;
+            if (firstValues[field.ordinal()] == null) {
+                firstValues[field.ordinal()] = value;
+            }
+        }
+
+        /**
+         * Returns the value of the last metadata of the field.
+         */
+        public String get(Field field) {
+            return lastValues[field.ordinal()];
+        }
+
+        /**
+         * Returns the first value of the field that is not null.
+         */
+        public String getFirst(Field field) {
+            return firstValues[field.ordinal()];
+        }
+    }
+
+    // metadata name -> fields using this metadata
+    private final Map<String, Field[]> fieldsByName;
+
+    public MetadataExtractor(Map<Field, String> metadataNames) {
+        Map<String, Field[]> fields = new HashMap<>();
+        for (Map.Entry<Field, String> entry : metadataNames.entrySet()) {
+            if (entry.getValue() != null) {
+                Field[] existing = fields.get(entry.getValue());
+                Field[] updated = existing == null ? new Field[1] : Arrays.copyOf(existing, existing.length + 1);
+                updated[updated.length - 1] = entry.getKey();
+                fields.put(entry.getValue(), updated);
+            }
+        }
+        fieldsByName = Collections.unmodifiableMap(fields);
+    }
+
+    /**
+     * Reads the configured fields of the docstruct.
+     */
+    public Values extract(DocStruct docstruct) {
+        Values values = new Values();
+        if (docstruct.getAllMetadata() != null) {
+            for (Metadata md : docstruct.getAllMetadata()) {
+                Field[] fields = fieldsByName.get(md.getType().getName());
+                if (fields != null) {
+                    for (Field field : fields) {
+                        values.set(field, md.getValue());
+                    }
+                }
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,98 @@
+package de.intranda.goobi.plugins;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import lombok.Getter;
+import ugh.dl.DocStructType;
+import ugh.dl.MetadataGroupType;
+import ugh.dl.MetadataType;
+import ugh.dl.Prefs;
+
+/**
+ * Translates the metadata types of the newspaper, year and issue into the types of the exported issue, e.g. 'TitleDocMain' with the prefix
+ * 'newspaper' into 'newspaperTitleDocMain'. The tables are built once from the ruleset when the translation is created and are only read
+ * afterwards, so one translation is shared by all exports that use the same ruleset.
+ */
+public class MetadataTypeTranslation {
+
+    // the prefixes of the newspaper, the year and the issue metadata
+    static final String[] PREFIXES = { "newspaper", "year", "" };
+
+    @Getter
+    private final Prefs prefs;
+
+    // prefix -> name of the source type -> target type, missing if the ruleset does not contain the prefixed type
+    private final Map<String, Map<String, MetadataType>> metadataTypes = new HashMap<>();
+    private final Map<String, Map<String, MetadataGroupType>> groupTypes = new HashMap<>();
+
+    // name of the docstruct type -> names of the metadata types that are allowed in it
+    private final Map<String, Set<String>> allowedTypes = new HashMap<>();
+
+    public MetadataTypeTranslation(Prefs prefs) {
+        this.prefs = prefs;
+        Map<String, MetadataType> metadataTypesByName = new HashMap<>();
+        for (MetadataType type : nonNull(prefs.getAllMetadataTypes())) {
+            metadataTypesByName.putIfAbsent(type.getName(), type);
+        }
+        Map<String, MetadataGroupType> groupTypesByName = new HashMap<>();
+        for (MetadataGroupType type : nonNull(prefs.getAllMetadataGroupTypes())) {
+            groupTypesByName.putIfAbsent(type.getName(), type);
+        }
+        for (String prefix : PREFIXES) {
+            metadataTypes.put(prefix, createTable(prefix, metadataTypesByName));
+            groupTypes.put(prefix, createTable(prefix, groupTypesByName));
+        }
+        for (DocStructType docstructType : nonNull(prefs.getAllDocStructTypes())) {
+            Set<String> allowed = new HashSet<>();
+            for (MetadataType type : nonNull(docstructType.getAllMetadataTypes())) {
+                allowed.add(type.getName());
+            }
+            allowedTypes.put(docstructType.getName(), allowed);
+        }
+    }
+
+    private static <T> Map<String, T> createTable(String prefix, Map<String, T> typesByName) {
+        Map<String, T> table = new HashMap<>();
+        for (String name : typesByName.keySet()) {
+            T target = typesByName.get(prefix + name);
+            if (target != null) {
+                table.put(name, target);
+            }
+        }
+        return table;
+    }
+
+    private static <T> List<T> nonNull(List<T> list) {
+        return list == null ? Collections.emptyList() : list;
+    }
+
+    /**
+     * Returns the metadata type with the prefixed name of the source type or null, if the ruleset does not contain it.
+     */
+    public MetadataType getMetadataType(String prefix, MetadataType source) {
+        Map<String, MetadataType> table = metadataTypes.get(prefix);
+        return table == null ? null : table.get(source.getName());
+    }
+
+    /**
+     * Returns the group type with the prefixed name of the source type or null, if the ruleset does not contain it.
+     */
+    public MetadataGroupType getMetadataGroupType(String prefix, MetadataGroupType source) {
+        Map<String, MetadataGroupType> table = groupTypes.get(prefix);
+        return table == null ? null : table.get(source.getName());
+    }
+
+    /**
+     * Returns false, if the ruleset does not allow metadata of the given type in a docstruct of this type. A docstruct that already contains
+     * the maximum number of the type still rejects it when it is added. Types of other rulesets are left to the docstruct.
+     */
+    public boolean isAllowed(DocStructType docstructType, MetadataType metadataType) {
+        Set<String> allowed = allowedTypes.get(docstructType.getName());
+        return allowed == null || allowed.contains(metadataType.getName());
+    }
+}
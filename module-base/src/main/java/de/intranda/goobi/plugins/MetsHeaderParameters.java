@@ -0,0 +1,170 @@
+package de.intranda.goobi.plugins;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.goobi.beans.Project;
+import org.goobi.beans.ProjectFileGroup;
+
+import de.sub.goobi.helper.VariableReplacer;
+import lombok.Getter;
+import ugh.dl.ExportFileformat;
+import ugh.dl.VirtualFileGroup;
+
+/**
+ * Values of the METS header and the paths of the file groups. The variables only depend on the process and the project, so they are
+ * replaced once per export and the result is applied to the METS file of each issue.
+ */
+public class MetsHeaderParameters {
+
+    private static final String ISSUE_IDENTIFIER = "$(meta.CatalogIDDigital)";
+    // marks the position of the issue identifier in a file group path, the variable replacer does not change it
+    private static final String IDENTIFIER_PLACEHOLDER = "\u0000issueIdentifier\u0000";
+
+    @Getter
+    private final String goobiId;
+    @Getter
+    private final String rightsOwner;
+    @Getter
+    private final String rightsOwnerLogo;
+    @Getter
+    private final String rightsOwnerSiteURL;
+    @Getter
+    private final String rightsOwnerContact;
+    @Getter
+    private final String digiprovPresentation;
+    @Getter
+    private final String digiprovReference;
+    @Getter
+    private final String digiprovPresentationAnchor;
+    @Getter
+    private final String digiprovReferenceAnchor;
+    @Getter
+    private final String rightsLicense;
+    @Getter
+    private final String rightsSponsor;
+    @Getter
+    private final String rightsSponsorLogo;
+    @Getter
+    private final String rightsSponsorSiteURL;
+    @Getter
+    private final String purl;
+    @Getter
+    private final String contentIds;
+
+    private final List<ProjectFileGroup> filegroups;
+    // file group paths with replaced variables, in the same order as the file groups
+    private final List<String> filegroupPaths;
+
+    /**
+     * Replaces the variables in the configured values. Values missing in the plugin configuration are taken from the project.
+     */
+    public MetsHeaderParameters(NewspaperExportContext context, VariableReplacer vp, List<ProjectFileGroup> filegroups) {
+        NewspaperExportConfiguration configuration = context.getConfiguration();
+        Project project = context.getProcess().getProjekt();
+        goobiId = context.getGoobiId();
+
+        rightsOwner = vp.replace(configuration.getMetsParameter("rightsOwner", project.getMetsRightsOwner()));
+        rightsOwnerLogo = vp.replace(configuration.getMetsParameter("rightsOwnerLogo", project.getMetsRightsOwnerLogo()));
+        rightsOwnerSiteURL = vp.replace(configuration.getMetsParameter("rightsOwnerSiteURL", project.getMetsRightsOwnerSite()));
+        rightsOwnerContact = vp.replace(configuration.getMetsParameter("rightsOwnerContact", project.getMetsRightsOwnerMail()));
+        digiprovPresentation = vp.replace(configuration.getMetsParameter("digiprovPresentation", project.getMetsDigiprovPresentation()));
+        digiprovReference = vp.replace(configuration.getMetsParameter("digiprovReference", project.getMetsDigiprovReference()));
+        digiprovPresentationAnchor =
+                vp.replace(configuration.getMetsParameter("digiprovPresentationAnchor", project.getMetsDigiprovPresentationAnchor()));
+        digiprovReferenceAnchor = vp.replace(configuration.getMetsParameter("digiprovReferenceAnchor", project.getMetsDigiprovReferenceAnchor()));
+
+        rightsLicense = vp.replace(configuration.getMetsParameter("rightsLicense", project.getMetsRightsLicense()));
+        rightsSponsor = vp.replace(configuration.getMetsParameter("rightsSponsor", project.getMetsRightsSponsor()));
+        rightsSponsorLogo = vp.replace(configuration.getMetsParameter("rightsSponsorLogo", project.getMetsRightsSponsorLogo()));
+        rightsSponsorSiteURL = vp.replace(configuration.getMetsParameter("rightsSponsorSiteURL", project.getMetsRightsSponsorSiteURL()));
+
+        purl = vp.replace(configuration.getMetsParameter("purl", project.getMetsPurl()));
+        contentIds = vp.replace(configuration.getMetsParameter("contentIds", project.getMetsContentIDs()));
+
+        this.filegroups = Collections.unmodifiableList(new ArrayList<>(filegroups));
+        List<String> paths = new ArrayList<>(filegroups.size());
+        for (ProjectFileGroup pfg : filegroups) {
+            // the identifier of the volume must not be used, keep the position for the issue identifier
+            paths.add(vp.replace(pfg.getPath().replace(ISSUE_IDENTIFIER, IDENTIFIER_PLACEHOLDER)));
+        }
+        filegroupPaths = Collections.unmodifiableList(paths);
+    }
+
+    /**
+     * Writes the values into the METS header of an issue.
+     */
+    public void apply(ExportFileformat fileFormat) {
+        fileFormat.setGoobiID(goobiId);
+
+        fileFormat.setRightsOwner(rightsOwner);
+        fileFormat.setRightsOwnerLogo(rightsOwnerLogo);
+        fileFormat.setRightsOwnerSiteURL(rightsOwnerSiteURL);
+        fileFormat.setRightsOwnerContact(rightsOwnerContact);
+        fileFormat.setDigiprovPresentation(digiprovPresentation);
+        fileFormat.setDigiprovReference(digiprovReference);
+        fileFormat.setDigiprovPresentationAnchor(digiprovPresentationAnchor);
+        fileFormat.setDigiprovReferenceAnchor(digiprovReferenceAnchor);
+
+        fileFormat.setMetsRightsLicense(rightsLicense);
+        fileFormat.setMetsRightsSponsor(rightsSponsor);
+        fileFormat.setMetsRightsSponsorLogo(rightsSponsorLogo);
+        fileFormat.setMetsRightsSponsorSiteURL(rightsSponsorSiteURL);
+
+        fileFormat.setPurlUrl(purl);
+        fileFormat.setContentIDs(contentIds);
+
+        fileFormat.setWriteLocal(false);
+    }
+
+    /**
+     * Adds the header values and file groups to the fingerprint of an issue, a changed value must result in a new export.
+     */
+    public void addTo(ExportManifest.Fingerprint fingerprint) {
+        fingerprint.add(goobiId)
+                .add(rightsOwner)
+                .add(rightsOwnerLogo)
+                .add(rightsOwnerSiteURL)
+                .add(rightsOwnerContact)
+                .add(digiprovPresentation)
+                .add(digiprovReference)
+                .add(digiprovPresentationAnchor)
+                .add(digiprovReferenceAnchor)
+                .add(rightsLicense)
+                .add(rightsSponsor)
+                .add(rightsSponsorLogo)
+                .add(rightsSponsorSiteURL)
+                .add(purl)
+                .add(contentIds);
+        for (int i = 0; i < filegroups.size(); i++) {
+            ProjectFileGroup projectFileGroup = filegroups.get(i);
+            fingerprint.add(projectFileGroup.getName())
+                    .add(filegroupPaths.get(i))
+                    .add(projectFileGroup.getMimetype())
+                    .add(projectFileGroup.getSuffix());
+        }
+    }
+
+    /**
+     * Creates the file groups for the METS file of an issue.
+     */
+    public List<VirtualFileGroup> createFilegroups(String issueIdentifier) {
+        List<VirtualFileGroup> virtualFileGroups = new ArrayList<>(filegroups.size());
+        for (int i = 0; i < filegroups.size(); i++) {
+            ProjectFileGroup projectFileGroup = filegroups.get(i);
+            VirtualFileGroup v = new VirtualFileGroup();
+            v.setName(projectFileGroup.getName());
+            v.setPathToFiles(filegroupPaths.get(i).replace(IDENTIFIER_PLACEHOLDER, issueIdentifier));
+            v.setMimetype(projectFileGroup.getMimetype());
+            v.setFileSuffix(projectFileGroup.getSuffix());
+            v.setFileExtensionsToIgnore(projectFileGroup.getIgnoreMimetypes());
+            v.setIgnoreConfiguredMimetypeAndSuffix(projectFileGroup.isUseOriginalFiles());
+            if ("PRESENTATION".equals(projectFileGroup.getName())) {
+                v.setMainGroup(true);
+            }
+            virtualFileGroups.add(v);
+        }
+        return virtualFileGroups;
+    }
+}
@@ -0,0 +1,113 @@
+package de.intranda.goobi.plugins;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Element of a single MODS record. The record of a docstruct is small, it is built with the rules of the {@link ModsMapping} and then
+ * written to the stream of the METS file.
+ */
+public class ModsElement {
+
+    private final String prefix;
+    private final String namespace;
+    private final String name;
+    // qualified attribute name -> value, the namespace of a prefixed attribute is stored in attributeNamespaces
+    private final Map<String, String> attributes = new LinkedHashMap<>();
+    private final Map<String, String> attributeNamespaces = new LinkedHashMap<>();
+    private final List<ModsElement> children = new ArrayList<>();
+    private String text;
+
+    public ModsElement(String prefix, String namespace, String name) {
+        this.prefix = prefix;
+        this.namespace = namespace;
+        this.name = name;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public String getNamespace() {
+        return namespace;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public void setText(String text) {
+        this.text = text;
+    }
+
+    public String getAttribute(String qualifiedName) {
+        return attributes.get(qualifiedName);
+    }
+
+    /**
+     * Sets an attribute. For an attribute without namespace, prefix and namespace are null.
+     */
+    public void setAttribute(String attributePrefix, String attributeNamespace, String attributeName, String value) {
+        String qualifiedName = attributePrefix == null ? attributeName : attributePrefix + ":" + attributeName;
+        attributes.put(qualifiedName, value);
+        if (attributeNamespace != null) {
+            attributeNamespaces.put(qualifiedName, attributeNamespace);
+        }
+    }
+
+    public List<ModsElement> getChildren() {
+        return Collections.unmodifiableList(children);
+    }
+
+    public ModsElement addChild(String childPrefix, String childNamespace, String childName) {
+        ModsElement child = new ModsElement(childPrefix, childNamespace, childName);
+        children.add(child);
+        return child;
+    }
+
+    public boolean isEmpty() {
+        return children.isEmpty() && attributes.isEmpty() && text == null;
+    }
+
+    /**
+     * Writes the element and its children. The namespaces must be declared by the caller.
+     */
+    public void write(XMLStreamWriter writer) throws XMLStreamException {
+        if (children.isEmpty() && text == null) {
+            writer.writeEmptyElement(prefix, name, namespace);
+        } else {
+            writer.writeStartElement(prefix, name, namespace);
+        }
+        for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+            String attributeNamespace = attributeNamespaces.get(attribute.getKey());
+            if (attributeNamespace == null) {
+                writer.writeAttribute(attribute.getKey(), attribute.getValue());
+            } else {
+                String qualifiedName = attribute.getKey();
+                int separator = qualifiedName.indexOf(':');
+                writer.writeAttribute(qualifiedName.substring(0, separator), attributeNamespace, qualifiedName.substring(separator + 1),
+                        attribute.getValue());
+            }
+        }
+        if (children.isEmpty() && text == null) {
+            return;
+        }
+        if (text != null) {
+            writer.writeCharacters(text);
+        }
+        for (ModsElement child : children) {
+            child.write(writer);
+        }
+        writer.writeEndElement();
+    }
+}
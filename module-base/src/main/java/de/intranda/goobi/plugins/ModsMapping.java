@@ -0,0 +1,644 @@
+package de.intranda.goobi.plugins;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.apache.commons.lang.StringUtils;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import ugh.dl.Corporate;
+import ugh.dl.DocStruct;
+import ugh.dl.DocStructType;
+import ugh.dl.Metadata;
+import ugh.dl.MetadataGroup;
+import ugh.dl.NamePart;
+import ugh.dl.Person;
+
+/**
+ * The MODS mapping of the METS section of a ruleset, used by the {@link StreamingMetsWriter}. The write expressions are parsed once per
+ * export. Only the subset of XPath used in MODS mappings is supported: element steps with attribute, position and child value predicates, a
+ * final attribute step and the # marker for new elements. If the ruleset contains anything else, the mapping cannot be created and the
+ * export has to use the METS writer of UGH.
+ */
+public class ModsMapping {
+
+    public static final String METS_NAMESPACE = "http://www.loc.gov/METS/";
+    public static final String MODS_NAMESPACE = "http://www.loc.gov/mods/v3";
+    public static final String XLINK_NAMESPACE = "http://www.w3.org/1999/xlink";
+    public static final String DV_NAMESPACE = "http://dfg-viewer.de/";
+    public static final String XSI_NAMESPACE = "http://www.w3.org/2001/XMLSchema-instance";
+
+    /**
+     * The ruleset contains a mapping that cannot be interpreted.
+     */
+    public static class UnsupportedMappingException extends Exception {
+        private static final long serialVersionUID = -2279581367305283124L;
+
+        public UnsupportedMappingException(String message) {
+            super(message);
+        }
+    }
+
+    private static class AttributeValue {
+        private final String prefix;
+        private final String namespace;
+        private final String name;
+        private final String value;
+
+        private AttributeValue(String prefix, String namespace, String name, String value) {
+            this.prefix = prefix;
+            this.namespace = namespace;
+            this.name = name;
+            this.value = value;
+        }
+
+        private String getQualifiedName() {
+            return prefix == null ? name : prefix + ":" + name;
+        }
+    }
+
+    /**
+     * Predicate like [mods:role/mods:roleTerm="aut"[@type='code']], the child elements are created together with the element.
+     */
+    private static class ChildValue {
+        private final List<Step> path;
+        private final String value;
+
+        private ChildValue(List<Step> path, String value) {
+            this.path = path;
+            this.value = value;
+        }
+    }
+
+    private static class Step {
+        private boolean createNew;
+        private boolean attribute;
+        private String prefix;
+        private String namespace;
+        private String name;
+        private int position;
+        private final List<AttributeValue> attributes = new ArrayList<>();
+        private final List<ChildValue> childValues = new ArrayList<>();
+
+        private boolean matches(ModsElement element) {
+            if (!name.equals(element.getName()) || !Objects.equals(namespace, element.getNamespace())) {
+                return false;
+            }
+            for (AttributeValue attributeValue : attributes) {
+                if (!attributeValue.value.equals(element.getAttribute(attributeValue.getQualifiedName()))) {
+                    return false;
+                }
+            }
+            for (ChildValue childValue : childValues) {
+                if (!hasChildValue(element, childValue.path, 0, childValue.value)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean hasChildValue(ModsElement element, List<Step> path, int index, String value) {
+            if (index == path.size()) {
+                return value.equals(element.getText());
+            }
+            for (ModsElement child : element.getChildren()) {
+                if (path.get(index).matches(child) && hasChildValue(child, path, index + 1, value)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private ModsElement find(ModsElement parent) {
+            int found = 0;
+            for (ModsElement child : parent.getChildren()) {
+                if (matches(child)) {
+                    found++;
+                    if (position == 0 || found == position) {
+                        return child;
+                    }
+                }
+            }
+            return null;
+        }
+
+        private ModsElement create(ModsElement parent) {
+            ModsElement element = parent.addChild(prefix, namespace, name);
+            for (AttributeValue attributeValue : attributes) {
+                element.setAttribute(attributeValue.prefix, attributeValue.namespace, attributeValue.name, attributeValue.value);
+            }
+            for (ChildValue childValue : childValues) {
+                apply(element, childValue.path, childValue.value, true);
+            }
+            return element;
+        }
+    }
+
+    private static class Rule {
+        private List<Step> path;
+        private Pattern condition;
+        private Pattern find;
+        private String replacement;
+        private boolean replaceAll;
+        // parts of persons and corporates, relative to the element of the rule
+        private List<Step> firstname;
+        private List<Step> lastname;
+        private List<Step> displayname;
+        private List<Step> mainName;
+        private List<Step> subName;
+        private List<Step> partName;
+        // rules of the metadata within a group
+        private final Map<String, List<Rule>> groupRules = new HashMap<>();
+
+        private boolean accepts(String value) {
+            return condition == null || condition.matcher(value).find();
+        }
+
+        private String transform(String value) {
+            if (find == null) {
+                return value;
+            }
+            return replaceAll ? find.matcher(value).replaceAll(replacement) : find.matcher(value).replaceFirst(replacement);
+        }
+
+        private boolean endsWithAttribute() {
+            return !path.isEmpty() && path.get(path.size() - 1).attribute;
+        }
+    }
+
+    // prefix -> namespace
+    private final Map<String, String> namespaces = new HashMap<>();
+    // metadata name -> rules, a metadata can be written with several rules depending on its value
+    private final Map<String, List<Rule>> metadataRules = new HashMap<>();
+    private final Map<String, List<Rule>> groupRules = new HashMap<>();
+    // docstruct name -> METS type
+    private final Map<String, String> metsTypes = new HashMap<>();
+
+    private ModsMapping() {
+        namespaces.put("mets", METS_NAMESPACE);
+        namespaces.put("mods", MODS_NAMESPACE);
+        namespaces.put("xlink", XLINK_NAMESPACE);
+        namespaces.put("dv", DV_NAMESPACE);
+        namespaces.put("xsi", XSI_NAMESPACE);
+    }
+
+    /**
+     * Parses the METS section of the ruleset.
+     *
+     * @param metsNode the METS element within the Formats section
+     */
+    public static ModsMapping compile(Node metsNode) throws UnsupportedMappingException {
+        if (metsNode == null) {
+            throw new UnsupportedMappingException("The ruleset has no METS section");
+        }
+        ModsMapping mapping = new ModsMapping();
+        // the namespaces are needed to parse the expressions
+        for (Element element : getChildElements(metsNode, "NamespaceDefinition")) {
+            mapping.namespaces.put(getChildText(element, "prefix"), getChildText(element, "URI"));
+        }
+        for (Element element : getChildElements(metsNode, null)) {
+            switch (element.getNodeName()) {
+                case "Metadata":
+                    mapping.addRule(mapping.metadataRules, element, false);
+                    break;
+                case "Group":
+                    Rule groupRule = mapping.addRule(mapping.groupRules, element, false);
+                    if (groupRule != null) {
+                        for (Element metadata : getChildElements(element, "Metadata")) {
+                            mapping.addRule(groupRule.groupRules, metadata, true);
+                        }
+                    }
+                    break;
+                case "DocStruct":
+                    mapping.metsTypes.put(getChildText(element, "InternalName"), getChildText(element, "MetsType"));
+                    break;
+                default:
+                    // anchor and namespace definitions are not needed for the export
+            }
+        }
+        return mapping;
+    }
+
+    public Map<String, String> getNamespaces() {
+        return Collections.unmodifiableMap(namespaces);
+    }
+
+    /**
+     * Returns the TYPE of the structMap div, the name of the docstruct type if the ruleset does not define it.
+     */
+    public String getMetsType(DocStructType docstructType) {
+        String metsType = metsTypes.get(docstructType.getName());
+        return StringUtils.isBlank(metsType) ? docstructType.getName() : metsType;
+    }
+
+    /**
+     * Creates the MODS record of the docstruct. Metadata without a rule is not written.
+     */
+    public ModsElement createRecord(DocStruct docstruct) {
+        ModsElement mods = new ModsElement("mods", MODS_NAMESPACE, "mods");
+        addMetadata(mods, metadataRules, docstruct.getAllMetadata(), docstruct.getAllPersons(), docstruct.getAllCorporates());
+        if (docstruct.getAllMetadataGroups() != null) {
+            for (MetadataGroup group : docstruct.getAllMetadataGroups()) {
+                List<Rule> rules = groupRules.get(group.getType().getName());
+                if (rules == null) {
+                    continue;
+                }
+                for (Rule rule : rules) {
+                    ModsElement groupElement = apply(mods, rule.path, null, false);
+                    addMetadata(groupElement, rule.groupRules, group.getMetadataList(), group.getPersonList(), group.getCorporateList());
+                }
+            }
+        }
+        return mods;
+    }
+
+    private static void addMetadata(ModsElement parent, Map<String, List<Rule>> rules, List<Metadata> metadata, List<Person> persons,
+            List<Corporate> corporates) {
+        if (metadata != null) {
+            for (Metadata md : metadata) {
+                List<Rule> metadataRules = rules.get(md.getType().getName());
+                if (metadataRules == null || StringUtils.isEmpty(md.getValue())) {
+                    continue;
+                }
+                for (Rule rule : metadataRules) {
+                    if (rule.accepts(md.getValue())) {
+                        ModsElement element = apply(parent, rule.path, rule.transform(md.getValue()), false);
+                        if (!rule.endsWithAttribute()) {
+                            addAuthority(element, md);
+                        }
+                    }
+                }
+            }
+        }
+        if (persons != null) {
+            for (Person person : persons) {
+                List<Rule> personRules = rules.get(person.getType().getName());
+                if (personRules == null) {
+                    continue;
+                }
+                for (Rule rule : personRules) {
+                    ModsElement name = apply(parent, rule.path, null, false);
+                    addAuthority(name, person);
+                    addPart(name, rule.firstname, person.getFirstname());
+                    addPart(name, rule.lastname, person.getLastname());
+                    addPart(name, rule.displayname, getDisplayname(person));
+                }
+            }
+        }
+        if (corporates != null) {
+            for (Corporate corporate : corporates) {
+                List<Rule> corporateRules = rules.get(corporate.getType().getName());
+                if (corporateRules == null) {
+                    continue;
+                }
+                for (Rule rule : corporateRules) {
+                    ModsElement name = apply(parent, rule.path, null, false);
+                    addAuthority(name, corporate);
+                    addPart(name, rule.mainName, corporate.getMainName());
+                    if (corporate.getSubNames() != null) {
+                        for (NamePart subName : corporate.getSubNames()) {
+                            addPart(name, rule.subName, subName.getValue());
+                        }
+                    }
+                    addPart(name, rule.partName, corporate.getPartName());
+                }
+            }
+        }
+    }
+
+    private static void addPart(ModsElement name, List<Step> path, String value) {
+        if (StringUtils.isNotBlank(value)) {
+            apply(name, path, value, true);
+        }
+    }
+
+    private static String getDisplayname(Person person) {
+        if (StringUtils.isNotBlank(person.getDisplayname())) {
+            return person.getDisplayname();
+        }
+        if (StringUtils.isBlank(person.getFirstname())) {
+            return person.getLastname();
+        }
+        if (StringUtils.isBlank(person.getLastname())) {
+            return person.getFirstname();
+        }
+        return person.getLastname() + ", " + person.getFirstname();
+    }
+
+    private static void addAuthority(ModsElement element, Metadata md) {
+        if (StringUtils.isNotBlank(md.getAuthorityValue())) {
+            if (StringUtils.isNotBlank(md.getAuthorityID())) {
+                element.setAttribute(null, null, "authority", md.getAuthorityID());
+            }
+            if (StringUtils.isNotBlank(md.getAuthorityURI())) {
+                element.setAttribute(null, null, "authorityURI", md.getAuthorityURI());
+            }
+            element.setAttribute(null, null, "valueURI", md.getAuthorityValue());
+        }
+    }
+
+    /**
+     * Follows the path from the parent element. Existing elements are used unless a step is marked with # or createNew is set, the value
+     * is written into the last element or attribute.
+     *
+     * @return the last element of the path
+     */
+    private static ModsElement apply(ModsElement parent, List<Step> path, String value, boolean createNew) {
+        ModsElement current = parent;
+        boolean create = createNew;
+        for (Step step : path) {
+            if (step.attribute) {
+                current.setAttribute(step.prefix, step.namespace, step.name, value);
+                return current;
+            }
+            create |= step.createNew;
+            ModsElement next = create ? null : step.find(current);
+            if (next == null) {
+                next = step.create(current);
+                // an element with a position is created together with the missing elements before it
+                while (!create && step.position > 0 && step.find(current) != next) {
+                    next = step.create(current);
+                }
+            }
+            current = next;
+        }
+        if (value != null) {
+            current.setText(value);
+        }
+        return current;
+    }
+
+    private Rule addRule(Map<String, List<Rule>> rules, Element element, boolean relative) throws UnsupportedMappingException {
+        String internalName = getChildText(element, "InternalName");
+        String writeXPath = getChildText(element, "WriteXPath");
+        if (StringUtils.isBlank(internalName) || StringUtils.isBlank(writeXPath)) {
+            return null;
+        }
+        Rule rule = new Rule();
+        rule.path = parsePath(writeXPath, relative);
+        String condition = getChildText(element, "ValueCondition");
+        if (StringUtils.isNotBlank(condition)) {
+            rule.condition = compilePattern(condition);
+        }
+        String regExp = getChildText(element, "ValueRegExp");
+        if (StringUtils.isNotBlank(regExp)) {
+            parseSubstitution(rule, regExp);
+        }
+        rule.firstname = parsePath(getChildText(element, "FirstnameXPath", "./mods:namePart[@type='given']"), true);
+        rule.lastname = parsePath(getChildText(element, "LastnameXPath", "./mods:namePart[@type='family']"), true);
+        rule.displayname = parsePath(getChildText(element, "DisplayNameXPath", "./mods:displayForm"), true);
+        rule.mainName = parsePath(getChildText(element, "MainNameXPath", "./mods:namePart"), true);
+        rule.subName = parsePath(getChildText(element, "SubNameXPath", "./mods:namePart"), true);
+        rule.partName = parsePath(getChildText(element, "PartNameXPath", "./mods:namePart"), true);
+        rules.computeIfAbsent(internalName, k -> new ArrayList<>()).add(rule);
+        return rule;
+    }
+
+    /**
+     * Parses a substitution like s/PDM/Public Domain Mark 1.0/ or s/a/b/g.
+     */
+    private static void parseSubstitution(Rule rule, String expression) throws UnsupportedMappingException {
+        if (expression.length() < 4 || expression.charAt(0) != 's') {
+            throw new UnsupportedMappingException("Unsupported value expression " + expression);
+        }
+        char delimiter = expression.charAt(1);
+        List<String> parts = new ArrayList<>();
+        StringBuilder part = new StringBuilder();
+        for (int i = 2; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+            if (c == '\\' && i + 1 < expression.length() && expression.charAt(i + 1) == delimiter) {
+                part.append(delimiter);
+                i++;
+            } else if (c == delimiter) {
+                parts.add(part.toString());
+                part.setLength(0);
+            } else {
+                part.append(c);
+            }
+        }
+        String flags = part.toString();
+        if (parts.size() != 2 || !flags.matches("g?")) {
+            throw new UnsupportedMappingException("Unsupported value expression " + expression);
+        }
+        rule.find = compilePattern(parts.get(0));
+        rule.replacement = parts.get(1);
+        rule.replaceAll = "g".equals(flags);
+    }
+
+    private static Pattern compilePattern(String regex) throws UnsupportedMappingException {
+        try {
+            return Pattern.compile(regex);
+        } catch (PatternSyntaxException e) {
+            throw new UnsupportedMappingException("Invalid regular expression " + regex);
+        }
+    }
+
+    /**
+     * Parses a write expression. Absolute expressions must start with ./mods:mods, relative expressions start at the element of a group or
+     * name.
+     */
+    private List<Step> parsePath(String xpath, boolean relative) throws UnsupportedMappingException {
+        String expression = xpath.trim();
+        if (expression.startsWith("./")) {
+            expression = expression.substring(2);
+        }
+        List<Step> steps = new ArrayList<>();
+        for (String stepExpression : split(expression, '/')) {
+            if (!stepExpression.trim().isEmpty()) {
+                steps.add(parseStep(stepExpression.trim(), xpath));
+            }
+        }
+        if (!relative) {
+            if (steps.isEmpty() || steps.get(0).attribute || !"mods".equals(steps.get(0).name) || !MODS_NAMESPACE.equals(steps.get(0).namespace)
+                    || steps.get(0).createNew || !steps.get(0).attributes.isEmpty()) {
+                throw new UnsupportedMappingException("Expression does not start with ./mods:mods: " + xpath);
+            }
+            steps.remove(0);
+        }
+        for (int i = 0; i < steps.size() - 1; i++) {
+            if (steps.get(i).attribute) {
+                throw new UnsupportedMappingException("Attribute must be the last step: " + xpath);
+            }
+        }
+        return steps;
+    }
+
+    private Step parseStep(String expression, String xpath) throws UnsupportedMappingException {
+        Step step = new Step();
+        String rest = expression;
+        if (rest.startsWith("#")) {
+            step.createNew = true;
+            rest = rest.substring(1);
+        }
+        if (rest.startsWith("@")) {
+            step.attribute = true;
+            setName(step, rest.substring(1), xpath, false);
+            return step;
+        }
+        int predicateStart = rest.indexOf('[');
+        setName(step, predicateStart == -1 ? rest : rest.substring(0, predicateStart), xpath, true);
+        if (predicateStart != -1) {
+            for (String predicate : splitPredicates(rest.substring(predicateStart), xpath)) {
+                parsePredicate(step, predicate.trim(), xpath);
+            }
+        }
+        return step;
+    }
+
+    private void setName(Step step, String qualifiedName, String xpath, boolean element) throws UnsupportedMappingException {
+        int separator = qualifiedName.indexOf(':');
+        if (separator == -1) {
+            if (element) {
+                // elements are always qualified in MODS mappings
+                throw new UnsupportedMappingException("Element without namespace in " + xpath);
+            }
+            step.name = qualifiedName;
+            return;
+        }
+        step.prefix = qualifiedName.substring(0, separator);
+        step.name = qualifiedName.substring(separator + 1);
+        step.namespace = namespaces.get(step.prefix);
+        if (step.namespace == null || !step.name.matches("[\\w.-]+")) {
+            throw new UnsupportedMappingException("Unknown name " + qualifiedName + " in " + xpath);
+        }
+    }
+
+    private void parsePredicate(Step step, String predicate, String xpath) throws UnsupportedMappingException {
+        if (predicate.matches("\\d+")) {
+            step.position = Integer.parseInt(predicate);
+            return;
+        }
+        List<String> parts = split(predicate, '=');
+        if (parts.size() != 2) {
+            throw new UnsupportedMappingException("Unsupported predicate [" + predicate + "] in " + xpath);
+        }
+        String left = parts.get(0).trim();
+        String right = parts.get(1).trim();
+        if (left.startsWith("@")) {
+            Step attribute = new Step();
+            setName(attribute, left.substring(1), xpath, false);
+            step.attributes.add(new AttributeValue(attribute.prefix, attribute.namespace, attribute.name, unquote(right, xpath)));
+            return;
+        }
+        // child value, optionally followed by attribute predicates of the child
+        int predicateStart = right.indexOf('[', right.indexOf(right.charAt(0), 1));
+        String value = unquote(predicateStart == -1 ? right : right.substring(0, predicateStart), xpath);
+        List<Step> path = new ArrayList<>();
+        for (String childStep : split(left, '/')) {
+            path.add(parseStep(childStep.trim(), xpath));
+        }
+        Step last = path.get(path.size() - 1);
+        if (last.attribute || last.createNew) {
+            throw new UnsupportedMappingException("Unsupported predicate [" + predicate + "] in " + xpath);
+        }
+        if (predicateStart != -1) {
+            for (String childPredicate : splitPredicates(right.substring(predicateStart), xpath)) {
+                parsePredicate(last, childPredicate.trim(), xpath);
+            }
+        }
+        step.childValues.add(new ChildValue(path, value));
+    }
+
+    private static String unquote(String value, String xpath) throws UnsupportedMappingException {
+        String trimmed = value.trim();
+        if (trimmed.length() < 2 || trimmed.charAt(0) != trimmed.charAt(trimmed.length() - 1)
+                || (trimmed.charAt(0) != '\'' && trimmed.charAt(0) != '"')) {
+            throw new UnsupportedMappingException("Unsupported value " + value + " in " + xpath);
+        }
+        return trimmed.substring(1, trimmed.length() - 1);
+    }
+
+    /**
+     * Splits a sequence of predicates like [@a='b'][2] into their contents.
+     */
+    private static List<String> splitPredicates(String expression, String xpath) throws UnsupportedMappingException {
+        List<String> predicates = new ArrayList<>();
+        int depth = 0;
+        int start = -1;
+        char quote = 0;
+        for (int i = 0; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '[') {
+                if (depth++ == 0) {
+                    start = i + 1;
+                }
+            } else if (c == ']') {
+                if (--depth == 0) {
+                    predicates.add(expression.substring(start, i));
+                } else if (depth < 0) {
+                    break;
+                }
+            } else if (depth == 0 && !Character.isWhitespace(c)) {
+                throw new UnsupportedMappingException("Unsupported expression " + xpath);
+            }
+        }
+        if (depth != 0 || quote != 0) {
+            throw new UnsupportedMappingException("Unbalanced expression " + xpath);
+        }
+        return predicates;
+    }
+
+    /**
+     * Splits the expression at the separator, ignoring separators within predicates and quotes.
+     */
+    private static List<String> split(String expression, char separator) {
+        List<String> parts = new ArrayList<>();
+        int depth = 0;
+        char quote = 0;
+        int start = 0;
+        for (int i = 0; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '[') {
+                depth++;
+            } else if (c == ']') {
+                depth--;
+            } else if (c == separator && depth == 0) {
+                parts.add(expression.substring(start, i));
+                start = i + 1;
+            }
+        }
+        parts.add(expression.substring(start));
+        return parts;
+    }
+
+    private static List<Element> getChildElements(Node node, String name) {
+        List<Element> elements = new ArrayList<>();
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE && (name == null || name.equals(child.getNodeName()))) {
+                elements.add((Element) child);
+            }
+        }
+        return elements;
+    }
+
+    private static String getChildText(Element element, String name) {
+        return getChildText(element, name, null);
+    }
+
+    private static String getChildText(Element element, String name, String defaultValue) {
+        List<Element> children = getChildElements(element, name);
+        if (children.isEmpty()) {
+            return defaultValue;
+        }
+        return children.get(0).getTextContent().trim();
+    }
+}
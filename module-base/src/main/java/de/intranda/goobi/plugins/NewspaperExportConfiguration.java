@@ -0,0 +1,341 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.apache.commons.configuration.SubnodeConfiguration;
+import org.apache.commons.configuration.XMLConfiguration;
+import org.apache.commons.configuration.tree.xpath.XPathExpressionEngine;
+import org.apache.commons.lang.StringUtils;
+import org.goobi.beans.ProjectFileGroup;
+
+import de.sub.goobi.config.ConfigPlugins;
+import de.sub.goobi.config.ConfigurationHelper;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import ugh.dl.Prefs;
+
+/**
+ * Immutable snapshot of the plugin configuration for one project. The snapshots are cached and reused by all following exports of the
+ * project, the cache is cleared as soon as the modification date of the configuration file changes.
+ */
+@Log4j2
+public class NewspaperExportConfiguration {
+
+    // the project settings of the METS header, the values of the project are used for missing elements
+    private static final String[] METS_PARAMETERS = { "rightsOwner", "rightsOwnerLogo", "rightsOwnerSiteURL", "rightsOwnerContact",
+            "digiprovPresentation", "digiprovReference", "digiprovPresentationAnchor", "digiprovReferenceAnchor", "rightsLicense", "rightsSponsor",
+            "rightsSponsorLogo", "rightsSponsorSiteURL", "purl", "contentIds" };
+
+    // modification date used when the configuration file cannot be read
+    private static final long UNKNOWN_TIMESTAMP = Long.MIN_VALUE;
+    // project name -> configuration and the modification date of the file it was read from
+    private static final ConcurrentMap<String, CachedConfiguration> CACHE = new ConcurrentHashMap<>();
+    // ruleset file -> translation of the metadata types, built from the preferences of the ruleset
+    private static final ConcurrentMap<String, MetadataTypeTranslation> TRANSLATIONS = new ConcurrentHashMap<>();
+
+    // can be 'ddb' or 'simple'
+    @Getter
+    private final String exportMode;
+
+    @Getter
+    private final boolean exportImages;
+    @Getter
+    private final boolean exportFulltext;
+
+    @Getter
+    private final String exportFolder;
+    @Getter
+    private final String exportImageFolder;
+    @Getter
+    private final String exportAltoFolder;
+
+    // create a mapping file with old and new identifier for each image
+    @Getter
+    private final boolean writeIdentifierMappingFile;
+    @Getter
+    private final String identifierMappingFileFolderName;
+    @Getter
+    private final String identifierMappingFilePrefix;
+
+    // possible values: custom or default
+    @Getter
+    private final String purlMode;
+    // compiled purl pattern, null unless the custom mode is used
+    @Getter
+    private final PurlTemplate purlTemplate;
+    @Getter
+    private final String piResolverUrl;
+
+    // names of the metadata types and the issue docstruct in the ruleset
+    @Getter
+    private final String zdbIdAnalogField;
+    @Getter
+    private final String zdbIdDigitalField;
+    @Getter
+    private final String purlField;
+    @Getter
+    private final String identifierField;
+    @Getter
+    private final String issueDateField;
+    @Getter
+    private final String titleLabelField;
+    @Getter
+    private final String mainTitleField;
+    @Getter
+    private final String issueNumberField;
+    @Getter
+    private final String sortNumberField;
+    @Getter
+    private final String languageField;
+    @Getter
+    private final String licenceField;
+    @Getter
+    private final String resourceTypeField;
+    @Getter
+    private final String issueDocstruct;
+    // reads the configured metadata from the newspaper, year and issues
+    @Getter
+    private final MetadataExtractor metadataExtractor;
+
+    // number of issues exported at the same time
+    @Getter
+    private final int numberOfThreads;
+    // number of image and ALTO files copied at the same time
+    @Getter
+    private final int numberOfTransfers;
+    // copy the files or link them into the export folder
+    @Getter
+    private final FileCopyPipeline.LinkMode linkMode;
+    // skip issues that did not change since the last export
+    @Getter
+    private final boolean incremental;
+    // folder of the manifests of the incremental export, the process folder if not configured
+    @Getter
+    private final String manifestFolder;
+    // write the METS files with the StreamingMetsWriter instead of UGH
+    @Getter
+    private final boolean streamingMetsWriter;
+    // skip invalid and failed issues instead of aborting the export
+    @Getter
+    private final boolean continueOnError;
+    // digest of the checksum file of each issue, null if no checksums are written
+    @Getter
+    private final String checksumAlgorithm;
+    // read the exported files again and compare their checksums
+    @Getter
+    private final boolean verifyChecksums;
+
+    @Getter
+    private final List<ProjectFileGroup> filegroups;
+
+    private final Map<String, String> metsParameters;
+
+    NewspaperExportConfiguration(XMLConfiguration globalSettings, SubnodeConfiguration projectSettings) {
+        writeIdentifierMappingFile = globalSettings.getBoolean("/identifierMapping/@enabled", false);
+        identifierMappingFileFolderName = globalSettings.getString("/identifierMapping/mappingFolder");
+        identifierMappingFilePrefix = globalSettings.getString("/identifierMapping/urlPrefix");
+
+        // type can be custom or default
+        purlMode = globalSettings.getString("/metadata/purl/@type", "default");
+        if ("custom".equalsIgnoreCase(purlMode)) {
+            // missing values can be replaced by an empty string (default) or a default value, or can abort the export
+            purlTemplate = PurlTemplate.compile(globalSettings.getString("/metadata/purl/@pattern", ""),
+                    PurlTemplate.MissingValue.fromConfiguration(globalSettings.getString("/metadata/purl/@missing", "empty")),
+                    globalSettings.getString("/metadata/purl/@default", ""));
+        } else {
+            purlTemplate = null;
+        }
+
+        zdbIdAnalogField = globalSettings.getString("/metadata/zdbidanalog");
+        zdbIdDigitalField = globalSettings.getString("/metadata/zdbiddigital");
+        purlField = globalSettings.getString("/metadata/purl");
+        identifierField = globalSettings.getString("/metadata/identifier");
+        issueDateField = globalSettings.getString("/metadata/issueDate");
+        titleLabelField = globalSettings.getString("/metadata/titleLabel");
+        mainTitleField = globalSettings.getString("/metadata/modsTitle");
+        issueNumberField = globalSettings.getString("/metadata/issueNumber");
+        sortNumberField = globalSettings.getString("/metadata/sortNumber");
+        languageField = globalSettings.getString("/metadata/language");
+        licenceField = globalSettings.getString("/metadata/licence");
+        resourceTypeField = globalSettings.getString("/metadata/resourceType");
+        issueDocstruct = globalSettings.getString("/docstruct/issue");
+
+        Map<MetadataExtractor.Field, String> metadataNames = new EnumMap<>(MetadataExtractor.Field.class);
+        metadataNames.put(MetadataExtractor.Field.ZDB_ID_ANALOG, zdbIdAnalogField);
+        metadataNames.put(MetadataExtractor.Field.ZDB_ID_DIGITAL, zdbIdDigitalField);
+        metadataNames.put(MetadataExtractor.Field.IDENTIFIER, identifierField);
+        metadataNames.put(MetadataExtractor.Field.TITLE_LABEL, titleLabelField);
+        metadataNames.put(MetadataExtractor.Field.MAIN_TITLE, mainTitleField);
+        metadataNames.put(MetadataExtractor.Field.ISSUE_NUMBER, issueNumberField);
+        metadataNames.put(MetadataExtractor.Field.SORT_NUMBER, sortNumberField);
+        metadataNames.put(MetadataExtractor.Field.ISSUE_DATE, issueDateField);
+        metadataNames.put(MetadataExtractor.Field.LANGUAGE, languageField);
+        metadataNames.put(MetadataExtractor.Field.LICENCE, licenceField);
+        metadataNames.put(MetadataExtractor.Field.RESOURCE_TYPE, resourceTypeField);
+        metadataNames.put(MetadataExtractor.Field.PURL, purlField);
+        metadataExtractor = new MetadataExtractor(metadataNames);
+
+        exportMode = projectSettings.getString("/mode", "ddb");
+
+        exportImages = projectSettings.getBoolean("/export/images", false);
+        exportFulltext = projectSettings.getBoolean("/export/fulltext", false);
+
+        String folder = projectSettings.getString("/export/exportFolder");
+        exportFolder = folder.endsWith("/") ? folder : folder + "/";
+        exportImageFolder = projectSettings.getString("/export/exportImageFolder");
+        exportAltoFolder = projectSettings.getString("/export/exportAltoFolder");
+
+        piResolverUrl = projectSettings.getString("/resolverUrl");
+        numberOfThreads = projectSettings.getInt("/export/threads", 1);
+        numberOfTransfers = projectSettings.getInt("/export/copyThreads", 1);
+        linkMode = FileCopyPipeline.LinkMode.fromConfiguration(projectSettings.getString("/export/linkMode", "copy"));
+        incremental = projectSettings.getBoolean("/export/incremental", false);
+        manifestFolder = StringUtils.trimToNull(projectSettings.getString("/export/manifestFolder", null));
+        streamingMetsWriter = "streaming".equalsIgnoreCase(projectSettings.getString("/export/metsWriter", "ugh"));
+        continueOnError = projectSettings.getBoolean("/export/continueOnError", false);
+        checksumAlgorithm = readChecksumAlgorithm(projectSettings.getString("/export/checksum", null));
+        verifyChecksums = checksumAlgorithm != null && projectSettings.getBoolean("/export/checksum/@verify", false);
+
+        List<ProjectFileGroup> answer = new ArrayList<>();
+        for (HierarchicalConfiguration hc : projectSettings.configurationsAt("/filegroups/filegroup")) {
+            ProjectFileGroup pfg = new ProjectFileGroup();
+            pfg.setName(hc.getString("@name"));
+            pfg.setPath(hc.getString("@path"));
+            pfg.setMimetype(hc.getString("@mimetype"));
+            pfg.setSuffix(hc.getString("@suffix"));
+            pfg.setFolder(hc.getString("@foldername"));
+            pfg.setIgnoreMimetypes(hc.getString("@filesToIgnore"));
+            pfg.setUseOriginalFiles(hc.getBoolean("@mimetypeFromFilename"));
+        }
+        filegroups = Collections.unmodifiableList(answer);
+
+        Map<String, String> parameters = new HashMap<>();
+        for (String parameter : METS_PARAMETERS) {
+            String value = projectSettings.getString("/" + parameter, null);
+            if (value != null) {
+                parameters.put(parameter, value);
+            }
+        }
+        metsParameters = Collections.unmodifiableMap(parameters);
+    }
+
+    /**
+     * Returns the configured value of a METS header parameter like 'rightsOwner' or the given default value, if the element is missing.
+     */
+    public String getMetsParameter(String parameter, String defaultValue) {
+        return metsParameters.getOrDefault(parameter, defaultValue);
+    }
+
+    public boolean isDdbMode() {
+        return "ddb".equals(exportMode);
+    }
+
+    private static String readChecksumAlgorithm(String value) {
+        if (StringUtils.isBlank(value) || "none".equalsIgnoreCase(value.trim())) {
+            return null;
+        }
+        try {
+            ChecksumFile.createDigest(value.trim());
+            return value.trim();
+        } catch (IllegalArgumentException e) {
+            log.warn("Checksum algorithm {} is not supported, no checksums are written", value);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the configuration of the given project. The configuration file is parsed only once, until its modification date changes. The
+     * date is read before the file is parsed and only the entry of the project is locked while it is parsed, exports of other projects are
+     * not blocked. If the file changes while it is parsed, the next call sees a newer date and parses it again.
+     */
+    public static NewspaperExportConfiguration getConfiguration(String pluginTitle, String projectName) {
+        long timestamp = getConfigurationFileTimestamp(pluginTitle);
+        CachedConfiguration cached = CACHE.get(projectName);
+        if (cached != null && cached.isValid(timestamp)) {
+            return cached.configuration;
+        }
+        return CACHE.compute(projectName, (name, current) -> current != null && current.isValid(timestamp) ? current
+                : new CachedConfiguration(readConfiguration(pluginTitle, name), timestamp)).configuration;
+    }
+
+    /**
+     * Returns the translation of the metadata types of the given ruleset. The tables are built once and reused as long as the ruleset returns
+     * the same preferences, the ruleset is reloaded when its preferences change. Without a file name the translation is not cached.
+     */
+    public static MetadataTypeTranslation getMetadataTypeTranslation(String ruleset, Prefs prefs) {
+        if (ruleset == null) {
+            return new MetadataTypeTranslation(prefs);
+        }
+        MetadataTypeTranslation cached = TRANSLATIONS.get(ruleset);
+        if (cached != null && cached.getPrefs() == prefs) {
+            return cached;
+        }
+        return TRANSLATIONS.compute(ruleset,
+                (name, current) -> current != null && current.getPrefs() == prefs ? current : new MetadataTypeTranslation(prefs));
+    }
+
+    /**
+     * Removes all cached configurations and translations, the next export reads the configuration file again.
+     */
+    static void clearCache() {
+        CACHE.clear();
+        TRANSLATIONS.clear();
+    }
+
+    private static NewspaperExportConfiguration readConfiguration(String pluginTitle, String projectName) {
+        XMLConfiguration globalSettings = ConfigPlugins.getPluginConfig(pluginTitle);
+        globalSettings.setExpressionEngine(new XPathExpressionEngine());
+
+        SubnodeConfiguration projectSettings = null;
+        // order of configuration is:
+        // 1.) project name matches
+        // 2.) project is *
+        try {
+            projectSettings = globalSettings.configurationAt("//config[./project = '" + projectName + "']");
+        } catch (IllegalArgumentException e) {
+            try {
+                projectSettings = globalSettings.configurationAt("//config[./project = '*']");
+            } catch (IllegalArgumentException e1) {
+                log.error(e1);
+            }
+        }
+        return new NewspaperExportConfiguration(globalSettings, projectSettings);
+    }
+
+    private static long getConfigurationFileTimestamp(String pluginTitle) {
+        Path configurationFile = Paths.get(ConfigurationHelper.getInstance().getConfigurationFolder(), "plugin_" + pluginTitle + ".xml");
+        try {
+            return Files.getLastModifiedTime(configurationFile).toMillis();
+        } catch (IOException e) {
+            // file is missing or not readable, keep the cached configuration
+            return UNKNOWN_TIMESTAMP;
+        }
+    }
+
+    private static class CachedConfiguration {
+
+        private final NewspaperExportConfiguration configuration;
+        private final long timestamp;
+
+        private CachedConfiguration(NewspaperExportConfiguration configuration, long timestamp) {
+            this.configuration = configuration;
+            this.timestamp = timestamp;
+        }
+
+        private boolean isValid(long currentTimestamp) {
+            return currentTimestamp == UNKNOWN_TIMESTAMP || currentTimestamp == timestamp;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package de.intranda.goobi.plugins;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.goobi.beans.Process;
+
+import lombok.Getter;
+import ugh.dl.Prefs;
+
+/**
+ * Holds the state of a single export run. The values are read once when the export starts and are not changed afterwards, so one plugin
+ * instance can run several exports at the same time and the issues of one export can be processed in parallel.
+ */
+public class NewspaperExportContext {
+
+    @Getter
+    private final Process process;
+    @Getter
+    private final String goobiId;
+    @Getter
+    private final Prefs prefs;
+    @Getter
+    private final NewspaperExportConfiguration configuration;
+    // shared by all exports with the same ruleset
+    @Getter
+    private final MetadataTypeTranslation metadataTypeTranslation;
+
+    // problems found during this export, issues may report them concurrently
+    @Getter
+    private final List<String> problems;
+    // the issues are only validated, invalid issues do not stop the validation of the others
+    @Getter
+    private final boolean validationOnly;
+    // durations and counters of the export
+    @Getter
+    private final ExportMetrics metrics;
+    // the images and ALTO files are exported if the configuration or the plugin enables it
+    @Getter
+    private final boolean exportImages;
+    @Getter
+    private final boolean exportFulltext;
+
+    public NewspaperExportContext(Process process, NewspaperExportConfiguration configuration) {
+        this(process, configuration, false, new InMemoryExportMetrics());
+    }
+
+    public NewspaperExportContext(Process process, NewspaperExportConfiguration configuration, boolean validationOnly, ExportMetrics metrics) {
+        this(process, configuration, validationOnly, metrics, Collections.synchronizedList(new ArrayList<>()));
+    }
+
+    /**
+     * @param problems receives the problems of the export, must be thread safe
+     */
+    public NewspaperExportContext(Process process, NewspaperExportConfiguration configuration, boolean validationOnly, ExportMetrics metrics,
+            List<String> problems) {
+        this(process, configuration, validationOnly, metrics, problems, false, false);
+    }
+
+    /**
+     * @param problems receives the problems of the export, must be thread safe
+     * @param exportImages export the images even if the configuration does not enable it
+     * @param exportFulltext export the ALTO files even if the configuration does not enable it
+     */
+    public NewspaperExportContext(Process process, NewspaperExportConfiguration configuration, boolean validationOnly, ExportMetrics metrics,
+            List<String> problems, boolean exportImages, boolean exportFulltext) {
+        this.process = process;
+        this.problems = problems;
+        this.validationOnly = validationOnly;
+        this.metrics = metrics;
+        this.goobiId = String.valueOf(process.getId());
+        this.prefs = process.getRegelsatz().getPreferences();
+        this.configuration = configuration;
+        this.exportImages = exportImages || configuration.isExportImages();
+        this.exportFulltext = exportFulltext || configuration.isExportFulltext();
+        this.metadataTypeTranslation = NewspaperExportConfiguration.getMetadataTypeTranslation(process.getRegelsatz().getDatei(), prefs);
+    }
+
+    public boolean isDdbMode() {
+        return configuration.isDdbMode();
+    }
+}
@@ -1,19 +1,27 @@
 package de.intranda.goobi.plugins;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import org.apache.commons.configuration.HierarchicalConfiguration;
-import org.apache.commons.configuration.SubnodeConfiguration;
-import org.apache.commons.configuration.XMLConfiguration;
-import org.apache.commons.configuration.tree.xpath.XPathExpressionEngine;
 import org.apache.commons.lang.StringUtils;
 import org.goobi.beans.Process;
 import org.goobi.beans.ProjectFileGroup;
@@ -21,7 +29,6 @@ import org.goobi.production.enums.PluginType;
 import org.goobi.production.plugin.interfaces.IExportPlugin;
 import org.goobi.production.plugin.interfaces.IPlugin;
 
-import de.sub.goobi.config.ConfigPlugins;
 import de.sub.goobi.helper.StorageProvider;
 import de.sub.goobi.helper.VariableReplacer;
 import de.sub.goobi.helper.exceptions.DAOException;
@@ -67,29 +74,28 @@ public class NewspaperExportPlugin implements IExportPlugin, IPlugin {
     @Getter
     private PluginType type = PluginType.Export;
 
+    // problems of the export or validation of this instance that finished last
+    private transient volatile List<String> problems;
+    // export the images and ALTO files of all following exports, even if the project configuration does not enable it
     @Getter
-    private List<String> problems;
-
     @Setter
+    private volatile boolean exportImages;
     @Getter
-    private boolean exportFulltext;
     @Setter
-    @Getter
-    private boolean exportImages;
-
-    private Prefs prefs;
-
-    // can be 'ddb' or 'simple'
-    private String exportMode;
-
-    // create a mapping file with old and new identifier for each image
-    private boolean writeIdentifierMappingFile = false;
-    private String identifierMappingFileFolderName;
-    private String identifierMappingFilePrefix;
-
-    // possible values: custom or default
-    private String purlMode;
-    private String purlPattern;
+    private volatile boolean exportFulltext;
+    // receives the metrics of all exports of this instance, if not set each export writes its own metrics to the log
+    @Setter
+    private transient ExportMetrics metrics;
+
+    /**
+     * Returns the problems of the export or validation of this instance that finished last. If the instance runs several exports at the same
+     * time, the problems belong to whichever finished last; use {@link #validateExport(Process)} to get the problems of a single process.
+     *
+     * @return null, if no export finished yet
+     */
+    public List<String> getProblems() {
+        return problems;
+    }
 
     @Override
     public boolean startExport(Process process) throws IOException, InterruptedException, DocStructHasNoTypeException, PreferencesException,
@@ -103,160 +109,524 @@ public class NewspaperExportPlugin implements IExportPlugin, IPlugin {
     public boolean startExport(Process process, String destination) throws IOException, InterruptedException, DocStructHasNoTypeException,
             PreferencesException, WriteException, MetadataTypeNotAllowedException, ExportFileException, UghHelperException, ReadException,
             SwapException, DAOException, TypeNotAllowedForParentException {
-        problems = new ArrayList<>();
+        ExportMetrics exportMetrics = metrics == null ? new LoggingExportMetrics() : metrics;
+        List<String> exportProblems = Collections.synchronizedList(new ArrayList<>());
+        boolean success = false;
+        try (ExportMetrics.Timer timer = exportMetrics.startTimer(ExportMetrics.Phase.EXPORT)) {
+            success = exportProcess(process, exportMetrics, exportProblems);
+            return success;
+        } finally {
+            problems = Collections.unmodifiableList(new ArrayList<>(exportProblems));
+            exportMetrics.exportFinished(process, success);
+        }
+    }
 
+    private boolean exportProcess(Process process, ExportMetrics exportMetrics, List<String> problems) throws IOException, InterruptedException,
+            DocStructHasNoTypeException, PreferencesException, WriteException, MetadataTypeNotAllowedException, ReadException, SwapException,
+            DAOException, TypeNotAllowedForParentException {
         String projectName = process.getProjekt().getTitel();
-        String goobiId = String.valueOf(process.getId());
-
-        prefs = process.getRegelsatz().getPreferences();
-        XMLConfiguration globalSettings = ConfigPlugins.getPluginConfig(title);
-        globalSettings.setExpressionEngine(new XPathExpressionEngine());
-
-        SubnodeConfiguration projectSettings = null;
-        // order of configuration is:
-        // 1.) project name and step name matches
-        // 2.) step name matches and project is *
-        // 3.) project name matches and step name is *
-        // 4.) project name and step name are *
-        try {
-            projectSettings = globalSettings.configurationAt("//config[./project = '" + projectName + "']");
-        } catch (IllegalArgumentException e) {
-            try {
-                projectSettings = globalSettings.configurationAt("//config[./project = '*']");
-            } catch (IllegalArgumentException e1) {
-                log.error(e1);
+
+        NewspaperExportConfiguration configuration;
+        try (ExportMetrics.Timer timer = exportMetrics.startTimer(ExportMetrics.Phase.CONFIGURATION)) {
+            configuration = NewspaperExportConfiguration.getConfiguration(title, projectName);
+        }
+        NewspaperExportContext context = new NewspaperExportContext(process, configuration, false, exportMetrics, problems, exportImages,
+                exportFulltext);
+        Prefs prefs = context.getPrefs();
+
+        String finalExportFolder = configuration.getExportFolder();
+
+        // read fileformat
+        Fileformat fileformat;
+        try (ExportMetrics.Timer timer = exportMetrics.startTimer(ExportMetrics.Phase.READ_METADATA)) {
+            fileformat = process.readMetadataFile();
+        }
+        DigitalDocument digitalDocument = fileformat.getDigitalDocument();
+
+        DocStruct newspaper = digitalDocument.getLogicalDocStruct();
+        List<Volume> volumes = validateNewspaper(context, newspaper);
+        if (volumes == null) {
+            return false;
+        }
+
+        // all issues are valid, start export
+        DocStructType issueType = prefs.getDocStrctTypeByName(configuration.getIssueDocstruct());
+        DocStructType pageType = prefs.getDocStrctTypeByName("page");
+
+        List<ProjectFileGroup> myFilegroups = getProjectFileGroups(configuration, process.getProjekt().getFilegroups());
+
+        boolean useOriginalFiles = false;
+        if (myFilegroups != null) {
+            for (ProjectFileGroup pfg : myFilegroups) {
+                if (pfg.isUseOriginalFiles()) {
+                    useOriginalFiles = true;
+                }
+            }
+        }
+        // resolve the process folders once, the process object is not used concurrently
+        String imagesFolder = useOriginalFiles || context.isExportImages() ? process.getImagesTifDirectory(false) : null;
+        String altoFolder = context.isExportFulltext() ? process.getOcrAltoDirectory() : null;
+        // list the media folder once, all issues look up their original file names in the same index
+        Map<String, Path> originalFiles = useOriginalFiles ? indexFilesByBasename(StorageProvider.getInstance().listFiles(imagesFolder)) : null;
+        List<ProjectFileGroup> activeFilegroups = getActiveFilegroups(process, myFilegroups);
+        // the METS header and the file group paths are the same for all issues, replace their variables once
+        MetsHeaderParameters metsParameters;
+        StreamingMetsWriter metsWriter;
+        DocStruct newspaperMetadata;
+        try (ExportMetrics.Timer timer = exportMetrics.startTimer(ExportMetrics.Phase.METS_HEADER)) {
+            metsParameters = new MetsHeaderParameters(context, new VariableReplacer(digitalDocument, prefs, process, null), activeFilegroups);
+        }
+        try (ExportMetrics.Timer timer = exportMetrics.startTimer(ExportMetrics.Phase.PREPARATION)) {
+            metsWriter = configuration.isStreamingMetsWriter() ? createStreamingMetsWriter(context, metsParameters, activeFilegroups) : null;
+            // the metadata of the newspaper is the same for all years, translate it only once
+            newspaperMetadata = createNewspaperMetadata(context, newspaper, issueType);
+        }
+
+        if (configuration.isIncremental()) {
+            // the manifests are kept outside of the export folder, harvesters of the export folder do not see them
+            Path manifestFolder = Paths.get(configuration.getManifestFolder() == null ? process.getProcessDataDirectory()
+                    : configuration.getManifestFolder());
+            StorageProvider.getInstance().createDirectories(manifestFolder);
+            for (Volume volume : volumes) {
+                volume.manifestFile = manifestFolder.resolve(volume.identifier + ".manifest");
             }
         }
 
-        writeIdentifierMappingFile = globalSettings.getBoolean("/identifierMapping/@enabled", false);
-        identifierMappingFileFolderName = globalSettings.getString("/identifierMapping/mappingFolder");
-        identifierMappingFilePrefix = globalSettings.getString("/identifierMapping/urlPrefix");
+        // each file is staged on the file system of its target, a failed export does not leave incomplete issues behind
+        List<Path> targetRoots = new ArrayList<>();
+        targetRoots.add(Paths.get(finalExportFolder));
+        if (context.isExportImages()) {
+            targetRoots.add(getTargetRoot(configuration.getExportImageFolder()));
+        }
+        if (context.isExportFulltext()) {
+            targetRoots.add(getTargetRoot(configuration.getExportAltoFolder()));
+        }
+        if (configuration.isWriteIdentifierMappingFile()) {
+            targetRoots.add(Paths.get(configuration.getIdentifierMappingFileFolderName()));
+        }
+        try (StagingArea staging = StagingArea.create(targetRoots.toArray(new Path[targetRoots.size()]));
+                FileCopyPipeline fileCopy = new FileCopyPipeline(configuration.getNumberOfTransfers(), configuration.getLinkMode())) {
+            fileCopy.setSkipUnchanged(configuration.isIncremental());
+            fileCopy.setStagingArea(staging);
+            fileCopy.setChecksumAlgorithm(configuration.getChecksumAlgorithm());
+            fileCopy.setMetrics(exportMetrics);
+            List<Callable<Volume>> preparations = new ArrayList<>(volumes.size());
+            for (Volume volume : volumes) {
+                preparations.add(() -> prepareVolume(context, digitalDocument, volume, newspaperMetadata, issueType, pageType, metsParameters,
+                        metsWriter, originalFiles, staging, finalExportFolder, imagesFolder, altoFolder, fileCopy));
+            }
+            try (ExportMetrics.Timer timer = exportMetrics.startTimer(ExportMetrics.Phase.VOLUME_PREPARATION)) {
+                runTasks(preparations, configuration.getNumberOfThreads());
+            }
+
+            // the issues of all years are exported by the same threads
+            List<Callable<List<String>>> issueExports = new ArrayList<>();
+            for (Volume volume : volumes) {
+                issueExports.addAll(volume.issueExports);
+            }
+            List<List<String>> results = runTasks(issueExports, configuration.getNumberOfThreads());
+            // a failed transfer only fails its own issue if the export continues on errors
+            Map<String, Exception> copyFailures = Collections.emptyMap();
+            if (configuration.isContinueOnError()) {
+                copyFailures = fileCopy.awaitFailures();
+            } else {
+                fileCopy.await();
+            }
+            // collect the mapping lines in issue order, independent from the order in which the exports finished
+            int result = 0;
+            for (Volume volume : volumes) {
+                for (String issueIdentifier : volume.issueIdentifiers) {
+                    List<String> lines = results.get(result++);
+                    Exception copyFailure = copyFailures.get(issueIdentifier);
+                    if (copyFailure != null) {
+                        problems.add("Issue " + issueIdentifier + " failed: " + copyFailure.getMessage());
+                        lines = null;
+                    }
+                    if (lines == null) {
+                        // the files of the issue are not published, an earlier export of the issue stays unchanged
+                        staging.discard(issueIdentifier);
+                        volume.failedIssues.add(issueIdentifier);
+                        exportMetrics.increment(ExportMetrics.Counter.FAILED_ISSUES, 1);
+                    } else {
+                        volume.identifierMappingLines.addAll(lines);
+                        writeChecksumFile(configuration, volume, issueIdentifier, fileCopy, staging);
+                    }
+                }
+            }
+            fileCopy.logStatistics();
 
-        exportMode = projectSettings.getString("/mode", "ddb");
+            if (context.getConfiguration().isWriteIdentifierMappingFile()) {
+                Path mappingFolder = Paths.get(context.getConfiguration().getIdentifierMappingFileFolderName());
+                for (Volume volume : volumes) {
+                    if (volume.identifierMappingLines.isEmpty()) {
+                        continue;
+                    }
+                    try (ExportMetrics.Timer timer = exportMetrics.startTimer(ExportMetrics.Phase.MAPPING_FILE)) {
+                        Path mappingFile = staging.stageLast(null, mappingFolder.resolve(volume.identifier + ".txt"));
+                        Files.write(mappingFile, volume.identifierMappingLines, StandardCharsets.UTF_8);
+                    }
+                }
+            }
 
-        exportImages = projectSettings.getBoolean("/export/images", false);
-        exportFulltext = projectSettings.getBoolean("/export/fulltext", false);
+            // update/save generated data in goobi process
+            try (ExportMetrics.Timer timer = exportMetrics.startTimer(ExportMetrics.Phase.SAVE_METADATA)) {
+                process.writeMetadataFile(fileformat);
+            }
 
-        String piResolverUrl = projectSettings.getString("/resolverUrl");
+            // move all files to their targets, the METS files last
+            try (ExportMetrics.Timer timer = exportMetrics.startTimer(ExportMetrics.Phase.PUBLISH)) {
+                exportMetrics.increment(ExportMetrics.Counter.PUBLISHED_FILES, staging.publish());
+            }
+        }
 
-        Path tmpExportFolder = Files.createTempDirectory("mets_export");
+        boolean checksumsValid = !configuration.isVerifyChecksums() || verifyChecksums(context, volumes);
 
-        String finalExportFolder = projectSettings.getString("/export/exportFolder");
-        if (!finalExportFolder.endsWith("/")) {
-            finalExportFolder = finalExportFolder + "/";
+        int exportedIssues = 0;
+        int skippedIssues = 0;
+        for (Volume volume : volumes) {
+            for (String failedIssue : volume.failedIssues) {
+                // the next incremental export repeats the issue
+                if (volume.manifest != null) {
+                    volume.manifest.removeFingerprint(failedIssue);
+                }
+            }
+            exportedIssues += volume.issues.size() - volume.failedIssues.size();
+            skippedIssues += volume.invalidIssues + volume.failedIssues.size();
+            if (volume.manifest != null) {
+                for (String oldIssueIdentifier : volume.previousManifest.getIssueIdentifiers()) {
+                    if (volume.manifest.getFingerprint(oldIssueIdentifier) == null) {
+                        deleteIssueOutputs(configuration, oldIssueIdentifier);
+                    }
+                }
+                // written last, an interrupted export is repeated in the next run
+                volume.manifest.write(volume.manifestFile);
+                log.info("Incremental export of {}: {} of {} issues unchanged", volume.identifier, volume.unchangedIssues, volume.issues.size());
+            }
+        }
+        if (skippedIssues > 0) {
+            // the exported issues are complete, the export is reported as failed to get the skipped issues fixed
+            problems.add("Partial export: " + exportedIssues + " of " + (exportedIssues + skippedIssues) + " issues exported, " + skippedIssues
+                    + " issues skipped");
+            return false;
         }
+        return checksumsValid;
+    }
 
-        // read fileformat
-        Fileformat fileformat = process.readMetadataFile();
-        DigitalDocument digitalDocument = fileformat.getDigitalDocument();
+    /**
+     * Writes the checksums of the images and ALTO files of an exported issue into the staging area. The file is published together with the
+     * images, before the METS file. Issues without transferred files, e.g. unchanged issues of an incremental export, keep their file.
+     */
+    private void writeChecksumFile(NewspaperExportConfiguration configuration, Volume volume, String issueIdentifier, FileCopyPipeline fileCopy,
+            StagingArea staging) throws IOException {
+        if (configuration.getChecksumAlgorithm() == null) {
+            return;
+        }
+        Map<Path, String> checksums = fileCopy.getChecksums(issueIdentifier);
+        if (checksums.isEmpty()) {
+            return;
+        }
+        ChecksumFile checksumFile = new ChecksumFile(configuration.getChecksumAlgorithm(), checksums);
+        Path stagedFile = staging.stage(issueIdentifier, getChecksumFile(configuration, issueIdentifier));
+        checksumFile.write(stagedFile, Paths.get(configuration.getExportFolder()));
+        volume.checksumFiles.put(issueIdentifier, checksumFile);
+    }
 
-        DocStruct newspaper = digitalDocument.getLogicalDocStruct();
-        DocStruct newspaperYear = newspaper.getAllChildren().get(0);
-        List<DocStruct> issues = newspaperYear.getAllChildren();
-        DocStruct oldPhysical = digitalDocument.getPhysicalDocStruct();
+    private static Path getChecksumFile(NewspaperExportConfiguration configuration, String issueIdentifier) {
+        String extension = ChecksumFile.getFileExtension(configuration.getChecksumAlgorithm());
+        return Paths.get(configuration.getExportFolder(), issueIdentifier + "." + extension);
+    }
+
+    /**
+     * Reads the published images and ALTO files again and compares them with their checksums. The issues are checked at the same time with
+     * the number of copy threads. An issue with a wrong checksum is removed from the manifest, so the next incremental export repeats it.
+     *
+     * @return true, if all checksums match
+     */
+    private boolean verifyChecksums(NewspaperExportContext context, List<Volume> volumes) throws IOException, InterruptedException,
+            PreferencesException, WriteException, MetadataTypeNotAllowedException, TypeNotAllowedForParentException, DocStructHasNoTypeException {
+        List<Callable<List<Path>>> verifications = new ArrayList<>();
+        for (Volume volume : volumes) {
+            for (ChecksumFile checksumFile : volume.checksumFiles.values()) {
+                verifications.add(checksumFile::verify);
+            }
+        }
+        List<List<Path>> invalidFiles;
+        try (ExportMetrics.Timer timer = context.getMetrics().startTimer(ExportMetrics.Phase.VERIFICATION)) {
+            invalidFiles = runTasks(verifications, context.getConfiguration().getNumberOfTransfers());
+        }
+
+        boolean valid = true;
+        int result = 0;
+        for (Volume volume : volumes) {
+            for (String issueIdentifier : volume.checksumFiles.keySet()) {
+                List<Path> files = invalidFiles.get(result++);
+                if (files.isEmpty()) {
+                    continue;
+                }
+                valid = false;
+                for (Path file : files) {
+                    context.getProblems().add("Issue " + issueIdentifier + ": checksum of " + file + " does not match");
+                }
+                if (volume.manifest != null) {
+                    volume.manifest.removeFingerprint(issueIdentifier);
+                }
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * Runs the validation of the export without writing any file. All issues are checked at the same time, the validation does not stop at
+     * the first invalid issue. Missing metadata is only added to the docstructs in memory, the metadata file of the process is not changed.
+     *
+     * @return all problems that would prevent the export, an empty list if the process can be exported
+     */
+    public List<String> validateExport(Process process) throws IOException, InterruptedException, DocStructHasNoTypeException,
+            PreferencesException, WriteException, MetadataTypeNotAllowedException, ReadException, SwapException,
+            TypeNotAllowedForParentException {
+        NewspaperExportConfiguration configuration = NewspaperExportConfiguration.getConfiguration(title, process.getProjekt().getTitel());
+        NewspaperExportContext context = new NewspaperExportContext(process, configuration, true, new InMemoryExportMetrics(),
+                Collections.synchronizedList(new ArrayList<>()), exportImages, exportFulltext);
+        List<String> validationProblems = context.getProblems();
+
+        DocStruct newspaper = process.readMetadataFile().getDigitalDocument().getLogicalDocStruct();
+        List<Volume> volumes = validateNewspaper(context, newspaper);
+        if (volumes != null && context.isDdbMode() && context.isExportFulltext()) {
+            // the export fails if an ALTO file is missing, list the folder once instead of checking each page
+            Set<String> altoFiles = new HashSet<>();
+            for (Path file : StorageProvider.getInstance().listFiles(process.getOcrAltoDirectory())) {
+                altoFiles.add(file.getFileName().toString());
+            }
+            for (Volume volume : volumes) {
+                for (int i = 0; i < volume.issues.size(); i++) {
+                    checkAltoFiles(context, volume.issues.get(i), volume.issueIdentifiers.get(i), altoFiles);
+                }
+            }
+        }
+        log.info("Validation of process {} found {} problems", process.getId(), validationProblems.size());
+        problems = Collections.unmodifiableList(new ArrayList<>(validationProblems));
+        return new ArrayList<>(validationProblems);
+    }
+
+    private static void checkAltoFiles(NewspaperExportContext context, DocStruct issue, String issueIdentifier, Set<String> altoFiles) {
+        if (issue.getAllToReferences() == null) {
+            return;
+        }
+        for (Reference ref : issue.getAllToReferences()) {
+            String filename = Paths.get(ref.getTarget().getImageName()).getFileName().toString();
+            String altoFile = filename.substring(0, filename.indexOf(".")) + ".xml";
+            if (!altoFiles.contains(altoFile)) {
+                context.getProblems().add("Issue " + issueIdentifier + ": ALTO file " + altoFile + " is missing");
+            }
+        }
+    }
+
+    /**
+     * Checks the newspaper and validates the issues of all years. Missing metadata that can be created is added to the docstructs. If only
+     * the validation runs, the issues are still validated after a problem of the newspaper, as long as their identifiers can be created.
+     *
+     * @return the years with their valid issues, or null if the newspaper cannot be exported
+     */
+    private List<Volume> validateNewspaper(NewspaperExportContext context, DocStruct newspaper) throws IOException, InterruptedException,
+            PreferencesException, WriteException, MetadataTypeNotAllowedException, TypeNotAllowedForParentException, DocStructHasNoTypeException {
+        NewspaperExportConfiguration configuration = context.getConfiguration();
+        List<String> problems = context.getProblems();
 
         // check if it is a newspaper
         if (!newspaper.getType().isAnchor()) {
             problems.add(newspaper.getType().getName() + " has the wrong type. It is not an anchor.");
-            return false;
+            return null;
+        }
+        List<DocStruct> years = newspaper.getAllChildren();
+        if (years == null || years.isEmpty()) {
+            problems.add("Export aborted, the newspaper has no volume");
+            return null;
         }
 
         // validate mandatory fields, check if they are available or can be created
-        MetadataType zdbIdAnalogType = prefs.getMetadataTypeByName(globalSettings.getString("/metadata/zdbidanalog"));
-        MetadataType zdbIdDigitalType = prefs.getMetadataTypeByName(globalSettings.getString("/metadata/zdbiddigital"));
-        MetadataType purlType = prefs.getMetadataTypeByName(globalSettings.getString("/metadata/purl"));
-        // type can be custom or default
-        purlMode = globalSettings.getString("/metadata/purl/@type", "default");
-        purlPattern = globalSettings.getString("/metadata/purl/@pattern", "");
-
-        MetadataType identifierType = prefs.getMetadataTypeByName(globalSettings.getString("/metadata/identifier"));
-        MetadataType issueDateType = prefs.getMetadataTypeByName(globalSettings.getString("/metadata/issueDate"));
-        //
-        MetadataType labelType = prefs.getMetadataTypeByName(globalSettings.getString("/metadata/titleLabel"));
-        MetadataType mainTitleType = prefs.getMetadataTypeByName(globalSettings.getString("/metadata/modsTitle"));
-        //
-        MetadataType issueNumberType = prefs.getMetadataTypeByName(globalSettings.getString("/metadata/issueNumber"));
-        MetadataType sortNumberType = prefs.getMetadataTypeByName(globalSettings.getString("/metadata/sortNumber"));
-        //
-        MetadataType languageType = prefs.getMetadataTypeByName(globalSettings.getString("/metadata/language"));
-        MetadataType accessConditionType = prefs.getMetadataTypeByName(globalSettings.getString("/metadata/licence"));
-        //
-        MetadataType resourceType = prefs.getMetadataTypeByName(globalSettings.getString("/metadata/resourceType"));
-        //
-        //
-        DocStructType issueType = prefs.getDocStrctTypeByName(globalSettings.getString("/docstruct/issue"));
-        DocStructType pageType = prefs.getDocStrctTypeByName("page");
+        MetadataType mainTitleType = context.getPrefs().getMetadataTypeByName(configuration.getMainTitleField());
+        MetadataExtractor extractor = configuration.getMetadataExtractor();
+        MetadataExtractor.Values newspaperValues = extractor.extract(newspaper);
+        String zdbIdAnalog = newspaperValues.get(MetadataExtractor.Field.ZDB_ID_ANALOG);
+        String zdbIdDigital = newspaperValues.get(MetadataExtractor.Field.ZDB_ID_DIGITAL);
+        String identifier = newspaperValues.get(MetadataExtractor.Field.IDENTIFIER);
+        String titleLabel = newspaperValues.get(MetadataExtractor.Field.TITLE_LABEL);
+        String mainTitle = newspaperValues.get(MetadataExtractor.Field.MAIN_TITLE);
+        String language = newspaperValues.get(MetadataExtractor.Field.LANGUAGE);
+        String accessCondition = newspaperValues.get(MetadataExtractor.Field.LICENCE);
 
-        VariableReplacer vp = new VariableReplacer(digitalDocument, prefs, process, null);
-        List<ProjectFileGroup> myFilegroups = getProjectFileGroups(projectSettings, process.getProjekt().getFilegroups());
-
-        String zdbIdAnalog = null;
-        String zdbIdDigital = null;
-        String identifier = null;
-        String titleLabel = null;
-        String mainTitle = null;
-        String language = null;
-        String accessCondition = null;
-
-        for (Metadata md : newspaper.getAllMetadata()) {
-            //  get zdb id
-            if (md.getType().equals(zdbIdAnalogType)) {
-                zdbIdAnalog = md.getValue();
-            }
-            if (md.getType().equals(zdbIdDigitalType)) {
-                zdbIdDigital = md.getValue();
-            }
-            //  get identifier
-            else if (md.getType().equals(identifierType)) {
-                identifier = md.getValue();
-            } else if (md.getType().equals(mainTitleType)) {
-                mainTitle = md.getValue();
-            } else if (md.getType().equals(labelType)) {
-                titleLabel = md.getValue();
-            } else if (md.getType().equals(languageType)) {
-                language = md.getValue();
-            } else if (md.getType().equals(accessConditionType)) {
-                accessCondition = md.getValue();
-            }
-        }
         if (StringUtils.isBlank(mainTitle) && StringUtils.isNotBlank(titleLabel)) {
             Metadata md = new Metadata(mainTitleType);
             md.setValue(titleLabel);
             newspaper.addMetadata(md);
         }
 
-        if ("ddb".equals(exportMode) && (StringUtils.isBlank(zdbIdAnalog) || StringUtils.isBlank(zdbIdDigital) || StringUtils.isBlank(identifier))) {
+        if (context.isDdbMode() && (StringUtils.isBlank(zdbIdAnalog) || StringUtils.isBlank(zdbIdDigital) || StringUtils.isBlank(identifier))) {
             problems.add("Export aborted, ZDB id or record id is missing");
-            return false;
+            // without record id the identifiers of the issues cannot be created
+            if (!context.isValidationOnly() || StringUtils.isBlank(identifier)) {
+                return null;
+            }
         }
         if (StringUtils.isBlank(identifier)) {
             problems.add("Export aborted, record id is missing");
-            return false;
+            return null;
         }
 
-        String sortNumber = null;
-        String issueNumber = null;
-        String volumeIdentifier = null;
+        try (ExportMetrics.Timer timer = context.getMetrics().startTimer(ExportMetrics.Phase.VALIDATION)) {
+            return validateVolumes(context, newspaper, years, identifier, language, accessCondition);
+        }
+    }
 
-        for (Metadata md : newspaperYear.getAllMetadata()) {
-            // get current year
+    /**
+     * Creates the export tasks of the issues of a year. In incremental mode the fingerprints of the last export are compared with the
+     * current ones, unchanged issues only contribute their lines of the mapping file.
+     */
+    private Volume prepareVolume(NewspaperExportContext context, DigitalDocument digitalDocument, Volume volume, DocStruct newspaperMetadata,
+            DocStructType issueType, DocStructType pageType, MetsHeaderParameters metsParameters, StreamingMetsWriter metsWriter,
+            Map<String, Path> originalFiles, StagingArea staging, String finalExportFolder, String imagesFolder, String altoFolder,
+            FileCopyPipeline fileCopy) throws IOException {
+        NewspaperExportConfiguration configuration = context.getConfiguration();
+        // the metadata of the newspaper and the year is the same for all issues, translate it only once
+        DocStruct inheritedMetadata = createInheritedMetadata(context, newspaperMetadata, volume.year, issueType);
+
+        String sharedFingerprint = null;
+        if (volume.manifestFile != null) {
+            volume.previousManifest = ExportManifest.read(volume.manifestFile);
+            volume.manifest = new ExportManifest();
+            sharedFingerprint = createSharedFingerprint(context, metsParameters, inheritedMetadata);
+        }
 
-            if (md.getType().equals(sortNumberType)) {
-                sortNumber = md.getValue();
-            }
-            if (md.getType().equals(issueNumberType)) {
-                issueNumber = md.getValue();
+        for (int i = 0; i < volume.issues.size(); i++) {
+            DocStruct issue = volume.issues.get(i);
+            String issueIdentifier = volume.issueIdentifiers.get(i);
+            if (volume.manifest != null) {
+                String fingerprint = createIssueFingerprint(context, sharedFingerprint, issue, originalFiles, imagesFolder, altoFolder);
+                volume.manifest.setFingerprint(issueIdentifier, fingerprint);
+                if (fingerprint.equals(volume.previousManifest.getFingerprint(issueIdentifier))
+                        && StorageProvider.getInstance().isFileExists(Paths.get(finalExportFolder, issueIdentifier + ".xml"))) {
+                    // the exported files are still valid, only the mapping file needs the lines of the issue
+                    volume.unchangedIssues++;
+                    context.getMetrics().increment(ExportMetrics.Counter.UNCHANGED_ISSUES, 1);
+                    volume.issueExports.add(() -> createIdentifierMappingLines(context, issue, issueIdentifier, volume.identifier));
+                    continue;
+                }
             }
-            if (language == null && md.getType().equals(languageType)) {
-                language = md.getValue();
+            Callable<List<String>> issueExport = () -> exportIssue(context, digitalDocument, inheritedMetadata, issue, issueIdentifier,
+                    volume.identifier, issueType, pageType, metsParameters, metsWriter, originalFiles, staging, imagesFolder, altoFolder, fileCopy);
+            volume.issueExports.add(configuration.isContinueOnError() ? catchFailure(context, issueIdentifier, issueExport) : issueExport);
+        }
+        return volume;
+    }
+
+    /**
+     * Reports the error of an issue export as problem of the issue. The task returns null instead of throwing the error, so the other
+     * issues are still exported.
+     */
+    private Callable<List<String>> catchFailure(NewspaperExportContext context, String issueIdentifier, Callable<List<String>> issueExport) {
+        return () -> {
+            try {
+                return issueExport.call();
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                log.error("Export of issue {} failed", issueIdentifier, e);
+                context.getProblems().add("Issue " + issueIdentifier + " failed: " + e.getMessage());
+                return null;
             }
+        };
+    }
 
-            if (accessCondition == null && md.getType().equals(accessConditionType)) {
-                accessCondition = md.getValue();
+    /**
+     * Validates the issues of all years and adds their missing metadata. The metadata of the years is completed first, then the issues are
+     * validated at the same time, each validation only changes its own issue.
+     *
+     * @return the years with their valid issues, or null if an issue is invalid and the export does not continue on errors
+     */
+    private List<Volume> validateVolumes(NewspaperExportContext context, DocStruct newspaper, List<DocStruct> years, String identifier,
+            String newspaperLanguage, String newspaperLicence) throws IOException, InterruptedException, PreferencesException, WriteException,
+            MetadataTypeNotAllowedException, TypeNotAllowedForParentException, DocStructHasNoTypeException {
+        NewspaperExportConfiguration configuration = context.getConfiguration();
+        MetadataExtractor extractor = configuration.getMetadataExtractor();
+        boolean stopAtInvalidIssue = !configuration.isContinueOnError() && !context.isValidationOnly();
+        // index of the first invalid issue, if the export stops the issues after it are not validated
+        AtomicInteger firstInvalidIssue = new AtomicInteger(Integer.MAX_VALUE);
+
+        List<String> volumeIdentifiers = new ArrayList<>(years.size());
+        List<List<DocStruct>> issuesOfYears = new ArrayList<>(years.size());
+        List<Callable<String>> validations = new ArrayList<>();
+        // problems of each issue, they are reported in the order of the issues and not in the order the threads find them
+        List<List<String>> issueProblems = new ArrayList<>();
+        for (DocStruct newspaperYear : years) {
+            MetadataExtractor.Values yearValues = extractor.extract(newspaperYear);
+            volumeIdentifiers.add(yearValues.get(MetadataExtractor.Field.IDENTIFIER));
+            IssueValidator validator = createIssueValidator(context, newspaper, newspaperYear, yearValues, identifier, newspaperLanguage,
+                    newspaperLicence);
+            List<DocStruct> issues = newspaperYear.getAllChildren() == null ? Collections.emptyList() : newspaperYear.getAllChildren();
+            issuesOfYears.add(issues);
+            for (DocStruct issue : issues) {
+                int issueIndex = validations.size();
+                List<String> problems = new ArrayList<>(1);
+                issueProblems.add(problems);
+                validations.add(() -> {
+                    if (stopAtInvalidIssue && issueIndex > firstInvalidIssue.get()) {
+                        return null;
+                    }
+                    String issueIdentifier = validator.validate(issue, problems);
+                    if (issueIdentifier == null) {
+                        firstInvalidIssue.accumulateAndGet(issueIndex, Math::min);
+                    }
+                    return issueIdentifier;
+                });
             }
-            if (md.getType().equals(identifierType)) {
-                volumeIdentifier = md.getValue();
+        }
+        List<String> identifiers = runTasks(validations, configuration.getNumberOfThreads());
+        for (int i = 0; i < identifiers.size(); i++) {
+            context.getProblems().addAll(issueProblems.get(i));
+            if (stopAtInvalidIssue && identifiers.get(i) == null) {
+                // only the first invalid issue is reported, like in a sequential validation
+                return null;
+            }
+        }
+
+        List<Volume> volumes = new ArrayList<>(years.size());
+        int index = 0;
+        for (int year = 0; year < years.size(); year++) {
+            List<DocStruct> issues = issuesOfYears.get(year);
+            List<DocStruct> validIssues = new ArrayList<>(issues.size());
+            List<String> issueIdentifiers = new ArrayList<>(issues.size());
+            int invalidIssues = 0;
+            for (DocStruct issue : issues) {
+                String issueIdentifier = identifiers.get(index++);
+                if (issueIdentifier == null) {
+                    invalidIssues++;
+                    continue;
+                }
+                validIssues.add(issue);
+                issueIdentifiers.add(issueIdentifier);
             }
+            volumes.add(new Volume(years.get(year), volumeIdentifiers.get(year), validIssues, issueIdentifiers, invalidIssues));
+        }
+        return volumes;
+    }
+
+    /**
+     * Adds the missing metadata of a year and creates the validator of its issues.
+     */
+    private IssueValidator createIssueValidator(NewspaperExportContext context, DocStruct newspaper, DocStruct newspaperYear,
+            MetadataExtractor.Values yearValues, String identifier, String newspaperLanguage, String newspaperLicence) {
+        NewspaperExportConfiguration configuration = context.getConfiguration();
+        MetadataType sortNumberType = context.getPrefs().getMetadataTypeByName(configuration.getSortNumberField());
+        String sortNumber = yearValues.get(MetadataExtractor.Field.SORT_NUMBER);
+        String issueNumber = yearValues.get(MetadataExtractor.Field.ISSUE_NUMBER);
+        // language and licence of the newspaper are preferred, otherwise the first value of the year is used
+        String language = newspaperLanguage;
+        if (language == null) {
+            language = yearValues.getFirst(MetadataExtractor.Field.LANGUAGE);
+        }
+        String accessCondition = newspaperLicence;
+        if (accessCondition == null) {
+            accessCondition = yearValues.getFirst(MetadataExtractor.Field.LICENCE);
         }
 
         if (StringUtils.isBlank(sortNumber) && StringUtils.isNotBlank(issueNumber) && StringUtils.isNumeric(issueNumber)) {
@@ -268,449 +638,567 @@ public class NewspaperExportPlugin implements IExportPlugin, IPlugin {
                 log.info(e);
             }
         }
+        return new IssueValidator(context, newspaper, newspaperYear, identifier, language, accessCondition);
+    }
 
-        List<String> identifierMappingLines = new ArrayList<>();
-
-        // check all issues
-        for (DocStruct issue : issues) {
-
-            // check if required metadata is available, otherwise add it
-            String issueLabel = null;
-            String issueTitle = null;
-            String issueNo = null;
-            String issueSortingNumber = null;
-            String issueLanguage = null;
-            String issueLicence = null;
 
-            String issueIdentifier = null;
-            String dateValue = null;
-            String resource = null;
-            String purl = null;
+    /**
+     * Creates the streaming writer for the METS files. If the MODS mapping of the ruleset, the METS header or a file group uses a feature the
+     * writer does not support, null is returned and the METS files are written with UGH.
+     */
+    StreamingMetsWriter createStreamingMetsWriter(NewspaperExportContext context, MetsHeaderParameters metsParameters,
+            List<ProjectFileGroup> filegroups) {
+        String unsupportedParameter = StreamingMetsWriter.getUnsupportedParameter(metsParameters);
+        if (unsupportedParameter != null) {
+            log.warn("The streaming METS writer is configured but not used, METS parameter {} is only written by UGH", unsupportedParameter);
+            return null;
+        }
+        for (ProjectFileGroup filegroup : filegroups) {
+            if (StringUtils.isNotBlank(filegroup.getIgnoreMimetypes())) {
+                log.warn("The streaming METS writer is configured but not used, file group {} ignores file extensions", filegroup.getName());
+                return null;
+            }
+        }
+        try {
+            return new StreamingMetsWriter(ModsMapping.compile(context.getPrefs().getPreferenceNode("METS")), metsParameters,
+                    context.getConfiguration().getMainTitleField());
+        } catch (ModsMapping.UnsupportedMappingException e) {
+            log.warn("The streaming METS writer is configured but not used, the ruleset is not supported: {}", e.getMessage());
+            return null;
+        }
+    }
 
-            for (Metadata md : issue.getAllMetadata()) {
+    /**
+     * Fingerprint of everything that is the same for all issues of the export: the export settings, the METS header and the inherited
+     * metadata of the newspaper and the year.
+     */
+    String createSharedFingerprint(NewspaperExportContext context, MetsHeaderParameters metsParameters, DocStruct inheritedMetadata) {
+        NewspaperExportConfiguration configuration = context.getConfiguration();
+        ExportManifest.Fingerprint fingerprint = new ExportManifest.Fingerprint()
+                .add(configuration.getExportMode())
+                .add(String.valueOf(context.isExportImages()))
+                .add(String.valueOf(context.isExportFulltext()))
+                .add(configuration.getExportImageFolder())
+                .add(configuration.getExportAltoFolder())
+                .add(configuration.getIssueDocstruct())
+                .add(configuration.getLinkMode().name())
+                .add(String.valueOf(configuration.isStreamingMetsWriter()));
+        metsParameters.addTo(fingerprint);
+        addDocstruct(fingerprint, inheritedMetadata);
+        return fingerprint.toHex();
+    }
 
-                if (md.getType().equals(identifierType)) {
-                    issueIdentifier = md.getValue();
-                }
-                if (md.getType().equals(labelType)) {
-                    issueLabel = md.getValue();
-                }
-                if (md.getType().equals(mainTitleType)) {
-                    issueTitle = md.getValue();
+    /**
+     * Fingerprint of a single issue: its metadata, pages and supplements and the size and modification date of the exported source files.
+     */
+    String createIssueFingerprint(NewspaperExportContext context, String sharedFingerprint, DocStruct issue, Map<String, Path> originalFiles,
+            String imagesFolder, String altoFolder) throws IOException {
+        ExportManifest.Fingerprint fingerprint = new ExportManifest.Fingerprint().add(sharedFingerprint);
+        addDocstruct(fingerprint, issue);
+        if (issue.getAllToReferences() != null) {
+            StorageProvider storage = StorageProvider.getInstance();
+            for (Reference ref : issue.getAllToReferences()) {
+                String filename = Paths.get(ref.getTarget().getImageName()).getFileName().toString();
+                if (originalFiles != null) {
+                    Path originalFile = originalFiles.get(getBasename(filename).toLowerCase(Locale.ROOT));
+                    fingerprint.add(originalFile == null ? null : originalFile.getFileName().toString());
                 }
-                if (md.getType().equals(issueNumberType)) {
-                    issueNo = md.getValue();
+                if (context.isExportImages()) {
+                    addFile(fingerprint, storage, Paths.get(imagesFolder, filename));
                 }
-                if (md.getType().equals(sortNumberType)) {
-                    issueSortingNumber = md.getValue();
-                }
-                if (md.getType().equals(issueDateType)) {
-                    dateValue = md.getValue();
-                }
-
-                if (md.getType().equals(resourceType)) {
-                    resource = md.getValue();
-                }
-                if (md.getType().equals(purlType)) {
-                    purl = md.getValue();
+                if (context.isExportFulltext()) {
+                    addFile(fingerprint, storage, Paths.get(altoFolder, filename.substring(0, filename.indexOf(".")) + ".xml"));
                 }
+            }
+        }
+        return fingerprint.toHex();
+    }
 
-                if (md.getType().equals(languageType)) {
-                    issueLanguage = md.getValue();
-                }
+    private static void addFile(ExportManifest.Fingerprint fingerprint, StorageProvider storage, Path file) throws IOException {
+        if (storage.isFileExists(file)) {
+            fingerprint.add(storage.getFileSize(file)).add(storage.getLastModifiedDate(file));
+        } else {
+            fingerprint.add(-1);
+        }
+    }
 
-                if (md.getType().equals(accessConditionType)) {
-                    issueLicence = md.getValue();
-                }
+    /**
+     * Adds the type, metadata, persons, corporates and groups of the docstruct, its pages and all children to the fingerprint.
+     */
+    private static void addDocstruct(ExportManifest.Fingerprint fingerprint, DocStruct docstruct) {
+        fingerprint.add(docstruct.getType().getName());
+        addMetadata(fingerprint, docstruct.getAllMetadata(), docstruct.getAllPersons(), docstruct.getAllCorporates(),
+                docstruct.getAllMetadataGroups());
+        if (docstruct.getAllToReferences() != null) {
+            for (Reference ref : docstruct.getAllToReferences()) {
+                DocStruct page = ref.getTarget();
+                fingerprint.add(page.getImageName());
+                addMetadata(fingerprint, page.getAllMetadata(), null, null, null);
             }
-
-            if (StringUtils.isBlank(dateValue)) {
-                problems.add("Abort export, issue has no publication date");
-                return false;
+        }
+        if (docstruct.getAllChildren() != null) {
+            fingerprint.add(docstruct.getAllChildren().size());
+            for (DocStruct child : docstruct.getAllChildren()) {
+                addDocstruct(fingerprint, child);
             }
+        }
+    }
 
-            if ("ddb".equals(exportMode) && !dateValue.matches("\\d{4}-\\d{2}-\\d{2}")) {
-                problems.add("Issue date " + dateValue + " has the wrong format. Expected is YYYY-MM-DD");
-                return false;
+    /**
+     * Adds the metadata in a sorted order, the order of the metadata can change when the METS file of the process is written and read
+     * again.
+     */
+    private static void addMetadata(ExportManifest.Fingerprint fingerprint, List<Metadata> metadata, List<Person> persons,
+            List<Corporate> corporates, List<MetadataGroup> groups) {
+        List<String> values = new ArrayList<>();
+        if (metadata != null) {
+            for (Metadata md : metadata) {
+                values.add(String.join("\u0000", "md", md.getType().getName(), md.getValue(), md.getAuthorityValue()));
             }
-
-            // create default metadata, if missing
-            if (StringUtils.isBlank(issueTitle) && StringUtils.isNotBlank(issueLabel)) {
-                try {
-                    Metadata md = new Metadata(mainTitleType);
-                    md.setValue(issueLabel);
-                    issue.addMetadata(md);
-                } catch (UGHException e) {
-                    log.info(e);
-                }
+        }
+        if (persons != null) {
+            for (Person p : persons) {
+                values.add(String.join("\u0000", "person", p.getType().getName(), p.getFirstname(), p.getLastname(), p.getAuthorityValue()));
             }
-            // generate new values
-            if (StringUtils.isBlank(issueSortingNumber)) {
-                if (StringUtils.isNotBlank(issueNo) && StringUtils.isNumeric(issueNo)) {
-                    issueSortingNumber = issueNo;
-                } else {
-                    issueSortingNumber = dateValue.replace("-", "");
-                }
-                try {
-                    Metadata md = new Metadata(sortNumberType);
-                    md.setValue(issueSortingNumber);
-                    issue.addMetadata(md);
-                } catch (UGHException e) {
-                    log.info(e);
-                    if ("ddb".equals(exportMode)) {
-                        problems.add("Cannot add created sort number to issue");
-                        return false;
-                    }
-                }
+        }
+        if (corporates != null) {
+            for (Corporate c : corporates) {
+                values.add(String.join("\u0000", "corporate", c.getType().getName(), c.getMainName(), c.getPartName(), c.getAuthorityValue()));
             }
-            if (StringUtils.isBlank(issueLanguage) && StringUtils.isNotBlank(language)) {
-                try {
-                    Metadata md = new Metadata(languageType);
-                    md.setValue(language);
-                    issue.addMetadata(md);
-                } catch (UGHException e) {
-                    log.info(e);
-                    if ("ddb".equals(exportMode)) {
-                        problems.add("Cannot add language to issue");
-                        return false;
-                    }
-                }
+        }
+        Collections.sort(values);
+        fingerprint.add(values.size());
+        for (String value : values) {
+            fingerprint.add(value);
+        }
+        if (groups != null) {
+            fingerprint.add(groups.size());
+            for (MetadataGroup group : groups) {
+                fingerprint.add(group.getType().getName());
+                addMetadata(fingerprint, group.getMetadataList(), group.getPersonList(), group.getCorporateList(), group.getAllMetadataGroups());
             }
+        }
+    }
 
-            if (StringUtils.isBlank(issueLicence) && StringUtils.isNotBlank(accessCondition)) {
-                try {
-                    Metadata md = new Metadata(accessConditionType);
-                    md.setValue(accessCondition);
-                    issue.addMetadata(md);
-                } catch (UGHException e) {
-                    log.info(e);
-                    if ("ddb".equals(exportMode)) {
-                        problems.add("Cannot add license information to issue");
-                        return false;
-                    }
+    /**
+     * Deletes the METS file and the image and ALTO folders of an issue that is no longer part of the volume. Folders are only deleted if
+     * their name contains the issue identifier, otherwise they are shared with the other issues.
+     */
+    private void deleteIssueOutputs(NewspaperExportConfiguration configuration, String issueIdentifier) throws IOException {
+        log.info("Deleting the export of removed issue {}", issueIdentifier);
+        StorageProvider storage = StorageProvider.getInstance();
+        Path metsFile = Paths.get(configuration.getExportFolder(), issueIdentifier + ".xml");
+        if (storage.isFileExists(metsFile)) {
+            storage.deleteFile(metsFile);
+        }
+        if (configuration.getChecksumAlgorithm() != null && storage.isFileExists(getChecksumFile(configuration, issueIdentifier))) {
+            storage.deleteFile(getChecksumFile(configuration, issueIdentifier));
+        }
+        for (String folder : new String[] { configuration.getExportImageFolder(), configuration.getExportAltoFolder() }) {
+            if (folder != null && folder.contains("$(meta.CatalogIDDigital)")) {
+                Path issueFolder = Paths.get(folder.replace("$(meta.CatalogIDDigital)", issueIdentifier));
+                if (storage.isDirectory(issueFolder)) {
+                    storage.deleteDir(issueFolder);
                 }
             }
+        }
+    }
 
-            if (StringUtils.isBlank(issueIdentifier)) {
-                issueIdentifier = identifier + "_" + dateValue + "_" + issueSortingNumber;
-                Metadata md = new Metadata(identifierType);
-                md.setValue(issueIdentifier);
-                issue.addMetadata(md);
-            }
-            if (StringUtils.isBlank(resource)) {
-                try {
-                    Metadata md = new Metadata(resourceType);
-                    md.setValue("text");
-                    issue.addMetadata(md);
-                } catch (UGHException e) {
-                    log.info(e);
-                    if ("ddb".equals(exportMode)) {
-                        problems.add("Cannot add resource to issue");
-                        return false;
-                    }
+    /**
+     * Creates the lines of the identifier mapping file for the pages of an issue, each line maps the page url of the volume to the page url
+     * of the issue.
+     */
+    List<String> createIdentifierMappingLines(NewspaperExportContext context, DocStruct issue, String issueIdentifier, String volumeIdentifier) {
+        List<String> identifierMappingLines = new ArrayList<>();
+        if (!context.getConfiguration().isWriteIdentifierMappingFile() || issue.getAllToReferences() == null) {
+            return identifierMappingLines;
+        }
+        String prefix = context.getConfiguration().getIdentifierMappingFilePrefix();
+        for (Reference ref : issue.getAllToReferences()) {
+            String orderNumber = "";
+            for (Metadata md : ref.getTarget().getAllMetadata()) {
+                if ("physPageNumber".equals(md.getType().getName())) {
+                    orderNumber = md.getValue();
                 }
             }
+            identifierMappingLines.add(prefix + volumeIdentifier + "/" + orderNumber + "/ : " + prefix + issueIdentifier + "/" + orderNumber + "/");
+        }
+        return identifierMappingLines;
+    }
 
-            if (StringUtils.isBlank(purl)) {
-                String url = null;
-                if ("custom".equalsIgnoreCase(purlMode)) {
-                    url = purlPattern;
-                    // find all variables
-
-                    Matcher matcher = Pattern.compile("\\{meta\\.(newspaper|volume|issue)\\.([^}]+)\\}").matcher(purlPattern);
-                    while (matcher.find()) {
-                        String metadataName = matcher.group(2);
-                        String value = null;
-                        switch (matcher.group(1)) {
-                            case "newspaper":
-                                value = getMetadataValueFromDocstruct(newspaper, metadataName);
-                                url = url.replace(matcher.group(), value);
-                                break;
-                            case "volume":
-                                value = getMetadataValueFromDocstruct(newspaperYear, metadataName);
-                                url = url.replace(matcher.group(), value);
-                                break;
-                            case "issue":
-                                value = getMetadataValueFromDocstruct(issue, metadataName);
-                                url = url.replace(matcher.group(), value);
-                                break;
-                        }
-                    }
-                } else {
-                    url = piResolverUrl + issueIdentifier;
-                }
+    /**
+     * Returns the folder that contains the export folders of all issues, i.e. the part of the configured folder before the issue identifier.
+     */
+    static Path getTargetRoot(String folder) {
+        int variable = folder.indexOf("$(");
+        if (variable < 0) {
+            return Paths.get(folder);
+        }
+        int separator = folder.lastIndexOf('/', variable);
+        if (separator < 0) {
+            return Paths.get("");
+        }
+        return Paths.get(separator == 0 ? "/" : folder.substring(0, separator));
+    }
 
-                try {
-                    Metadata md = new Metadata(purlType);
-                    md.setValue(url);
-                    issue.addMetadata(md);
-                } catch (UGHException e) {
-                    log.info(e);
-                    if ("ddb".equals(exportMode)) {
-                        problems.add("Cannot add purl to issue");
-                        return false;
+    /**
+     * Creates the METS file of a single issue in the staging area and passes its images and ALTO files to the copy pipeline. The method only
+     * reads the shared process data, so it can run for several issues at the same time.
+     *
+     * @return the lines for the identifier mapping file of this issue
+     */
+    private List<String> exportIssue(NewspaperExportContext context, DigitalDocument digitalDocument, DocStruct inheritedMetadata,
+            DocStruct issue, String issueIdentifier, String volumeIdentifier, DocStructType issueType,
+            DocStructType pageType, MetsHeaderParameters metsParameters, StreamingMetsWriter metsWriter, Map<String, Path> originalFiles,
+            StagingArea staging, String imagesFolder, String altoFolder, FileCopyPipeline fileCopy)
+            throws IOException, PreferencesException, WriteException, TypeNotAllowedForParentException {
+        List<String> identifierMappingLines = createIdentifierMappingLines(context, issue, issueIdentifier, volumeIdentifier);
+        // the METS file is published after the images and ALTO files of the issue
+        Path metsFile = staging.stageLast(issueIdentifier, Paths.get(context.getConfiguration().getExportFolder(), issueIdentifier + ".xml"));
+        IssueExportEvent event = new IssueExportEvent();
+        event.begin();
+        try {
+            List<String> imageNames;
+            long metsStart = System.nanoTime();
+            if (metsWriter == null) {
+                imageNames = writeIssueMets(context, digitalDocument, inheritedMetadata, issue, issueIdentifier, issueType, pageType,
+                        metsParameters, originalFiles, metsFile);
+            } else {
+                imageNames = streamIssueMets(context, metsWriter, digitalDocument, inheritedMetadata, issue, issueIdentifier, issueType,
+                        metsParameters, originalFiles, metsFile);
+            }
+            long metsDuration = System.nanoTime() - metsStart;
+            context.getMetrics().recordTime(ExportMetrics.Phase.METS, metsDuration);
+            event.issueIdentifier = issueIdentifier;
+            event.pages = imageNames.size();
+            event.supplements = issue.getAllChildren() == null ? 0 : issue.getAllChildren().size();
+            event.metsWriteDuration = metsDuration;
+
+            // export files
+            Path checksumFile = context.getConfiguration().getChecksumAlgorithm() == null ? null
+                    : getChecksumFile(context.getConfiguration(), issueIdentifier);
+            if (context.getConfiguration().isIncremental() && checksumFile != null && Files.isRegularFile(checksumFile)) {
+                // unchanged files keep the checksums of the previous export, they are not read again
+                fileCopy.setPreviousChecksums(issueIdentifier,
+                        ChecksumFile.read(checksumFile, Paths.get(context.getConfiguration().getExportFolder())));
+            }
+            if (context.isExportImages()) {
+                String exportFolder = context.getConfiguration().getExportImageFolder()
+                        .replace("$(meta.CatalogIDDigital)", issueIdentifier);
+                for (String imageName : imageNames) {
+                    Path imageDestination = Paths.get(exportFolder, imageName);
+                    fileCopy.copy(Paths.get(imagesFolder, imageName), imageDestination, issueIdentifier, ExportMetrics.Phase.IMAGE_COPY);
+                }
+            }
+            if (context.isExportFulltext()) {
+                String exportFolder = context.getConfiguration().getExportAltoFolder()
+                        .replace("$(meta.CatalogIDDigital)", issueIdentifier);
+                for (String imageName : imageNames) {
+                    String filename = imageName.substring(0, imageName.indexOf(".")) + ".xml";
+                    Path altoSource = Paths.get(altoFolder, filename);
+                    if (!context.isDdbMode() && !StorageProvider.getInstance().isFileExists(altoSource)) {
+                        continue;
                     }
+                    Path imageDestination = Paths.get(exportFolder, filename);
+                    fileCopy.copy(altoSource, imageDestination, issueIdentifier, ExportMetrics.Phase.ALTO_COPY);
                 }
             }
 
-            // issue is valid, start export
-            try {
+            context.getMetrics().increment(ExportMetrics.Counter.EXPORTED_ISSUES, 1);
+            // failed issues are not recorded, the event would miss its page and supplement counts
+            event.commit();
+        } catch (TypeNotAllowedAsChildException e) {
+            log.error(e);
+        }
+        return identifierMappingLines;
+    }
 
-                ExportFileformat issueExport = new MetsModsImportExport(prefs);
+    /**
+     * Writes the METS file of an issue with UGH: the issue, its pages and supplements are copied into a new digital document.
+     *
+     * @return the image names of the pages
+     */
+    private List<String> writeIssueMets(NewspaperExportContext context, DigitalDocument digitalDocument, DocStruct inheritedMetadata,
+            DocStruct issue, String issueIdentifier, DocStructType issueType, DocStructType pageType, MetsHeaderParameters metsParameters,
+            Map<String, Path> originalFiles, Path metsFile)
+            throws PreferencesException, WriteException, TypeNotAllowedForParentException, TypeNotAllowedAsChildException {
+        ExportFileformat issueExport = createIssueDocument(context, digitalDocument, inheritedMetadata, issue, issueIdentifier, issueType,
+                pageType, metsParameters, originalFiles);
+        issueExport.write(metsFile.toString());
+        List<String> imageNames = new ArrayList<>();
+        DocStruct physicalDocstruct = issueExport.getDigitalDocument().getPhysicalDocStruct();
+        if (physicalDocstruct.getAllChildren() != null) {
+            for (DocStruct page : physicalDocstruct.getAllChildren()) {
+                imageNames.add(page.getImageName());
+            }
+        }
+        return imageNames;
+    }
 
-                DigitalDocument issueDigDoc = new DigitalDocument();
-                issueExport.setDigitalDocument(issueDigDoc);
+    /**
+     * Copies the issue, its pages and supplements into a new digital document with the METS header and file groups of the export. Nothing
+     * is written, the document is kept in memory.
+     */
+    ExportFileformat createIssueDocument(NewspaperExportContext context, DigitalDocument digitalDocument, DocStruct inheritedMetadata,
+            DocStruct issue, String issueIdentifier, DocStructType issueType, DocStructType pageType, MetsHeaderParameters metsParameters,
+            Map<String, Path> originalFiles) throws PreferencesException, TypeNotAllowedForParentException, TypeNotAllowedAsChildException {
+        DocStruct oldPhysical = digitalDocument.getPhysicalDocStruct();
+        ExportFileformat issueExport = new MetsModsImportExport(context.getPrefs());
 
-                setMetsParameter(process, projectSettings, goobiId, vp, issueExport);
+        DigitalDocument issueDigDoc = new DigitalDocument();
+        issueExport.setDigitalDocument(issueDigDoc);
 
-                DocStruct newIssue = createDocstruct(issueType, issueDigDoc);
-                copyMetadata("", issue, newIssue);
-                copyMetadata("year", newspaperYear, newIssue);
-                copyMetadata("newspaper", newspaper, newIssue);
-                issueDigDoc.setLogicalDocStruct(newIssue);
+        metsParameters.apply(issueExport);
 
-                // create physSequence
-                DocStruct physicalDocstruct = issueDigDoc.createDocStruct(oldPhysical.getType());
-                issueDigDoc.setPhysicalDocStruct(physicalDocstruct);
+        DocStruct newIssue = createDocstruct(issueType, issueDigDoc);
+        copyMetadata(context, "", issue, newIssue);
+        copyMetadata(context, "", inheritedMetadata, newIssue);
+        issueDigDoc.setLogicalDocStruct(newIssue);
 
-                // add images
-                if (issue.getAllToReferences() != null) {
-                    for (Reference ref : issue.getAllToReferences()) {
-                        DocStruct oldPage = ref.getTarget();
-                        String filename = Paths.get(oldPage.getImageName()).getFileName().toString();
+        // create physSequence
+        DocStruct physicalDocstruct = issueDigDoc.createDocStruct(oldPhysical.getType());
+        issueDigDoc.setPhysicalDocStruct(physicalDocstruct);
 
-                        if (writeIdentifierMappingFile) {
-                            String orderNumber = "";
-                            for (Metadata md : oldPage.getAllMetadata()) {
-                                if ("physPageNumber".equals(md.getType().getName())) {
-                                    orderNumber = md.getValue();
-                                }
-                            }
-
-                            String oldUrl = identifierMappingFilePrefix + volumeIdentifier + "/" + orderNumber + "/";
-                            String newUrl = identifierMappingFilePrefix + issueIdentifier + "/" + orderNumber + "/";
-                            identifierMappingLines.add(oldUrl + " : " + newUrl);
-                        }
+        // add images, remember the first page of each image name for the supplements
+        Map<String, DocStruct> pagesByImageName = new HashMap<>();
+        if (issue.getAllToReferences() != null) {
+            for (Reference ref : issue.getAllToReferences()) {
+                DocStruct oldPage = ref.getTarget();
+                String filename = Paths.get(oldPage.getImageName()).getFileName().toString();
 
-                        DocStruct newPage = createDocstruct(pageType, issueDigDoc);
-                        copyMetadata("", oldPage, newPage);
-                        if (newPage != null) {
+                DocStruct newPage = createDocstruct(pageType, issueDigDoc);
+                copyMetadata(context, "", oldPage, newPage);
+                if (newPage != null) {
 
-                            newPage.setImageName(filename);
-                            physicalDocstruct.addChild(newPage);
+                    newPage.setImageName(filename);
+                    physicalDocstruct.addChild(newPage);
+                    pagesByImageName.putIfAbsent(filename, newPage);
 
-                            newIssue.addReferenceTo(newPage, "logical_physical");
-                        }
-                    }
+                    newIssue.addReferenceTo(newPage, "logical_physical");
                 }
+            }
+        }
 
-                // add supplements
-                if (issue.getAllChildren() != null) {
-                    for (DocStruct oldSupplement : issue.getAllChildren()) {
-                        // create supplement, add it to new issue
-                        DocStruct newSupplement = createDocstruct(oldSupplement.getType(), issueDigDoc);
-                        newIssue.addChild(newSupplement);
-                        // copy metadata
-                        copyMetadata("", oldSupplement, newSupplement);
-                        // create page references
-                        if (oldSupplement.getAllToReferences() != null) {
-                            for (Reference ref : oldSupplement.getAllToReferences()) {
-                                DocStruct oldPage = ref.getTarget();
-                                String filename = Paths.get(oldPage.getImageName()).getFileName().toString();
-                                // find filename in new physSequence
-                                for (DocStruct page : physicalDocstruct.getAllChildren()) {
-                                    if (page.getImageName().equals(filename)) {
-                                        newSupplement.addReferenceTo(page, "logical_physical");
-                                        break;
-                                    }
-                                }
-                            }
-                        }
-                    }
-                }
+        addSupplements(context, issue, newIssue, issueDigDoc, pagesByImageName);
 
-                // create filegroups
-                boolean useOriginalFiles = false;
+        // create filegroups
+        for (VirtualFileGroup v : metsParameters.createFilegroups(issueIdentifier)) {
+            issueExport.getDigitalDocument().getFileSet().addVirtualFileGroup(v);
+        }
 
-                if (myFilegroups != null && !myFilegroups.isEmpty()) {
-                    for (ProjectFileGroup pfg : myFilegroups) {
-                        if (pfg.isUseOriginalFiles()) {
-                            useOriginalFiles = true;
-                        }
-                        // check if source files exists
-                        if (pfg.getFolder() != null && pfg.getFolder().length() > 0) {
-                            String foldername = process.getMethodFromName(pfg.getFolder());
-                            if (foldername != null) {
-                                Path folder = Paths.get(process.getMethodFromName(pfg.getFolder()));
-                                if (folder != null && StorageProvider.getInstance().isFileExists(folder)
-                                        && !StorageProvider.getInstance().list(folder.toString()).isEmpty()) {
-                                    VirtualFileGroup v = createFilegroup(vp, pfg, issueIdentifier);
-                                    issueExport.getDigitalDocument().getFileSet().addVirtualFileGroup(v);
-                                }
-                            }
-                        } else {
-                            VirtualFileGroup v = createFilegroup(vp, pfg, issueIdentifier);
-                            issueExport.getDigitalDocument().getFileSet().addVirtualFileGroup(v);
-                        }
+        if (originalFiles != null && !originalFiles.isEmpty()) {
+            // replace the image names in the mets file with the matching files of the media folder
+            List<DocStruct> pages = physicalDocstruct.getAllChildren();
+            if (pages != null) {
+                for (DocStruct page : pages) {
+                    String filenameInMets = Paths.get(page.getImageName()).getFileName().toString();
+                    Path imageNameInFolder = originalFiles.get(getBasename(filenameInMets).toLowerCase(Locale.ROOT));
+                    if (imageNameInFolder != null) {
+                        page.setImageName(imageNameInFolder.toString());
                     }
                 }
+            }
+        }
 
-                if (useOriginalFiles) {
-                    // check if media folder contains images
-                    List<Path> filesInFolder = StorageProvider.getInstance().listFiles(process.getImagesTifDirectory(false));
-                    if (!filesInFolder.isEmpty()) {
-                        // compare image names with files in mets file
-                        List<DocStruct> pages = issueDigDoc.getPhysicalDocStruct().getAllChildren();
-                        if (pages != null && !pages.isEmpty()) {
-                            for (DocStruct page : pages) {
-                                Path completeNameInMets = Paths.get(page.getImageName());
-                                String filenameInMets = completeNameInMets.getFileName().toString();
-                                int dotIndex = filenameInMets.lastIndexOf('.');
-                                if (dotIndex != -1) {
-                                    filenameInMets = filenameInMets.substring(0, dotIndex);
-                                }
-                                for (Path imageNameInFolder : filesInFolder) {
-                                    String imageName = imageNameInFolder.getFileName().toString();
-                                    dotIndex = imageName.lastIndexOf('.');
-                                    if (dotIndex != -1) {
-                                        imageName = imageName.substring(0, dotIndex);
-                                    }
-
-                                    if (filenameInMets.equalsIgnoreCase(imageName)) {
-                                        // found matching filename
-                                        page.setImageName(imageNameInFolder.toString());
-                                        break;
-                                    }
-                                }
-                            }
-                        }
+        return issueExport;
+    }
+
+    /**
+     * Writes the METS file of an issue with the {@link StreamingMetsWriter}. Only the issue and its supplements are copied, the pages are
+     * written directly from the docstructs of the process.
+     *
+     * @return the image names of the pages
+     */
+    private List<String> streamIssueMets(NewspaperExportContext context, StreamingMetsWriter metsWriter, DigitalDocument digitalDocument,
+            DocStruct inheritedMetadata, DocStruct issue, String issueIdentifier, DocStructType issueType, MetsHeaderParameters metsParameters,
+            Map<String, Path> originalFiles, Path metsFile) throws IOException, TypeNotAllowedAsChildException {
+        // the document only holds the logical docstructs
+        DigitalDocument issueDigDoc = new DigitalDocument();
+        DocStruct newIssue = createDocstruct(issueType, issueDigDoc);
+        copyMetadata(context, "", issue, newIssue);
+        copyMetadata(context, "", inheritedMetadata, newIssue);
+        StreamingMetsWriter.Issue streamingIssue = new StreamingMetsWriter.Issue(newIssue, digitalDocument.getPhysicalDocStruct().getType());
+
+        // add images, remember the first page of each image name for the supplements
+        Map<String, Integer> pagesByImageName = new HashMap<>();
+        if (issue.getAllToReferences() != null) {
+            for (Reference ref : issue.getAllToReferences()) {
+                DocStruct oldPage = ref.getTarget();
+                String filename = Paths.get(oldPage.getImageName()).getFileName().toString();
+                String imageName = filename;
+                if (originalFiles != null && !originalFiles.isEmpty()) {
+                    // use the matching file of the media folder
+                    Path imageNameInFolder = originalFiles.get(getBasename(filename).toLowerCase(Locale.ROOT));
+                    if (imageNameInFolder != null) {
+                        imageName = imageNameInFolder.toString();
                     }
                 }
+                int pageIndex = streamingIssue.addPage(oldPage, imageName);
+                pagesByImageName.putIfAbsent(filename, pageIndex);
+                streamingIssue.link(newIssue, pageIndex);
+            }
+        }
 
-                // export to configured folder
-                String issueName = Paths.get(tmpExportFolder.toString(), issueIdentifier + ".xml").toString();
-                issueExport.write(issueName);
-
-                // export files
-                if (exportImages) {
-                    String imagesFolder = process.getImagesTifDirectory(false);
-                    String exportFolder = projectSettings.getString("/export/exportImageFolder")
-                            .replace("$(meta.CatalogIDDigital)", issueIdentifier);
-                    List<DocStruct> pages = issueDigDoc.getPhysicalDocStruct().getAllChildren();
-                    if (pages != null && !pages.isEmpty()) {
-                        for (DocStruct page : pages) {
-                            Path imageDestination = Paths.get(exportFolder, page.getImageName());
-                            if (!StorageProvider.getInstance().isDirectory(imageDestination.getParent())) {
-                                StorageProvider.getInstance().createDirectories(imageDestination.getParent());
-                            }
-                            StorageProvider.getInstance().copyFile(Paths.get(imagesFolder, page.getImageName()), imageDestination);
+        if (issue.getAllChildren() != null) {
+            for (DocStruct oldSupplement : issue.getAllChildren()) {
+                DocStruct newSupplement = createDocstruct(oldSupplement.getType(), issueDigDoc);
+                newIssue.addChild(newSupplement);
+                copyMetadata(context, "", oldSupplement, newSupplement);
+                if (oldSupplement.getAllToReferences() != null) {
+                    for (Reference ref : oldSupplement.getAllToReferences()) {
+                        Integer pageIndex = pagesByImageName.get(Paths.get(ref.getTarget().getImageName()).getFileName().toString());
+                        if (pageIndex != null) {
+                            streamingIssue.link(newSupplement, pageIndex);
                         }
                     }
                 }
-                if (exportFulltext) {
-                    String altoFolder = process.getOcrAltoDirectory();
-                    String exportFolder = projectSettings.getString("/export/exportAltoFolder")
-                            .replace("$(meta.CatalogIDDigital)", issueIdentifier);
-                    List<DocStruct> pages = issueDigDoc.getPhysicalDocStruct().getAllChildren();
-                    if (pages != null && !pages.isEmpty()) {
-                        for (DocStruct page : pages) {
-                            String filename = page.getImageName().substring(0, page.getImageName().indexOf(".")) + ".xml";
-                            Path altoSource = Paths.get(altoFolder, filename);
-                            if (!"ddb".equals(exportMode) && !StorageProvider.getInstance().isFileExists(altoSource)) {
-                                continue;
-                            }
-                            Path imageDestination = Paths.get(exportFolder, filename);
-                            if (!StorageProvider.getInstance().isDirectory(imageDestination.getParent())) {
-                                StorageProvider.getInstance().createDirectories(imageDestination.getParent());
-                            }
-                            StorageProvider.getInstance().copyFile(altoSource, imageDestination);
+            }
+        }
+
+        try (OutputStream out = Files.newOutputStream(metsFile)) {
+            metsWriter.write(out, streamingIssue, metsParameters.createFilegroups(issueIdentifier));
+        }
+        return streamingIssue.getImageNames();
+    }
+
+    /**
+     * Copies the supplements of the issue into the new issue and links them to the pages of the new physical sequence.
+     */
+    void addSupplements(NewspaperExportContext context, DocStruct issue, DocStruct newIssue, DigitalDocument issueDigDoc,
+            Map<String, DocStruct> pagesByImageName) throws TypeNotAllowedAsChildException {
+        // add supplements
+        if (issue.getAllChildren() != null) {
+            for (DocStruct oldSupplement : issue.getAllChildren()) {
+                // create supplement, add it to new issue
+                DocStruct newSupplement = createDocstruct(oldSupplement.getType(), issueDigDoc);
+                newIssue.addChild(newSupplement);
+                // copy metadata
+                copyMetadata(context, "", oldSupplement, newSupplement);
+                // create page references
+                if (oldSupplement.getAllToReferences() != null) {
+                    for (Reference ref : oldSupplement.getAllToReferences()) {
+                        DocStruct oldPage = ref.getTarget();
+                        String filename = Paths.get(oldPage.getImageName()).getFileName().toString();
+                        // find filename in new physSequence
+                        DocStruct page = pagesByImageName.get(filename);
+                        if (page != null) {
+                            newSupplement.addReferenceTo(page, "logical_physical");
                         }
                     }
                 }
+            }
+        }
+    }
 
-            } catch (TypeNotAllowedAsChildException e) {
-                log.error(e);
+    /**
+     * Runs the tasks and returns their results in the order of the given list. With a single thread the tasks are run sequentially on the
+     * calling thread, otherwise a pool with the configured number of threads is used.
+     */
+    private <T> List<T> runTasks(List<Callable<T>> tasks, int numberOfThreads) throws IOException, InterruptedException, PreferencesException,
+            WriteException, TypeNotAllowedForParentException, MetadataTypeNotAllowedException, DocStructHasNoTypeException {
+        List<T> results = new ArrayList<>(tasks.size());
+        if (numberOfThreads <= 1 || tasks.size() <= 1) {
+            for (Callable<T> task : tasks) {
+                try {
+                    results.add(task.call());
+                } catch (Exception e) {
+                    throwTaskException(e);
+                }
             }
+            return results;
         }
 
-        if (writeIdentifierMappingFile && !identifierMappingLines.isEmpty()) {
-            Path mappingFolder = Paths.get(identifierMappingFileFolderName);
-            if (!StorageProvider.getInstance().isDirectory(mappingFolder)) {
-                StorageProvider.getInstance().createDirectories(mappingFolder);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(numberOfThreads, tasks.size()));
+        try {
+            List<Future<T>> futures = new ArrayList<>(tasks.size());
+            for (Callable<T> task : tasks) {
+                futures.add(executor.submit(task));
             }
-            Path mappingFile = mappingFolder.resolve(volumeIdentifier + ".txt");
-            Files.write(mappingFile, identifierMappingLines, StandardCharsets.UTF_8);
+            for (Future<T> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    throwTaskException(e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
         }
+        return results;
+    }
 
-        // update/save generated data in goobi process
-        process.writeMetadataFile(fileformat);
+    private void throwTaskException(Throwable cause) throws IOException, InterruptedException, PreferencesException, WriteException,
+            TypeNotAllowedForParentException, MetadataTypeNotAllowedException, DocStructHasNoTypeException {
+        if (cause instanceof IOException) {
+            throw (IOException) cause;
+        } else if (cause instanceof InterruptedException) {
+            throw (InterruptedException) cause;
+        } else if (cause instanceof PreferencesException) {
+            throw (PreferencesException) cause;
+        } else if (cause instanceof WriteException) {
+            throw (WriteException) cause;
+        } else if (cause instanceof TypeNotAllowedForParentException) {
+            throw (TypeNotAllowedForParentException) cause;
+        } else if (cause instanceof MetadataTypeNotAllowedException) {
+            throw (MetadataTypeNotAllowedException) cause;
+        } else if (cause instanceof DocStructHasNoTypeException) {
+            throw (DocStructHasNoTypeException) cause;
+        } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        throw new IOException(cause);
+    }
 
-        // move all files to export folder
-        List<Path> files = StorageProvider.getInstance().listFiles(tmpExportFolder.toString());
+    /**
+     * Creates a case insensitive index of the given files by their names without extension. If several files share the same name, the first
+     * one is used.
+     */
+    static Map<String, Path> indexFilesByBasename(List<Path> files) {
+        Map<String, Path> index = new HashMap<>(files.size() * 2);
         for (Path file : files) {
-            Path dest = Paths.get(finalExportFolder, file.getFileName().toString());
-            StorageProvider.getInstance().move(file, dest);
+            index.putIfAbsent(getBasename(file.getFileName().toString()).toLowerCase(Locale.ROOT), file);
         }
-
-        // delete targetDir
-        StorageProvider.getInstance().deleteDir(tmpExportFolder);
-        return true;
+        return Collections.unmodifiableMap(index);
     }
 
-    private String getMetadataValueFromDocstruct(DocStruct newspaper, String metadataName) {
-        for (Metadata md : newspaper.getAllMetadata()) {
-            if (md.getType().getName().equals(metadataName)) {
-                return md.getValue();
+    private static String getBasename(String filename) {
+        int dotIndex = filename.lastIndexOf('.');
+        return dotIndex == -1 ? filename : filename.substring(0, dotIndex);
+    }
 
+    /**
+     * Returns the file groups to export. A file group with a source folder is only used, if the folder exists and is not empty. The folders
+     * are checked once per export, all issues use the same result.
+     */
+    private List<ProjectFileGroup> getActiveFilegroups(Process process, List<ProjectFileGroup> filegroups) {
+        List<ProjectFileGroup> activeFilegroups = new ArrayList<>();
+        if (filegroups == null) {
+            return activeFilegroups;
+        }
+        for (ProjectFileGroup pfg : filegroups) {
+            // check if source files exists
+            if (pfg.getFolder() != null && pfg.getFolder().length() > 0) {
+                String foldername = process.getMethodFromName(pfg.getFolder());
+                if (foldername != null) {
+                    Path folder = Paths.get(foldername);
+                    if (StorageProvider.getInstance().isFileExists(folder) && !StorageProvider.getInstance().list(folder.toString()).isEmpty()) {
+                        activeFilegroups.add(pfg);
+                    }
+                }
+            } else {
+                activeFilegroups.add(pfg);
             }
         }
-        return "";
+        return activeFilegroups;
     }
 
-    private List<ProjectFileGroup> getProjectFileGroups(SubnodeConfiguration projectSettings, List<ProjectFileGroup> defaultFilegroups) {
-        List<ProjectFileGroup> answer = new ArrayList<>();
-        for (HierarchicalConfiguration hc : projectSettings.configurationsAt("/filegroups/filegroup")) {
-            ProjectFileGroup pfg = new ProjectFileGroup();
-            pfg.setName(hc.getString("@name"));
-            pfg.setPath(hc.getString("@path"));
-            pfg.setMimetype(hc.getString("@mimetype"));
-            pfg.setSuffix(hc.getString("@suffix"));
-            pfg.setFolder(hc.getString("@foldername"));
-            pfg.setIgnoreMimetypes(hc.getString("@filesToIgnore"));
-            pfg.setUseOriginalFiles(hc.getBoolean("@mimetypeFromFilename"));
-        }
+    private List<ProjectFileGroup> getProjectFileGroups(NewspaperExportConfiguration configuration, List<ProjectFileGroup> defaultFilegroups) {
+        List<ProjectFileGroup> answer = configuration.getFilegroups();
         return answer.isEmpty() ? defaultFilegroups : answer;
     }
 
-    private void setMetsParameter(Process process, SubnodeConfiguration projectSettings, String goobiId, VariableReplacer vp,
-            ExportFileformat fileFormat) {
-        fileFormat.setGoobiID(goobiId);
-
-        fileFormat.setRightsOwner(vp.replace(projectSettings.getString("/rightsOwner", process.getProjekt().getMetsRightsOwner())));
-        fileFormat.setRightsOwnerLogo(vp.replace(projectSettings.getString("/rightsOwnerLogo", process.getProjekt().getMetsRightsOwnerLogo())));
-        fileFormat.setRightsOwnerSiteURL(vp.replace(projectSettings.getString("/rightsOwnerSiteURL", process.getProjekt().getMetsRightsOwnerSite())));
-        fileFormat.setRightsOwnerContact(vp.replace(projectSettings.getString("/rightsOwnerContact", process.getProjekt().getMetsRightsOwnerMail())));
-        fileFormat.setDigiprovPresentation(
-                vp.replace(projectSettings.getString("/digiprovPresentation", process.getProjekt().getMetsDigiprovPresentation())));
-        fileFormat.setDigiprovReference(vp.replace(projectSettings.getString("/digiprovReference", process.getProjekt().getMetsDigiprovReference())));
-        fileFormat.setDigiprovPresentationAnchor(
-                vp.replace(projectSettings.getString("/digiprovPresentationAnchor", process.getProjekt().getMetsDigiprovPresentationAnchor())));
-        fileFormat.setDigiprovReferenceAnchor(
-                vp.replace(projectSettings.getString("/digiprovReferenceAnchor", process.getProjekt().getMetsDigiprovReferenceAnchor())));
-
-        fileFormat.setMetsRightsLicense(vp.replace(projectSettings.getString("/rightsLicense", process.getProjekt().getMetsRightsLicense())));
-        fileFormat.setMetsRightsSponsor(vp.replace(projectSettings.getString("/rightsSponsor", process.getProjekt().getMetsRightsSponsor())));
-        fileFormat.setMetsRightsSponsorLogo(
-                vp.replace(projectSettings.getString("/rightsSponsorLogo", process.getProjekt().getMetsRightsSponsorLogo())));
-        fileFormat.setMetsRightsSponsorSiteURL(
-                vp.replace(projectSettings.getString("/rightsSponsorSiteURL", process.getProjekt().getMetsRightsSponsorSiteURL())));
-
-        fileFormat.setPurlUrl(vp.replace(projectSettings.getString("/purl", process.getProjekt().getMetsPurl())));
-        fileFormat.setContentIDs(vp.replace(projectSettings.getString("/contentIds", process.getProjekt().getMetsContentIDs())));
-
-        fileFormat.setWriteLocal(false);
-    }
-
     private DocStruct createDocstruct(DocStructType docstructType, DigitalDocument dd) {
 
         // create new docstruct
@@ -724,21 +1212,47 @@ public class NewspaperExportPlugin implements IExportPlugin, IPlugin {
         return newDocstruct;
     }
 
-    private void copyMetadata(String prefix, DocStruct oldDocstruct, DocStruct newDocstruct) {
+    /**
+     * Translates the metadata of the newspaper into the prefixed fields of the issue. The result is shared by the templates of all years.
+     */
+    DocStruct createNewspaperMetadata(NewspaperExportContext context, DocStruct newspaper, DocStructType issueType) {
+        DocStruct newspaperMetadata = createDocstruct(issueType, new DigitalDocument());
+        copyMetadata(context, "newspaper", newspaper, newspaperMetadata);
+        return newspaperMetadata;
+    }
+
+    /**
+     * Copies the metadata of the year and the translated newspaper metadata into an unused docstruct of the issue type. The docstruct is the
+     * template for all issues of the year, it contains only the translated metadata that is allowed in an issue and is copied without a
+     * prefix.
+     */
+    DocStruct createInheritedMetadata(NewspaperExportContext context, DocStruct newspaperMetadata, DocStruct newspaperYear,
+            DocStructType issueType) {
+        DocStruct template = createDocstruct(issueType, new DigitalDocument());
+        copyMetadata(context, "year", newspaperYear, template);
+        copyMetadata(context, "", newspaperMetadata, template);
+        return template;
+    }
+
+    void copyMetadata(NewspaperExportContext context, String prefix, DocStruct oldDocstruct, DocStruct newDocstruct) {
+        MetadataTypeTranslation translation = context.getMetadataTypeTranslation();
+        DocStructType targetType = newDocstruct.getType();
 
         // copy metadata
         if (oldDocstruct.getAllMetadata() != null) {
             for (Metadata md : oldDocstruct.getAllMetadata()) {
+                // check if new field is allowed in prefs
+                MetadataType metadataType = translation.getMetadataType(prefix, md.getType());
+                if (metadataType == null || !translation.isAllowed(targetType, metadataType)) {
+                    continue;
+                }
                 try {
-                    // check if new field is allowed in prefs
-                    MetadataType metadataType = prefs.getMetadataTypeByName(prefix + md.getType().getName());
-                    if (metadataType != null) {
-                        Metadata clone = new Metadata(metadataType);
-                        clone.setValue(md.getValue());
-                        clone.setAuthorityFile(md.getAuthorityID(), md.getAuthorityURI(), md.getAuthorityValue());
-                        newDocstruct.addMetadata(clone);
-                    }
+                    Metadata clone = new Metadata(metadataType);
+                    clone.setValue(md.getValue());
+                    clone.setAuthorityFile(md.getAuthorityID(), md.getAuthorityURI(), md.getAuthorityValue());
+                    newDocstruct.addMetadata(clone);
                 } catch (UGHException e) {
+                    // the maximum number of the type is reached
                     log.trace(e);
                 }
             }
@@ -747,17 +1261,19 @@ public class NewspaperExportPlugin implements IExportPlugin, IPlugin {
         // copy persons
         if (oldDocstruct.getAllPersons() != null) {
             for (Person p : oldDocstruct.getAllPersons()) {
+                // check if new field is allowed in prefs
+                MetadataType metadataType = translation.getMetadataType(prefix, p.getType());
+                if (metadataType == null || !translation.isAllowed(targetType, metadataType)) {
+                    continue;
+                }
                 try {
-                    // check if new field is allowed in prefs
-                    MetadataType metadataType = prefs.getMetadataTypeByName(prefix + p.getType().getName());
-                    if (metadataType != null) {
-                        Person clone = new Person(metadataType);
-                        clone.setFirstname(p.getFirstname());
-                        clone.setLastname(p.getLastname());
-                        clone.setAuthorityFile(p.getAuthorityID(), p.getAuthorityURI(), p.getAuthorityValue());
-                        newDocstruct.addPerson(clone);
-                    }
+                    Person clone = new Person(metadataType);
+                    clone.setFirstname(p.getFirstname());
+                    clone.setLastname(p.getLastname());
+                    clone.setAuthorityFile(p.getAuthorityID(), p.getAuthorityURI(), p.getAuthorityValue());
+                    newDocstruct.addPerson(clone);
                 } catch (UGHException e) {
+                    // the maximum number of the type is reached
                     log.trace(e);
                 }
             }
@@ -766,18 +1282,20 @@ public class NewspaperExportPlugin implements IExportPlugin, IPlugin {
         // copy corporates
         if (oldDocstruct.getAllCorporates() != null) {
             for (Corporate c : oldDocstruct.getAllCorporates()) {
+                // check if new field is allowed in prefs
+                MetadataType metadataType = translation.getMetadataType(prefix, c.getType());
+                if (metadataType == null || !translation.isAllowed(targetType, metadataType)) {
+                    continue;
+                }
                 try {
-                    // check if new field is allowed in prefs
-                    MetadataType metadataType = prefs.getMetadataTypeByName(prefix + c.getType().getName());
-                    if (metadataType != null) {
-                        Corporate clone = new Corporate(metadataType);
-                        clone.setMainName(c.getMainName());
-                        clone.setPartName(c.getPartName());
-                        clone.setSubNames(c.getSubNames());
-                        clone.setAuthorityFile(c.getAuthorityID(), c.getAuthorityURI(), c.getAuthorityValue());
-                        newDocstruct.addCorporate(clone);
-                    }
+                    Corporate clone = new Corporate(metadataType);
+                    clone.setMainName(c.getMainName());
+                    clone.setPartName(c.getPartName());
+                    clone.setSubNames(c.getSubNames());
+                    clone.setAuthorityFile(c.getAuthorityID(), c.getAuthorityURI(), c.getAuthorityValue());
+                    newDocstruct.addCorporate(clone);
                 } catch (UGHException e) {
+                    // the maximum number of the type is reached
                     log.trace(e);
                 }
             }
@@ -786,8 +1304,11 @@ public class NewspaperExportPlugin implements IExportPlugin, IPlugin {
         // copy groups
         if (oldDocstruct.getAllMetadataGroups() != null) {
             for (MetadataGroup mg : oldDocstruct.getAllMetadataGroups()) {
+                if (translation.getMetadataGroupType(prefix, mg.getType()) == null) {
+                    continue;
+                }
                 try {
-                    MetadataGroup newMetadataGroup = cloneMetadataGroup(prefix, mg);
+                    MetadataGroup newMetadataGroup = cloneMetadataGroup(context, prefix, mg);
                     newDocstruct.addMetadataGroup(newMetadataGroup);
                 } catch (UGHException e) {
                     log.trace(e);
@@ -797,12 +1318,14 @@ public class NewspaperExportPlugin implements IExportPlugin, IPlugin {
 
     }
 
-    private MetadataGroup cloneMetadataGroup(String prefix, MetadataGroup inGroup) throws MetadataTypeNotAllowedException {
-        MetadataGroupType mgt = prefs.getMetadataGroupTypeByName(prefix + inGroup.getType().getName());
+    MetadataGroup cloneMetadataGroup(NewspaperExportContext context, String prefix, MetadataGroup inGroup)
+            throws MetadataTypeNotAllowedException {
+        MetadataTypeTranslation translation = context.getMetadataTypeTranslation();
+        MetadataGroupType mgt = translation.getMetadataGroupType(prefix, inGroup.getType());
         MetadataGroup mg = new MetadataGroup(mgt);
         // copy metadata
         for (Metadata md : inGroup.getMetadataList()) {
-            Metadata metadata = new Metadata(prefs.getMetadataTypeByName(md.getType().getName()));
+            Metadata metadata = new Metadata(translation.getMetadataType("", md.getType()));
             metadata.setValue(md.getValue());
             if (StringUtils.isNotBlank(md.getAuthorityValue())) {
                 metadata.setAuthorityFile(md.getAuthorityID(), md.getAuthorityURI(), md.getAuthorityValue());
@@ -812,7 +1335,7 @@ public class NewspaperExportPlugin implements IExportPlugin, IPlugin {
 
         // copy persons
         for (Person p : inGroup.getPersonList()) {
-            Person person = new Person(prefs.getMetadataTypeByName(p.getType().getName()));
+            Person person = new Person(translation.getMetadataType("", p.getType()));
             person.setFirstname(p.getFirstname());
             person.setLastname(p.getLastname());
             person.setAuthorityFile(p.getAuthorityID(), p.getAuthorityURI(), p.getAuthorityValue());
@@ -827,7 +1350,7 @@ public class NewspaperExportPlugin implements IExportPlugin, IPlugin {
 
         // copy corporations
         for (Corporate c : inGroup.getCorporateList()) {
-            Corporate corporate = new Corporate(prefs.getMetadataTypeByName(c.getType().getName()));
+            Corporate corporate = new Corporate(translation.getMetadataType("", c.getType()));
             corporate.setMainName(c.getMainName());
             if (c.getSubNames() != null) {
                 for (NamePart subName : c.getSubNames()) {
@@ -843,24 +1366,43 @@ public class NewspaperExportPlugin implements IExportPlugin, IPlugin {
 
         // copy sub groups
         for (MetadataGroup subGroup : inGroup.getAllMetadataGroups()) {
-            MetadataGroup copyOfSubGroup = cloneMetadataGroup(prefix, subGroup);
+            MetadataGroup copyOfSubGroup = cloneMetadataGroup(context, prefix, subGroup);
             mg.addMetadataGroup(copyOfSubGroup);
         }
 
         return mg;
     }
 
-    private VirtualFileGroup createFilegroup(VariableReplacer variableRplacer, ProjectFileGroup projectFileGroup, String identifier) {
-        VirtualFileGroup v = new VirtualFileGroup();
-        v.setName(projectFileGroup.getName());
-        v.setPathToFiles(variableRplacer.replace(projectFileGroup.getPath().replace("$(meta.CatalogIDDigital)", identifier)));
-        v.setMimetype(projectFileGroup.getMimetype());
-        v.setFileSuffix(projectFileGroup.getSuffix());
-        v.setFileExtensionsToIgnore(projectFileGroup.getIgnoreMimetypes());
-        v.setIgnoreConfiguredMimetypeAndSuffix(projectFileGroup.isUseOriginalFiles());
-        if ("PRESENTATION".equals(projectFileGroup.getName())) {
-            v.setMainGroup(true);
+    /**
+     * A year of the newspaper with its validated issues. The export of each year writes its own mapping file and manifest.
+     */
+    private static class Volume {
+
+        private final DocStruct year;
+        private final String identifier;
+        private final List<DocStruct> issues;
+        private final List<String> issueIdentifiers;
+        // created by prepareVolume, one task for each issue
+        private final List<Callable<List<String>>> issueExports = new ArrayList<>();
+        private final List<String> identifierMappingLines = new ArrayList<>();
+        // issues skipped by the validation and issues whose export failed, only used if the export continues on errors
+        private final int invalidIssues;
+        private final List<String> failedIssues = new ArrayList<>();
+        // checksums of the exported issues
+        private final Map<String, ChecksumFile> checksumFiles = new LinkedHashMap<>();
+
+        // only used in incremental mode
+        private Path manifestFile;
+        private ExportManifest previousManifest;
+        private ExportManifest manifest;
+        private int unchangedIssues;
+
+        Volume(DocStruct year, String identifier, List<DocStruct> issues, List<String> issueIdentifiers, int invalidIssues) {
+            this.year = year;
+            this.identifier = identifier;
+            this.issues = issues;
+            this.issueIdentifiers = issueIdentifiers;
+            this.invalidIssues = invalidIssues;
         }
-        return v;
     }
 }
\ No newline at end of file
@@ -0,0 +1,200 @@
+package de.intranda.goobi.plugins;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import lombok.Getter;
+import ugh.dl.DocStruct;
+import ugh.dl.Metadata;
+
+/**
+ * Compiled form of the custom purl pattern. The pattern is split once into literal text and variables like
+ * {meta.newspaper.CatalogIDDigital}. The values of the newspaper and the volume are the same for all issues of an export and can be
+ * resolved in advance with {@link #resolve(DocStruct, DocStruct)}, then each issue only reads its own metadata.
+ */
+public class PurlTemplate {
+
+    private static final Pattern VARIABLE = Pattern.compile("\\{meta\\.(newspaper|volume|issue)\\.([^}]+)\\}");
+
+    /**
+     * Defines what is used for a variable without metadata value.
+     */
+    public enum MissingValue {
+        // an empty string
+        EMPTY,
+        // no purl is created and the export is aborted
+        FAIL,
+        // the configured default value
+        DEFAULT;
+
+        public static MissingValue fromConfiguration(String value) {
+            if (value == null) {
+                return EMPTY;
+            }
+            switch (value.trim().toLowerCase(Locale.ENGLISH)) {
+                case "fail":
+                    return FAIL;
+                case "default":
+                    return DEFAULT;
+                default:
+                    return EMPTY;
+            }
+        }
+    }
+
+    /**
+     * Thrown if a variable has no value and the {@link MissingValue#FAIL} policy is used.
+     */
+    public static class MissingValueException extends Exception {
+        private static final long serialVersionUID = -3079052436471564843L;
+
+        public MissingValueException(String variable) {
+            super("No value found for " + variable);
+        }
+    }
+
+    private enum Level {
+        NEWSPAPER,
+        VOLUME,
+        ISSUE
+    }
+
+    private static class Segment {
+        // null for literal text
+        private final Level level;
+        // literal text or metadata name
+        private final String text;
+
+        private Segment(Level level, String text) {
+            this.level = level;
+            this.text = text;
+        }
+
+        private String getVariable() {
+            return "{meta." + level.name().toLowerCase(Locale.ENGLISH) + "." + text + "}";
+        }
+    }
+
+    private final List<Segment> segments;
+    @Getter
+    private final MissingValue missingValue;
+    @Getter
+    private final String defaultValue;
+
+    private PurlTemplate(List<Segment> segments, MissingValue missingValue, String defaultValue) {
+        this.segments = Collections.unmodifiableList(segments);
+        this.missingValue = missingValue;
+        this.defaultValue = defaultValue == null ? "" : defaultValue;
+    }
+
+    /**
+     * Splits the pattern into literal text and variables.
+     */
+    public static PurlTemplate compile(String pattern, MissingValue missingValue, String defaultValue) {
+        List<Segment> segments = new ArrayList<>();
+        Matcher matcher = VARIABLE.matcher(pattern);
+        int position = 0;
+        while (matcher.find()) {
+            if (matcher.start() > position) {
+                segments.add(new Segment(null, pattern.substring(position, matcher.start())));
+            }
+            segments.add(new Segment(Level.valueOf(matcher.group(1).toUpperCase(Locale.ENGLISH)), matcher.group(2)));
+            position = matcher.end();
+        }
+        if (position < pattern.length()) {
+            segments.add(new Segment(null, pattern.substring(position)));
+        }
+        return new PurlTemplate(segments, missingValue, defaultValue);
+    }
+
+    /**
+     * Replaces the newspaper and volume variables with the values of the given docstructs. The returned template contains only literal text
+     * and issue variables.
+     */
+    public PurlTemplate resolve(DocStruct newspaper, DocStruct volume) throws MissingValueException {
+        List<Segment> resolved = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        for (Segment segment : segments) {
+            if (segment.level == Level.ISSUE) {
+                if (literal.length() > 0) {
+                    resolved.add(new Segment(null, literal.toString()));
+                    literal.setLength(0);
+                }
+                resolved.add(segment);
+            } else if (segment.level == null) {
+                literal.append(segment.text);
+            } else {
+                DocStruct docstruct = segment.level == Level.NEWSPAPER ? newspaper : volume;
+                literal.append(getValue(segment, getMetadataValue(docstruct, segment.text)));
+            }
+        }
+        if (literal.length() > 0) {
+            resolved.add(new Segment(null, literal.toString()));
+        }
+        return new PurlTemplate(resolved, missingValue, defaultValue);
+    }
+
+    /**
+     * Creates the purl of an issue. The newspaper and volume variables must be resolved before.
+     */
+    public String render(DocStruct issue) throws MissingValueException {
+        // read the values of all issue variables in a single pass over the metadata
+        String[] values = new String[segments.size()];
+        if (issue.getAllMetadata() != null) {
+            for (Metadata md : issue.getAllMetadata()) {
+                String name = md.getType().getName();
+                for (int i = 0; i < values.length; i++) {
+                    Segment segment = segments.get(i);
+                    if (segment.level == Level.ISSUE && values[i] == null && segment.text.equals(name)) {
+                        values[i] = md.getValue();
+                    }
+                }
+            }
+        }
+
+        StringBuilder url = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            Segment segment = segments.get(i);
+            if (segment.level == null) {
+                url.append(segment.text);
+            } else if (segment.level == Level.ISSUE) {
+                url.append(getValue(segment, values[i]));
+            } else {
+                throw new IllegalStateException(segment.getVariable() + " is not resolved");
+            }
+        }
+        return url.toString();
+    }
+
+    private String getValue(Segment segment, String value) throws MissingValueException {
+        if (value != null && !value.isEmpty()) {
+            return value;
+        }
+        switch (missingValue) {
+            case FAIL:
+                throw new MissingValueException(segment.getVariable());
+            case DEFAULT:
+                return defaultValue;
+            default:
+                return "";
+        }
+    }
+
+    /**
+     * Returns the value of the first metadata with the given name or null, if the docstruct has no such metadata.
+     */
+    static String getMetadataValue(DocStruct docstruct, String metadataName) {
+        if (docstruct.getAllMetadata() != null) {
+            for (Metadata md : docstruct.getAllMetadata()) {
+                if (md.getType().getName().equals(metadataName)) {
+                    return md.getValue();
+                }
+            }
+        }
+        return null;
+    }
+}
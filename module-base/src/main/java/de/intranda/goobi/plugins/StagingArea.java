@@ -0,0 +1,259 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Hidden staging folders of an export, all files of an export are written there first. Each target root, e.g. the export folder or the
+ * folder that contains the image folders of the issues, gets its own staging folder inside of it, so the files stay on the file system of
+ * their target. {@link #publish()} moves them to their targets with atomic renames, the METS files last. A harvester only sees an issue when
+ * its METS file appears, and at that time its images and ALTO files are complete. Files can be staged by several threads at the same time.
+ */
+@Log4j2
+public class StagingArea implements AutoCloseable {
+
+    private static final String PREFIX = ".staging_";
+
+    // target root -> its staging folder, targets outside of the configured roots use their parent folder as root
+    private final Map<Path, Root> roots = new ConcurrentHashMap<>();
+    private final Queue<StagedFile> stagedFiles = new ConcurrentLinkedQueue<>();
+
+    StagingArea(Collection<Path> targetRoots) throws IOException {
+        try {
+            for (Path targetRoot : targetRoots) {
+                getRoot(targetRoot.toAbsolutePath().normalize());
+            }
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Creates a new staging folder inside of each target root, so the files can be renamed instead of copied when they are published.
+     */
+    public static StagingArea create(Path... targetRoots) throws IOException {
+        return new StagingArea(Arrays.asList(targetRoots));
+    }
+
+    /**
+     * Returns the staging folder of the given target root, or null if no file of the root was staged yet.
+     */
+    public Path getFolder(Path targetRoot) {
+        Root root = roots.get(targetRoot.toAbsolutePath().normalize());
+        return root == null ? null : root.folder;
+    }
+
+    private Root getRoot(Path targetRoot) throws IOException {
+        Root root = roots.get(targetRoot);
+        if (root != null) {
+            return root;
+        }
+        try {
+            return roots.computeIfAbsent(targetRoot, path -> {
+                try {
+                    Files.createDirectories(path);
+                    return new Root(path, Files.createTempDirectory(path, PREFIX));
+                } catch (IOException e) {
+                    throw new StagingException(e);
+                }
+            });
+        } catch (StagingException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Returns the location of the target in the staging folder and creates its parent folders. The file is published with the images and
+     * ALTO files.
+     *
+     * @param group the issue the file belongs to, can be null
+     */
+    public Path stage(String group, Path target) throws IOException {
+        return stage(group, target, false);
+    }
+
+    /**
+     * Like {@link #stage(String, Path)}, but the file is published after all other files. Used for the METS files that make an issue
+     * visible.
+     */
+    public Path stageLast(String group, Path target) throws IOException {
+        return stage(group, target, true);
+    }
+
+    private Path stage(String group, Path target, boolean last) throws IOException {
+        Path absoluteTarget = target.toAbsolutePath().normalize();
+        Root root = findRoot(absoluteTarget);
+        // mirror the path below the root, so the targets of different folders cannot collide
+        Path staged = root.folder.resolve(root.target.relativize(absoluteTarget).toString());
+        Files.createDirectories(staged.getParent());
+        stagedFiles.add(new StagedFile(group, root, staged, absoluteTarget, last));
+        return staged;
+    }
+
+    private Root findRoot(Path target) throws IOException {
+        Root found = null;
+        for (Root root : roots.values()) {
+            if (target.startsWith(root.target) && !target.equals(root.target)
+                    && (found == null || root.target.getNameCount() > found.target.getNameCount())) {
+                found = root;
+            }
+        }
+        return found == null ? getRoot(target.getParent()) : found;
+    }
+
+    /**
+     * Deletes the staged files of a group, e.g. of an issue whose export failed. The published files of an earlier export stay untouched.
+     */
+    public void discard(String group) throws IOException {
+        Iterator<StagedFile> iterator = stagedFiles.iterator();
+        while (iterator.hasNext()) {
+            StagedFile stagedFile = iterator.next();
+            if (group.equals(stagedFile.group)) {
+                Files.deleteIfExists(stagedFile.staged);
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Moves all staged files to their targets and removes the staging folders. Existing targets are replaced. Files that were staged but not
+     * written, e.g. unchanged files skipped by an incremental export, are ignored.
+     *
+     * @return the number of published files
+     */
+    public int publish() throws IOException {
+        int publishedFiles = 0;
+        List<StagedFile> lastFiles = new ArrayList<>();
+        StagedFile stagedFile;
+        while ((stagedFile = stagedFiles.poll()) != null) {
+            if (stagedFile.last) {
+                lastFiles.add(stagedFile);
+            } else if (move(stagedFile)) {
+                publishedFiles++;
+            }
+        }
+        for (StagedFile lastFile : lastFiles) {
+            if (move(lastFile)) {
+                publishedFiles++;
+            }
+        }
+        close();
+        return publishedFiles;
+    }
+
+    private boolean move(StagedFile stagedFile) throws IOException {
+        if (!Files.exists(stagedFile.staged, LinkOption.NOFOLLOW_LINKS)) {
+            return false;
+        }
+        Files.createDirectories(stagedFile.target.getParent());
+        Root root = stagedFile.root;
+        if (!root.atomicMoveFailed) {
+            try {
+                moveAtomically(stagedFile.staged, stagedFile.target);
+                return true;
+            } catch (AtomicMoveNotSupportedException e) {
+                // only the files of this root are affected, the other roots keep their atomic renames
+                log.warn("Cannot rename the files of {} atomically, they are moved without atomic rename: {}", root.target, e.getMessage());
+                root.atomicMoveFailed = true;
+            }
+        }
+        if (stagedFile.last) {
+            log.warn("{} is published without atomic rename, a harvester may see it before it is complete", stagedFile.target);
+        }
+        Files.move(stagedFile.staged, stagedFile.target, StandardCopyOption.REPLACE_EXISTING);
+        return true;
+    }
+
+    /**
+     * Renames the staged file to its target.
+     *
+     * @throws AtomicMoveNotSupportedException if the file cannot be renamed, e.g. because the target is on another file system
+     */
+    void moveAtomically(Path staged, Path target) throws IOException {
+        Files.move(staged, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Removes the staging folders with all files that were not published.
+     */
+    @Override
+    public void close() throws IOException {
+        stagedFiles.clear();
+        for (Root root : roots.values()) {
+            if (!Files.isDirectory(root.folder)) {
+                continue;
+            }
+            // delete the files before their folders
+            try (Stream<Path> paths = Files.walk(root.folder)) {
+                for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+
+    private static class Root {
+
+        private final Path target;
+        private final Path folder;
+        // set after the first file of the root that cannot be renamed, publish is single threaded
+        private boolean atomicMoveFailed;
+
+        Root(Path target, Path folder) {
+            this.target = target;
+            this.folder = folder;
+        }
+    }
+
+    private static class StagedFile {
+
+        private final String group;
+        private final Root root;
+        private final Path staged;
+        private final Path target;
+        // published after all other files
+        private final boolean last;
+
+        StagedFile(String group, Root root, Path staged, Path target, boolean last) {
+            this.group = group;
+            this.root = root;
+            this.staged = staged;
+            this.target = target;
+            this.last = last;
+        }
+    }
+
+    // carries an IOException out of computeIfAbsent
+    private static class StagingException extends RuntimeException {
+
+        private static final long serialVersionUID = 4128937245023457112L;
+
+        StagingException(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+}
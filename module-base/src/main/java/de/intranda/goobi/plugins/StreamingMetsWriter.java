@@ -0,0 +1,389 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URLConnection;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.commons.lang.StringUtils;
+
+import ugh.dl.DocStruct;
+import ugh.dl.DocStructType;
+import ugh.dl.Metadata;
+import ugh.dl.VirtualFileGroup;
+
+/**
+ * Writes the METS file of an issue with a {@link XMLStreamWriter}. In contrast to the METS writer of UGH no digital document with a
+ * physical structure and no DOM of the file is created: the pages are read from the docstructs of the process and written directly into
+ * the file section, the physical structMap and the structLink section. The MODS records are created with the {@link ModsMapping} of the
+ * ruleset.
+ *
+ * The METS purl and the digiprov links of the anchor are not written, the writer must not be used if they are configured.
+ */
+public class StreamingMetsWriter {
+
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+    private static final String SCHEMA_LOCATION = "http://www.loc.gov/mods/v3 http://www.loc.gov/standards/mods/mods.xsd "
+            + "http://www.loc.gov/METS/ http://www.loc.gov/standards/mets/mets.xsd";
+
+    /**
+     * The pages and the logical structure of an issue. Each logical docstruct references the indexes of its pages.
+     */
+    public static class Issue {
+        private final DocStruct logical;
+        private final DocStructType physicalType;
+        private final List<DocStruct> pages = new ArrayList<>();
+        private final List<String> imageNames = new ArrayList<>();
+        private final Map<DocStruct, List<Integer>> pageLinks = new IdentityHashMap<>();
+
+        /**
+         * @param logical the issue with its supplements, containing the metadata to export
+         * @param physicalType the type of the physical sequence
+         */
+        public Issue(DocStruct logical, DocStructType physicalType) {
+            this.logical = logical;
+            this.physicalType = physicalType;
+        }
+
+        /**
+         * Adds a page of the process.
+         *
+         * @param imageName the name of the file in the export
+         * @return the index of the page
+         */
+        public int addPage(DocStruct page, String imageName) {
+            pages.add(page);
+            imageNames.add(imageName);
+            return pages.size() - 1;
+        }
+
+        public void link(DocStruct docstruct, int pageIndex) {
+            pageLinks.computeIfAbsent(docstruct, k -> new ArrayList<>()).add(pageIndex);
+        }
+
+        public List<String> getImageNames() {
+            return imageNames;
+        }
+    }
+
+    private final ModsMapping mapping;
+    private final MetsHeaderParameters header;
+    // metadata used as LABEL of the logical divs
+    private final String labelField;
+
+    public StreamingMetsWriter(ModsMapping mapping, MetsHeaderParameters header, String labelField) {
+        this.mapping = mapping;
+        this.header = header;
+        this.labelField = labelField;
+    }
+
+    /**
+     * Returns the name of the first METS header parameter that the streaming writer cannot write, or null if the writer can be used.
+     */
+    public static String getUnsupportedParameter(MetsHeaderParameters header) {
+        if (StringUtils.isNotBlank(header.getPurl())) {
+            return "purl";
+        }
+        if (StringUtils.isNotBlank(header.getDigiprovPresentationAnchor())) {
+            return "digiprovPresentationAnchor";
+        }
+        if (StringUtils.isNotBlank(header.getDigiprovReferenceAnchor())) {
+            return "digiprovReferenceAnchor";
+        }
+        return null;
+    }
+
+    public void write(OutputStream out, Issue issue, List<VirtualFileGroup> filegroups) throws IOException {
+        try {
+            XMLStreamWriter writer = OUTPUT_FACTORY.createXMLStreamWriter(out, "UTF-8");
+            writer.writeStartDocument("UTF-8", "1.0");
+            writer.writeStartElement("mets", "mets", ModsMapping.METS_NAMESPACE);
+            for (Map.Entry<String, String> namespace : mapping.getNamespaces().entrySet()) {
+                writer.writeNamespace(namespace.getKey(), namespace.getValue());
+            }
+            writer.writeAttribute("xsi", ModsMapping.XSI_NAMESPACE, "schemaLocation", SCHEMA_LOCATION);
+
+            writeHeader(writer);
+
+            // logical docstructs in the order of the structMap, null if there is no MODS record
+            List<DocStruct> logicalDocstructs = new ArrayList<>();
+            collectLogicalDocstructs(issue.logical, logicalDocstructs);
+            List<String> dmdIds = new ArrayList<>(logicalDocstructs.size());
+            for (int i = 0; i < logicalDocstructs.size(); i++) {
+                ModsElement record = mapping.createRecord(logicalDocstructs.get(i));
+                if (record.isEmpty()) {
+                    dmdIds.add(null);
+                    continue;
+                }
+                String dmdId = String.format(Locale.ROOT, "DMDLOG_%04d", i);
+                dmdIds.add(dmdId);
+                writer.writeStartElement("mets", "dmdSec", ModsMapping.METS_NAMESPACE);
+                writer.writeAttribute("ID", dmdId);
+                writer.writeStartElement("mets", "mdWrap", ModsMapping.METS_NAMESPACE);
+                writer.writeAttribute("MDTYPE", "MODS");
+                writer.writeStartElement("mets", "xmlData", ModsMapping.METS_NAMESPACE);
+                record.write(writer);
+                writer.writeEndElement();
+                writer.writeEndElement();
+                writer.writeEndElement();
+            }
+
+            writeAmdSec(writer);
+            String[][] fileIds = writeFileSec(writer, issue, filegroups);
+            writeLogicalStructMap(writer, logicalDocstructs, dmdIds);
+            writePhysicalStructMap(writer, issue, fileIds);
+            writeStructLink(writer, issue, logicalDocstructs);
+
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.flush();
+            writer.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private void writeHeader(XMLStreamWriter writer) throws XMLStreamException {
+        writer.writeStartElement("mets", "metsHdr", ModsMapping.METS_NAMESPACE);
+        writer.writeAttribute("CREATEDATE", LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS).format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        writer.writeStartElement("mets", "agent", ModsMapping.METS_NAMESPACE);
+        writer.writeAttribute("OTHERTYPE", "SOFTWARE");
+        writer.writeAttribute("ROLE", "CREATOR");
+        writer.writeAttribute("TYPE", "OTHER");
+        writeTextElement(writer, "mets", ModsMapping.METS_NAMESPACE, "name", "Goobi newspaper export");
+        writeTextElement(writer, "mets", ModsMapping.METS_NAMESPACE, "note", header.getGoobiId());
+        writer.writeEndElement();
+        writer.writeEndElement();
+    }
+
+    private void writeAmdSec(XMLStreamWriter writer) throws XMLStreamException {
+        writer.writeStartElement("mets", "amdSec", ModsMapping.METS_NAMESPACE);
+        writer.writeAttribute("ID", "AMD");
+
+        startMdWrap(writer, "rightsMD", "RIGHTS", "DVRIGHTS");
+        writer.writeStartElement("dv", "rights", ModsMapping.DV_NAMESPACE);
+        writeTextElement(writer, "dv", ModsMapping.DV_NAMESPACE, "owner", header.getRightsOwner());
+        writeTextElement(writer, "dv", ModsMapping.DV_NAMESPACE, "ownerLogo", header.getRightsOwnerLogo());
+        writeTextElement(writer, "dv", ModsMapping.DV_NAMESPACE, "ownerSiteURL", header.getRightsOwnerSiteURL());
+        writeTextElement(writer, "dv", ModsMapping.DV_NAMESPACE, "ownerContact", header.getRightsOwnerContact());
+        writeTextElement(writer, "dv", ModsMapping.DV_NAMESPACE, "sponsor", header.getRightsSponsor());
+        writeTextElement(writer, "dv", ModsMapping.DV_NAMESPACE, "sponsorLogo", header.getRightsSponsorLogo());
+        writeTextElement(writer, "dv", ModsMapping.DV_NAMESPACE, "sponsorSiteURL", header.getRightsSponsorSiteURL());
+        writeTextElement(writer, "dv", ModsMapping.DV_NAMESPACE, "license", header.getRightsLicense());
+        endMdWrap(writer);
+
+        startMdWrap(writer, "digiprovMD", "DIGIPROV", "DVLINKS");
+        writer.writeStartElement("dv", "links", ModsMapping.DV_NAMESPACE);
+        writeTextElement(writer, "dv", ModsMapping.DV_NAMESPACE, "reference", header.getDigiprovReference());
+        writeTextElement(writer, "dv", ModsMapping.DV_NAMESPACE, "presentation", header.getDigiprovPresentation());
+        endMdWrap(writer);
+
+        writer.writeEndElement();
+    }
+
+    private static void startMdWrap(XMLStreamWriter writer, String section, String id, String mdType) throws XMLStreamException {
+        writer.writeStartElement("mets", section, ModsMapping.METS_NAMESPACE);
+        writer.writeAttribute("ID", id);
+        writer.writeStartElement("mets", "mdWrap", ModsMapping.METS_NAMESPACE);
+        writer.writeAttribute("MDTYPE", "OTHER");
+        writer.writeAttribute("MIMETYPE", "text/xml");
+        writer.writeAttribute("OTHERMDTYPE", mdType);
+        writer.writeStartElement("mets", "xmlData", ModsMapping.METS_NAMESPACE);
+    }
+
+    private static void endMdWrap(XMLStreamWriter writer) throws XMLStreamException {
+        // dv element, xmlData, mdWrap, section
+        for (int i = 0; i < 4; i++) {
+            writer.writeEndElement();
+        }
+    }
+
+    /**
+     * Writes a file group for each virtual file group with a file for each page.
+     *
+     * @return the file ids by page and file group
+     */
+    private static String[][] writeFileSec(XMLStreamWriter writer, Issue issue, List<VirtualFileGroup> filegroups) throws XMLStreamException {
+        String[][] fileIds = new String[issue.pages.size()][filegroups.size()];
+        if (filegroups.isEmpty() || issue.pages.isEmpty()) {
+            return fileIds;
+        }
+        writer.writeStartElement("mets", "fileSec", ModsMapping.METS_NAMESPACE);
+        for (int group = 0; group < filegroups.size(); group++) {
+            VirtualFileGroup filegroup = filegroups.get(group);
+            writer.writeStartElement("mets", "fileGrp", ModsMapping.METS_NAMESPACE);
+            writer.writeAttribute("USE", filegroup.getName());
+            for (int page = 0; page < issue.pages.size(); page++) {
+                String imageName = issue.imageNames.get(page);
+                String filename;
+                String mimetype = filegroup.getMimetype();
+                if (filegroup.isIgnoreConfiguredMimetypeAndSuffix()) {
+                    // the files of the media folder are used with their own name and type
+                    filename = imageName.substring(imageName.lastIndexOf('/') + 1);
+                    String guessedMimetype = URLConnection.guessContentTypeFromName(filename);
+                    if (guessedMimetype != null) {
+                        mimetype = guessedMimetype;
+                    }
+                } else {
+                    String basename = imageName.substring(imageName.lastIndexOf('/') + 1);
+                    int dotIndex = basename.lastIndexOf('.');
+                    filename = (dotIndex == -1 ? basename : basename.substring(0, dotIndex)) + "." + filegroup.getFileSuffix();
+                }
+                String fileId = String.format(Locale.ROOT, "FILE_%04d_%s", page, filegroup.getName());
+                fileIds[page][group] = fileId;
+                writer.writeStartElement("mets", "file", ModsMapping.METS_NAMESPACE);
+                writer.writeAttribute("ID", fileId);
+                writer.writeAttribute("MIMETYPE", mimetype);
+                writer.writeEmptyElement("mets", "FLocat", ModsMapping.METS_NAMESPACE);
+                writer.writeAttribute("LOCTYPE", "URL");
+                writer.writeAttribute("xlink", ModsMapping.XLINK_NAMESPACE, "href", filegroup.getPathToFiles() + filename);
+                writer.writeEndElement();
+            }
+            writer.writeEndElement();
+        }
+        writer.writeEndElement();
+        return fileIds;
+    }
+
+    private void writeLogicalStructMap(XMLStreamWriter writer, List<DocStruct> logicalDocstructs, List<String> dmdIds)
+            throws XMLStreamException {
+        writer.writeStartElement("mets", "structMap", ModsMapping.METS_NAMESPACE);
+        writer.writeAttribute("TYPE", "LOGICAL");
+        writeLogicalDiv(writer, logicalDocstructs.get(0), logicalDocstructs, dmdIds);
+        writer.writeEndElement();
+    }
+
+    private void writeLogicalDiv(XMLStreamWriter writer, DocStruct docstruct, List<DocStruct> logicalDocstructs, List<String> dmdIds)
+            throws XMLStreamException {
+        int index = indexOf(logicalDocstructs, docstruct);
+        writer.writeStartElement("mets", "div", ModsMapping.METS_NAMESPACE);
+        if (index == 0) {
+            writer.writeAttribute("ADMID", "AMD");
+            if (StringUtils.isNotBlank(header.getContentIds())) {
+                writer.writeAttribute("CONTENTIDS", header.getContentIds());
+            }
+        }
+        if (dmdIds.get(index) != null) {
+            writer.writeAttribute("DMDID", dmdIds.get(index));
+        }
+        writer.writeAttribute("ID", getLogicalId(index));
+        String label = labelField == null ? null : getMetadataValue(docstruct, labelField);
+        if (label != null) {
+            writer.writeAttribute("LABEL", label);
+        }
+        writer.writeAttribute("TYPE", mapping.getMetsType(docstruct.getType()));
+        if (docstruct.getAllChildren() != null) {
+            for (DocStruct child : docstruct.getAllChildren()) {
+                writeLogicalDiv(writer, child, logicalDocstructs, dmdIds);
+            }
+        }
+        writer.writeEndElement();
+    }
+
+    private void writePhysicalStructMap(XMLStreamWriter writer, Issue issue, String[][] fileIds) throws XMLStreamException {
+        writer.writeStartElement("mets", "structMap", ModsMapping.METS_NAMESPACE);
+        writer.writeAttribute("TYPE", "PHYSICAL");
+        writer.writeStartElement("mets", "div", ModsMapping.METS_NAMESPACE);
+        writer.writeAttribute("ID", getPhysicalId(-1));
+        writer.writeAttribute("TYPE", mapping.getMetsType(issue.physicalType));
+        for (int page = 0; page < issue.pages.size(); page++) {
+            DocStruct docstruct = issue.pages.get(page);
+            writer.writeStartElement("mets", "div", ModsMapping.METS_NAMESPACE);
+            writer.writeAttribute("ID", getPhysicalId(page));
+            String order = getMetadataValue(docstruct, "physPageNumber");
+            if (order != null) {
+                writer.writeAttribute("ORDER", order);
+            }
+            String orderLabel = getMetadataValue(docstruct, "logicalPageNumber");
+            if (orderLabel != null) {
+                writer.writeAttribute("ORDERLABEL", orderLabel);
+            }
+            writer.writeAttribute("TYPE", mapping.getMetsType(docstruct.getType()));
+            for (String fileId : fileIds[page]) {
+                writer.writeEmptyElement("mets", "fptr", ModsMapping.METS_NAMESPACE);
+                writer.writeAttribute("FILEID", fileId);
+            }
+            writer.writeEndElement();
+        }
+        writer.writeEndElement();
+        writer.writeEndElement();
+    }
+
+    private static void writeStructLink(XMLStreamWriter writer, Issue issue, List<DocStruct> logicalDocstructs) throws XMLStreamException {
+        if (issue.pageLinks.isEmpty()) {
+            return;
+        }
+        writer.writeStartElement("mets", "structLink", ModsMapping.METS_NAMESPACE);
+        for (int i = 0; i < logicalDocstructs.size(); i++) {
+            List<Integer> pages = issue.pageLinks.get(logicalDocstructs.get(i));
+            if (pages == null) {
+                continue;
+            }
+            for (Integer page : pages) {
+                writer.writeEmptyElement("mets", "smLink", ModsMapping.METS_NAMESPACE);
+                writer.writeAttribute("xlink", ModsMapping.XLINK_NAMESPACE, "to", getPhysicalId(page));
+                writer.writeAttribute("xlink", ModsMapping.XLINK_NAMESPACE, "from", getLogicalId(i));
+            }
+        }
+        writer.writeEndElement();
+    }
+
+    private static void writeTextElement(XMLStreamWriter writer, String prefix, String namespace, String name, String value)
+            throws XMLStreamException {
+        if (StringUtils.isBlank(value)) {
+            return;
+        }
+        writer.writeStartElement(prefix, name, namespace);
+        writer.writeCharacters(value);
+        writer.writeEndElement();
+    }
+
+    private static void collectLogicalDocstructs(DocStruct docstruct, List<DocStruct> docstructs) {
+        docstructs.add(docstruct);
+        if (docstruct.getAllChildren() != null) {
+            for (DocStruct child : docstruct.getAllChildren()) {
+                collectLogicalDocstructs(child, docstructs);
+            }
+        }
+    }
+
+    private static int indexOf(List<DocStruct> docstructs, DocStruct docstruct) {
+        for (int i = 0; i < docstructs.size(); i++) {
+            if (docstructs.get(i) == docstruct) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String getLogicalId(int index) {
+        return String.format(Locale.ROOT, "LOG_%04d", index);
+    }
+
+    // the physical sequence is PHYS_0000, the pages start with PHYS_0001
+    private static String getPhysicalId(int page) {
+        return String.format(Locale.ROOT, "PHYS_%04d", page + 1);
+    }
+
+    private static String getMetadataValue(DocStruct docstruct, String metadataName) {
+        if (docstruct.getAllMetadata() != null) {
+            for (Metadata md : docstruct.getAllMetadata()) {
+                if (metadataName.equals(md.getType().getName())) {
+                    return md.getValue();
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,30 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import org.junit.Test;
+
+public class ExportManifestTest {
+
+    @Test
+    public void testFingerprint() {
+        String fingerprint = new ExportManifest.Fingerprint().add("ab").add("c").toHex();
+        assertEquals(64, fingerprint.length());
+        assertEquals(fingerprint, new ExportManifest.Fingerprint().add("ab").add("c").toHex());
+        // the values are separated by their length
+        assertNotEquals(fingerprint, new ExportManifest.Fingerprint().add("a").add("bc").toHex());
+        assertNotEquals(new ExportManifest.Fingerprint().add((String) null).toHex(), new ExportManifest.Fingerprint().add("").toHex());
+    }
+
+    @Test
+    public void testFingerprints() {
+        ExportManifest manifest = new ExportManifest();
+        manifest.setFingerprint("301877785_1867-01-03", "abc");
+        manifest.setFingerprint("301877785_1867-01-01", "def");
+        manifest.setFingerprint("301877785_1867-01-03", "ghi");
+        // the order of the issues is kept
+        assertEquals("[301877785_1867-01-03, 301877785_1867-01-01]", manifest.getIssueIdentifiers().toString());
+        assertEquals("ghi", manifest.getFingerprint("301877785_1867-01-03"));
+    }
+}
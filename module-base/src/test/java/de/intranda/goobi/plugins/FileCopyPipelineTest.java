@@ -0,0 +1,317 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class FileCopyPipelineTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCopyInParallel() throws Exception {
+        Path source = folder.newFolder("source").toPath();
+        Path target = folder.newFolder("target").toPath();
+        Random random = new Random(1);
+        for (int i = 0; i < 20; i++) {
+            byte[] content = new byte[1000 * (i + 1)];
+            random.nextBytes(content);
+            Files.write(source.resolve(i + ".tif"), content);
+        }
+
+        try (FileCopyPipeline pipeline = new FileCopyPipeline(4, FileCopyPipeline.LinkMode.COPY, true)) {
+            for (int i = 0; i < 20; i++) {
+                pipeline.copy(source.resolve(i + ".tif"), target.resolve(i + ".tif"));
+            }
+            pipeline.await();
+
+            assertEquals(20, pipeline.getCopiedFiles());
+            assertEquals(210000, pipeline.getCopiedBytes());
+        }
+        for (int i = 0; i < 20; i++) {
+            assertArrayEquals(Files.readAllBytes(source.resolve(i + ".tif")), Files.readAllBytes(target.resolve(i + ".tif")));
+        }
+    }
+
+    @Test
+    public void testChecksumsWhileCopying() throws Exception {
+        Path source = folder.newFolder("source").toPath();
+        Path target = folder.newFolder("target").toPath();
+        Random random = new Random(1);
+        for (int i = 0; i < 5; i++) {
+            byte[] content = new byte[3 * 1024 * 1024 + i];
+            random.nextBytes(content);
+            Files.write(source.resolve(i + ".tif"), content);
+        }
+
+        try (FileCopyPipeline pipeline = new FileCopyPipeline(2, FileCopyPipeline.LinkMode.COPY, true)) {
+            pipeline.setChecksumAlgorithm("SHA-256");
+            for (int i = 0; i < 5; i++) {
+                pipeline.copy(source.resolve(i + ".tif"), target.resolve(i + ".tif"), "issue");
+            }
+            pipeline.await();
+
+            Map<Path, String> checksums = pipeline.getChecksums("issue");
+            assertEquals(5, checksums.size());
+            for (int i = 0; i < 5; i++) {
+                assertEquals(ChecksumFile.calculate(source.resolve(i + ".tif"), "SHA-256"), checksums.get(target.resolve(i + ".tif")));
+            }
+            assertTrue(new ChecksumFile("SHA-256", checksums).verify().isEmpty());
+            assertTrue(pipeline.getChecksums("other").isEmpty());
+        }
+        // a changed file is reported
+        Files.write(target.resolve("0.tif"), new byte[] { 1 });
+        assertEquals(1, new ChecksumFile("SHA-256", Collections.singletonMap(target.resolve("0.tif"), "00")).verify().size());
+    }
+
+    @Test
+    public void testOverwriteExistingFile() throws Exception {
+        Path source = folder.newFile("source.xml").toPath();
+        Path target = folder.newFile("target.xml").toPath();
+        Files.write(source, new byte[] { 1, 2, 3 });
+        Files.write(target, new byte[] { 4, 5, 6, 7, 8 });
+
+        try (FileCopyPipeline pipeline = new FileCopyPipeline(1, FileCopyPipeline.LinkMode.COPY, true)) {
+            pipeline.copy(source, target);
+        }
+        assertArrayEquals(new byte[] { 1, 2, 3 }, Files.readAllBytes(target));
+    }
+
+    @Test
+    public void testCloseWaitsForRunningTransfers() throws Exception {
+        Path source = folder.newFolder("source").toPath();
+        Path target = folder.newFolder("target").toPath();
+        byte[] content = new byte[4 * 1024 * 1024];
+        new Random(1).nextBytes(content);
+        for (int i = 0; i < 8; i++) {
+            Files.write(source.resolve(i + ".tif"), content);
+        }
+
+        try (FileCopyPipeline pipeline = new FileCopyPipeline(2, FileCopyPipeline.LinkMode.COPY, true)) {
+            for (int i = 0; i < 8; i++) {
+                pipeline.copy(source.resolve(i + ".tif"), target.resolve(i + ".tif"));
+            }
+        }
+        // no transfer writes into the folder after close, like the staging area it can be deleted
+        try (Stream<Path> files = Files.list(target)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(target);
+        assertFalse(Files.exists(target));
+    }
+
+    @Test
+    public void testFileTransferEvents() throws Exception {
+        Path source = folder.newFile("source.tif").toPath();
+        Path target = folder.newFolder("target").toPath().resolve("target.tif");
+        Files.write(source, new byte[1234]);
+
+        Path recordingFile = folder.getRoot().toPath().resolve("transfer.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(FileTransferEvent.class).withoutThreshold();
+            recording.start();
+            try (FileCopyPipeline pipeline = new FileCopyPipeline(2, FileCopyPipeline.LinkMode.COPY, true)) {
+                pipeline.copy(source, target);
+                pipeline.await();
+            }
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(recordingFile);
+        assertEquals(1, events.size());
+        RecordedEvent event = events.get(0);
+        assertEquals(source.toString(), event.getString("source"));
+        assertEquals(target.toString(), event.getString("target"));
+        assertEquals("copied", event.getString("result"));
+        assertEquals(1234, event.getLong("bytes"));
+    }
+
+    @Test
+    public void testSkipUnchangedFile() throws Exception {
+        Path source = folder.newFile("source.xml").toPath();
+        Path target = folder.newFile("target.xml").toPath();
+        Files.write(source, new byte[] { 1, 2, 3 });
+
+        try (FileCopyPipeline pipeline = new FileCopyPipeline(1, FileCopyPipeline.LinkMode.COPY, true)) {
+            pipeline.setSkipUnchanged(true);
+            pipeline.copy(source, target);
+            // the copy has the same size and modification date as the source
+            pipeline.copy(source, target);
+            assertEquals(1, pipeline.getCopiedFiles());
+            assertEquals(1, pipeline.getSkippedFiles());
+
+            Files.write(source, new byte[] { 4, 5, 6 });
+            Files.setLastModifiedTime(source, FileTime.fromMillis(Files.getLastModifiedTime(target).toMillis() + 1000));
+            pipeline.copy(source, target);
+            assertEquals(2, pipeline.getCopiedFiles());
+        }
+        assertArrayEquals(new byte[] { 4, 5, 6 }, Files.readAllBytes(target));
+    }
+
+    @Test
+    public void testSkippedFileUsesPreviousChecksum() throws Exception {
+        Path source = folder.newFile("source.xml").toPath();
+        Path exportFolder = folder.newFolder("export").toPath();
+        Path target = exportFolder.resolve("target.xml");
+        Files.write(source, new byte[] { 1, 2, 3 });
+
+        Path checksumFile = exportFolder.resolve("issue.sha256");
+        try (FileCopyPipeline pipeline = new FileCopyPipeline(1, FileCopyPipeline.LinkMode.COPY, true)) {
+            pipeline.setChecksumAlgorithm("SHA-256");
+            pipeline.copy(source, target, "issue");
+            pipeline.await();
+            new ChecksumFile("SHA-256", pipeline.getChecksums("issue")).write(checksumFile, exportFolder);
+        }
+        Map<Path, String> previousChecksums = ChecksumFile.read(checksumFile, exportFolder);
+        assertEquals(Collections.singletonMap(target, ChecksumFile.calculate(source, "SHA-256")), previousChecksums);
+
+        try (FileCopyPipeline pipeline = new FileCopyPipeline(1, FileCopyPipeline.LinkMode.COPY, true)) {
+            pipeline.setChecksumAlgorithm("SHA-256");
+            pipeline.setSkipUnchanged(true);
+            // the skipped file is not read again, its checksum is taken from the previous export
+            pipeline.setPreviousChecksums("issue", Collections.singletonMap(target, "previous"));
+            pipeline.copy(source, target, "issue");
+            pipeline.await();
+            assertEquals(1, pipeline.getSkippedFiles());
+            assertEquals("previous", pipeline.getChecksums("issue").get(target));
+        }
+    }
+
+    @Test
+    public void testHardlink() throws Exception {
+        Path source = folder.newFile("source.tif").toPath();
+        Files.write(source, new byte[] { 1, 2, 3 });
+        Path target = folder.newFolder("target").toPath().resolve("target.tif");
+
+        try (FileCopyPipeline pipeline = new FileCopyPipeline(1, FileCopyPipeline.LinkMode.HARDLINK, true)) {
+            pipeline.copy(source, target);
+            assertEquals(1, pipeline.getLinkedFiles());
+            assertEquals(0, pipeline.getCopiedFiles());
+        }
+        assertTrue(Files.isSameFile(source, target));
+    }
+
+    @Test
+    public void testSymlink() throws Exception {
+        Path source = folder.newFile("source.tif").toPath();
+        Files.write(source, new byte[] { 1, 2, 3 });
+        Path target = folder.newFolder("target").toPath().resolve("target.tif");
+
+        try (FileCopyPipeline pipeline = new FileCopyPipeline(1, FileCopyPipeline.LinkMode.SYMLINK, true)) {
+            pipeline.copy(source, target);
+        }
+        assertTrue(Files.isSymbolicLink(target));
+        assertArrayEquals(new byte[] { 1, 2, 3 }, Files.readAllBytes(target));
+    }
+
+    @Test
+    public void testCopyOverHardlinkKeepsSource() throws Exception {
+        Path source = folder.newFile("source.tif").toPath();
+        Files.write(source, new byte[] { 1, 2, 3 });
+        Path other = folder.newFile("other.tif").toPath();
+        Files.write(other, new byte[] { 4, 5 });
+        Path targetFolder = folder.newFolder("target").toPath();
+        // targets of a previous export with link mode hardlink
+        Path target = Files.createLink(targetFolder.resolve("target.tif"), source);
+        Path otherTarget = Files.createLink(targetFolder.resolve("other.tif"), source);
+
+        try (FileCopyPipeline pipeline = new FileCopyPipeline(1, FileCopyPipeline.LinkMode.COPY, true)) {
+            pipeline.setChecksumAlgorithm("SHA-256");
+            pipeline.copy(source, target);
+            pipeline.copy(other, otherTarget, "issue");
+            assertEquals(2, pipeline.getCopiedFiles());
+        }
+        assertArrayEquals(new byte[] { 1, 2, 3 }, Files.readAllBytes(source));
+        assertArrayEquals(new byte[] { 1, 2, 3 }, Files.readAllBytes(target));
+        assertFalse(Files.isSameFile(source, target));
+        assertArrayEquals(new byte[] { 4, 5 }, Files.readAllBytes(otherTarget));
+    }
+
+    @Test
+    public void testCopyOverSymlinkKeepsSource() throws Exception {
+        Path source = folder.newFile("source.tif").toPath();
+        Files.write(source, new byte[] { 1, 2, 3 });
+        Path target = Files.createSymbolicLink(folder.newFolder("target").toPath().resolve("target.tif"), source);
+
+        try (FileCopyPipeline pipeline = new FileCopyPipeline(1, FileCopyPipeline.LinkMode.COPY, true)) {
+            pipeline.copy(source, target);
+        }
+        assertArrayEquals(new byte[] { 1, 2, 3 }, Files.readAllBytes(source));
+        assertFalse(Files.isSymbolicLink(target));
+        assertArrayEquals(new byte[] { 1, 2, 3 }, Files.readAllBytes(target));
+    }
+
+    @Test
+    public void testReflinkFallsBackToCopy() throws Exception {
+        Path source = folder.newFile("source.tif").toPath();
+        Files.write(source, new byte[] { 1, 2, 3 });
+        Path target = folder.newFolder("target").toPath().resolve("target.tif");
+
+        try (FileCopyPipeline pipeline = new FileCopyPipeline(1, FileCopyPipeline.LinkMode.REFLINK, true)) {
+            pipeline.copy(source, target);
+            // depending on the file system the file is either cloned or copied
+            assertEquals(1, pipeline.getLinkedFiles() + pipeline.getCopiedFiles());
+        }
+        assertFalse(Files.isSymbolicLink(target));
+        assertArrayEquals(new byte[] { 1, 2, 3 }, Files.readAllBytes(target));
+    }
+
+    @Test
+    public void testLinkModeFromConfiguration() {
+        assertEquals(FileCopyPipeline.LinkMode.COPY, FileCopyPipeline.LinkMode.fromConfiguration(null));
+        assertEquals(FileCopyPipeline.LinkMode.COPY, FileCopyPipeline.LinkMode.fromConfiguration("copy"));
+        assertEquals(FileCopyPipeline.LinkMode.HARDLINK, FileCopyPipeline.LinkMode.fromConfiguration("hardlink"));
+        assertEquals(FileCopyPipeline.LinkMode.SYMLINK, FileCopyPipeline.LinkMode.fromConfiguration("Symlink"));
+        assertEquals(FileCopyPipeline.LinkMode.REFLINK, FileCopyPipeline.LinkMode.fromConfiguration("reflink-if-available"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testMissingSourceFailsOnAwait() throws Exception {
+        Path target = folder.newFolder("target").toPath();
+        try (FileCopyPipeline pipeline = new FileCopyPipeline(2, FileCopyPipeline.LinkMode.COPY, true)) {
+            pipeline.copy(target.resolve("missing.tif"), target.resolve("copy.tif"));
+            pipeline.await();
+        }
+    }
+
+    @Test
+    public void testFailuresAreReportedPerGroup() throws Exception {
+        Path source = folder.newFile("source.tif").toPath();
+        Files.write(source, new byte[] { 1, 2, 3 });
+        Path target = folder.newFolder("target").toPath();
+        try (FileCopyPipeline pipeline = new FileCopyPipeline(2, FileCopyPipeline.LinkMode.COPY, true)) {
+            pipeline.copy(source, target.resolve("1.tif"), "first");
+            pipeline.copy(target.resolve("missing.tif"), target.resolve("2.tif"), "second");
+            pipeline.copy(source, target.resolve("3.tif"), "second");
+
+            Map<String, Exception> failures = pipeline.awaitFailures();
+            assertEquals(1, failures.size());
+            assertTrue(failures.get("second") instanceof IOException);
+            assertEquals(2, pipeline.getCopiedFiles());
+        }
+        assertTrue(Files.exists(target.resolve("3.tif")));
+    }
+}
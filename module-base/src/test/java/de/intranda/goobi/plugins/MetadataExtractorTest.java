@@ -0,0 +1,76 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.Metadata;
+import ugh.dl.Prefs;
+
+public class MetadataExtractorTest {
+
+    private Prefs prefs;
+
+    @Before
+    public void setUp() throws Exception {
+        String resourcesFolder = "src/test/resources/";
+        if (!Files.exists(Paths.get(resourcesFolder))) {
+            resourcesFolder = "target/test-classes/";
+        }
+        prefs = new Prefs();
+        prefs.loadPrefs(resourcesFolder + "ruleset_newspaper.xml");
+    }
+
+    @Test
+    public void testExtract() throws Exception {
+        Map<MetadataExtractor.Field, String> names = new EnumMap<>(MetadataExtractor.Field.class);
+        names.put(MetadataExtractor.Field.ISSUE_NUMBER, "CurrentNo");
+        names.put(MetadataExtractor.Field.SORT_NUMBER, "CurrentNoSorting");
+        names.put(MetadataExtractor.Field.IDENTIFIER, "CatalogIDDigital");
+        names.put(MetadataExtractor.Field.LANGUAGE, null);
+        MetadataExtractor extractor = new MetadataExtractor(names);
+
+        DocStruct issue = new DigitalDocument().createDocStruct(prefs.getDocStrctTypeByName("NewspaperIssue"));
+        addMetadata(issue, "CurrentNo", "1");
+        addMetadata(issue, "CurrentNo", "2");
+        addMetadata(issue, "CatalogIDDigital", "301877785_1867-01-03");
+
+        MetadataExtractor.Values values = extractor.extract(issue);
+        // the last value wins
+        assertEquals("2", values.get(MetadataExtractor.Field.ISSUE_NUMBER));
+        assertEquals("1", values.getFirst(MetadataExtractor.Field.ISSUE_NUMBER));
+        assertEquals("301877785_1867-01-03", values.get(MetadataExtractor.Field.IDENTIFIER));
+        assertNull(values.get(MetadataExtractor.Field.SORT_NUMBER));
+        assertNull(values.get(MetadataExtractor.Field.LANGUAGE));
+    }
+
+    @Test
+    public void testSameMetadataForSeveralFields() throws Exception {
+        Map<MetadataExtractor.Field, String> names = new EnumMap<>(MetadataExtractor.Field.class);
+        names.put(MetadataExtractor.Field.ISSUE_NUMBER, "CurrentNo");
+        names.put(MetadataExtractor.Field.SORT_NUMBER, "CurrentNo");
+        MetadataExtractor extractor = new MetadataExtractor(names);
+
+        DocStruct issue = new DigitalDocument().createDocStruct(prefs.getDocStrctTypeByName("NewspaperIssue"));
+        addMetadata(issue, "CurrentNo", "3");
+
+        MetadataExtractor.Values values = extractor.extract(issue);
+        assertEquals("3", values.get(MetadataExtractor.Field.ISSUE_NUMBER));
+        assertEquals("3", values.get(MetadataExtractor.Field.SORT_NUMBER));
+    }
+
+    private void addMetadata(DocStruct docstruct, String type, String value) throws Exception {
+        Metadata md = new Metadata(prefs.getMetadataTypeByName(type));
+        md.setValue(value);
+        docstruct.addMetadata(md);
+    }
+}
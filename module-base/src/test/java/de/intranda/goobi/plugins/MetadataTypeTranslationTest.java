@@ -0,0 +1,69 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ugh.dl.DocStructType;
+import ugh.dl.MetadataType;
+import ugh.dl.Prefs;
+
+public class MetadataTypeTranslationTest {
+
+    private Prefs prefs;
+
+    @Before
+    public void setUp() throws Exception {
+        String resourcesFolder = "src/test/resources/";
+        if (!Files.exists(Paths.get(resourcesFolder))) {
+            resourcesFolder = "target/test-classes/";
+        }
+        prefs = new Prefs();
+        prefs.loadPrefs(resourcesFolder + "ruleset_newspaper.xml");
+    }
+
+    @Test
+    public void testGetMetadataType() {
+        MetadataTypeTranslation translation = new MetadataTypeTranslation(prefs);
+        MetadataType title = prefs.getMetadataTypeByName("TitleDocMain");
+
+        assertSame(title, translation.getMetadataType("", title));
+        assertEquals("newspaperTitleDocMain", translation.getMetadataType("newspaper", title).getName());
+        // the second call is answered from the table
+        assertSame(translation.getMetadataType("newspaper", title), translation.getMetadataType("newspaper", title));
+        assertNull(translation.getMetadataType("missingPrefix", title));
+    }
+
+    @Test
+    public void testIsAllowed() {
+        MetadataTypeTranslation translation = new MetadataTypeTranslation(prefs);
+        DocStructType issueType = prefs.getDocStrctTypeByName("ExportNewspaperIssue");
+        DocStructType pageType = prefs.getDocStrctTypeByName("page");
+        MetadataType title = prefs.getMetadataTypeByName("TitleDocMain");
+
+        assertTrue(translation.isAllowed(issueType, title));
+        assertTrue(translation.isAllowed(issueType, translation.getMetadataType("newspaper", title)));
+        assertFalse(translation.isAllowed(pageType, title));
+    }
+
+    @Test
+    public void testTranslationIsCachedPerRuleset() {
+        NewspaperExportConfiguration.clearCache();
+        MetadataTypeTranslation translation = NewspaperExportConfiguration.getMetadataTypeTranslation("ruleset_newspaper.xml", prefs);
+        assertSame(translation, NewspaperExportConfiguration.getMetadataTypeTranslation("ruleset_newspaper.xml", prefs));
+
+        // the ruleset was loaded again
+        Prefs reloaded = new Prefs();
+        assertNotSame(translation, NewspaperExportConfiguration.getMetadataTypeTranslation("ruleset_newspaper.xml", reloaded));
+        NewspaperExportConfiguration.clearCache();
+    }
+}
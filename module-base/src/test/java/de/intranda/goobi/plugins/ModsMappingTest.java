@@ -0,0 +1,255 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import ugh.dl.Corporate;
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.Metadata;
+import ugh.dl.MetadataGroup;
+import ugh.dl.Person;
+import ugh.dl.Prefs;
+
+public class ModsMappingTest {
+
+    private Prefs prefs;
+    private ModsMapping mapping;
+
+    @Before
+    public void setUp() throws Exception {
+        String resourcesFolder = "src/test/resources/";
+        if (!Files.exists(Paths.get(resourcesFolder))) {
+            resourcesFolder = "target/test-classes/";
+        }
+        prefs = new Prefs();
+        prefs.loadPrefs(resourcesFolder + "ruleset_newspaper.xml");
+        mapping = ModsMapping.compile(prefs.getPreferenceNode("METS"));
+    }
+
+    @Test
+    public void testCreateRecord() throws Exception {
+        DocStruct issue = new DigitalDocument().createDocStruct(prefs.getDocStrctTypeByName("NewspaperIssue"));
+        addMetadata(issue, "TitleDocMain", "Ausgabe vom 03. Januar 1867");
+        addMetadata(issue, "CatalogIDDigital", "301877785_1867-01-03_2");
+        addMetadata(issue, "DateIssued", "1867-01-03");
+        addMetadata(issue, "CurrentNoSorting", "2");
+        addMetadata(issue, "UseAndReproductionLicense", "CC0");
+
+        ModsElement mods = mapping.createRecord(issue);
+        assertEquals("Ausgabe vom 03. Januar 1867", getChild(getChild(mods, "titleInfo"), "title").getText());
+
+        ModsElement recordIdentifier = getChild(getChild(mods, "recordInfo"), "recordIdentifier");
+        assertEquals("zdb-ppn", recordIdentifier.getAttribute("source"));
+        assertEquals("301877785_1867-01-03_2", recordIdentifier.getText());
+
+        ModsElement originInfo = getChild(mods, "originInfo");
+        assertEquals("publication", originInfo.getAttribute("eventType"));
+        ModsElement dateIssued = getChild(originInfo, "dateIssued");
+        assertEquals("iso8601", dateIssued.getAttribute("encoding"));
+        assertEquals("yes", dateIssued.getAttribute("keyDate"));
+        assertEquals("1867-01-03", dateIssued.getText());
+
+        // the value is written into the attribute of the last step
+        ModsElement part = getChild(mods, "part");
+        assertEquals("2", part.getAttribute("order"));
+        assertNull(part.getText());
+
+        // only the rule with the matching condition is used, its value is replaced
+        ModsElement accessCondition = getChild(mods, "accessCondition");
+        assertEquals("https://creativecommons.org/publicdomain/zero/1.0/", accessCondition.getAttribute("xlink:href"));
+        assertEquals("CC0 1.0 Universal (CC0 1.0) Public Domain Dedication", accessCondition.getText());
+        assertEquals(1, mods.getChildren().stream().filter(child -> "accessCondition".equals(child.getName())).count());
+    }
+
+    @Test
+    public void testMetsType() {
+        assertEquals("issue", mapping.getMetsType(prefs.getDocStrctTypeByName("NewspaperIssue")));
+        assertEquals("physSequence", mapping.getMetsType(prefs.getDocStrctTypeByName("BoundBook")));
+    }
+
+    @Test(expected = ModsMapping.UnsupportedMappingException.class)
+    public void testUnsupportedExpression() throws Exception {
+        String mets = "<METS><Metadata><InternalName>TitleDocMain</InternalName>"
+                + "<WriteXPath>./mods:mods/mods:titleInfo[last()]/mods:title</WriteXPath></Metadata></METS>";
+        ModsMapping.compile(DocumentBuilderFactory.newInstance()
+                .newDocumentBuilder()
+                .parse(new ByteArrayInputStream(mets.getBytes(StandardCharsets.UTF_8)))
+                .getDocumentElement());
+    }
+
+    @Test
+    public void testEveryWriteExpressionOfRuleset() throws Exception {
+        Node metsNode = prefs.getPreferenceNode("METS");
+        StringBuilder namespaces = new StringBuilder();
+        for (Element definition : getChildElements(metsNode, "NamespaceDefinition")) {
+            namespaces.append("<NamespaceDefinition><URI>")
+                    .append(escape(getChildText(definition, "URI")))
+                    .append("</URI><prefix>")
+                    .append(escape(getChildText(definition, "prefix")))
+                    .append("</prefix></NamespaceDefinition>");
+        }
+        List<String> expressions = new ArrayList<>();
+        for (Element element : getChildElements(metsNode, null)) {
+            if ("Metadata".equals(element.getNodeName()) || "Group".equals(element.getNodeName())) {
+                expressions.add(getChildText(element, "WriteXPath").trim());
+            }
+        }
+        assertFalse(expressions.isEmpty());
+
+        // each absolute expression of the ruleset is used for the title, the value must end up in the element or attribute of its last step
+        for (String expression : expressions) {
+            String mets = "<METS>" + namespaces + "<Metadata><InternalName>TitleDocMain</InternalName><WriteXPath>" + escape(expression)
+                    + "</WriteXPath></Metadata></METS>";
+            ModsMapping expressionMapping = ModsMapping.compile(DocumentBuilderFactory.newInstance()
+                    .newDocumentBuilder()
+                    .parse(new ByteArrayInputStream(mets.getBytes(StandardCharsets.UTF_8)))
+                    .getDocumentElement());
+            DocStruct issue = new DigitalDocument().createDocStruct(prefs.getDocStrctTypeByName("NewspaperIssue"));
+            addMetadata(issue, "TitleDocMain", "expression value");
+
+            ModsElement mods = expressionMapping.createRecord(issue);
+            Matcher attribute = Pattern.compile("/@([\\w:]+)$").matcher(expression);
+            String attributeName = attribute.find() ? attribute.group(1) : null;
+            assertTrue(expression, containsValue(mods, attributeName, "expression value"));
+        }
+    }
+
+    @Test
+    public void testPersonCorporateAndGroup() throws Exception {
+        DocStruct issue = new DigitalDocument().createDocStruct(prefs.getDocStrctTypeByName("ExportNewspaperIssue"));
+        Person editor = new Person(prefs.getMetadataTypeByName("newspaperEditor"));
+        editor.setFirstname("Heinrich");
+        editor.setLastname("Mustermann");
+        issue.addPerson(editor);
+        Corporate publisher = new Corporate(prefs.getMetadataTypeByName("newspaperCorporateEditor"));
+        publisher.setMainName("Verlag");
+        publisher.setPartName("Redaktion");
+        issue.addCorporate(publisher);
+        MetadataGroup location = new MetadataGroup(prefs.getMetadataGroupTypeByName("newspaperLocation"));
+        Metadata shelfLocator = new Metadata(prefs.getMetadataTypeByName("shelfLocator"));
+        shelfLocator.setValue("Z 123");
+        location.addMetadata(shelfLocator);
+        issue.addMetadataGroup(location);
+
+        ModsElement mods = mapping.createRecord(issue);
+        // all rules use the same host element
+        List<ModsElement> hosts = getChildren(mods, "relatedItem");
+        assertEquals(1, hosts.size());
+        assertEquals("host", hosts.get(0).getAttribute("type"));
+
+        List<ModsElement> names = getChildren(hosts.get(0), "name");
+        assertEquals(2, names.size());
+        ModsElement person = names.get(0);
+        assertEquals("personal", person.getAttribute("type"));
+        // the child value of the predicate is created together with the element
+        ModsElement roleTerm = getChild(getChild(person, "role"), "roleTerm");
+        assertEquals("edt", roleTerm.getText());
+        assertEquals("marcrelator", roleTerm.getAttribute("authority"));
+        assertEquals("code", roleTerm.getAttribute("type"));
+        List<ModsElement> personParts = getChildren(person, "namePart");
+        assertEquals(2, personParts.size());
+        assertEquals("given", personParts.get(0).getAttribute("type"));
+        assertEquals("Heinrich", personParts.get(0).getText());
+        assertEquals("family", personParts.get(1).getAttribute("type"));
+        assertEquals("Mustermann", personParts.get(1).getText());
+        assertEquals("Mustermann, Heinrich", getChild(person, "displayForm").getText());
+
+        ModsElement corporate = names.get(1);
+        assertEquals("corporate", corporate.getAttribute("type"));
+        List<ModsElement> corporateParts = getChildren(corporate, "namePart");
+        assertEquals(2, corporateParts.size());
+        assertEquals("Verlag", corporateParts.get(0).getText());
+        assertEquals("Redaktion", corporateParts.get(1).getText());
+
+        // the metadata of the group is written relative to the element of the group
+        assertEquals("Z 123", getChild(getChild(hosts.get(0), "location"), "shelfLocator").getText());
+    }
+
+    @Test
+    public void testPositionalPredicate() throws Exception {
+        DocStruct newspaper = new DigitalDocument().createDocStruct(prefs.getDocStrctTypeByName("Newspaper"));
+        addMetadata(newspaper, "_electronicPublisher", "Digitalisierungszentrum");
+
+        ModsElement mods = mapping.createRecord(newspaper);
+        // the missing first originInfo is created together with the second one
+        List<ModsElement> originInfos = getChildren(mods, "originInfo");
+        assertEquals(2, originInfos.size());
+        assertTrue(originInfos.get(0).getChildren().isEmpty());
+        assertEquals("Digitalisierungszentrum", getChild(originInfos.get(1), "publisher").getText());
+    }
+
+    private void addMetadata(DocStruct docstruct, String type, String value) throws Exception {
+        Metadata md = new Metadata(prefs.getMetadataTypeByName(type));
+        md.setValue(value);
+        docstruct.addMetadata(md);
+    }
+
+    private List<ModsElement> getChildren(ModsElement element, String name) {
+        List<ModsElement> children = new ArrayList<>();
+        for (ModsElement child : element.getChildren()) {
+            if (name.equals(child.getName())) {
+                children.add(child);
+            }
+        }
+        return children;
+    }
+
+    private boolean containsValue(ModsElement element, String attributeName, String value) {
+        if (attributeName == null ? value.equals(element.getText()) : value.equals(element.getAttribute(attributeName))) {
+            return true;
+        }
+        for (ModsElement child : element.getChildren()) {
+            if (containsValue(child, attributeName, value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<Element> getChildElements(Node node, String name) {
+        List<Element> elements = new ArrayList<>();
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element && (name == null || name.equals(child.getNodeName()))) {
+                elements.add((Element) child);
+            }
+        }
+        return elements;
+    }
+
+    private static String getChildText(Element element, String name) {
+        List<Element> children = getChildElements(element, name);
+        return children.isEmpty() ? "" : children.get(0).getTextContent();
+    }
+
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    private ModsElement getChild(ModsElement element, String name) {
+        for (ModsElement child : element.getChildren()) {
+            if (name.equals(child.getName())) {
+                return child;
+            }
+        }
+        return null;
+    }
+}
@@ -1,19 +1,29 @@
 package de.intranda.goobi.plugins;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.lang.reflect.Method;
+import java.nio.file.attribute.FileTime;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.MatchResult;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -22,6 +32,8 @@ import org.apache.commons.configuration.ConfigurationException;
 import org.apache.commons.configuration.SubnodeConfiguration;
 import org.apache.commons.configuration.XMLConfiguration;
 import org.apache.commons.configuration.reloading.FileChangedReloadingStrategy;
+import org.apache.commons.configuration.tree.DefaultExpressionEngine;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.filefilter.DirectoryFileFilter;
 import org.apache.commons.io.filefilter.FileFileFilter;
 import org.easymock.EasyMock;
@@ -32,11 +44,14 @@ import org.goobi.beans.ProjectFileGroup;
 import org.goobi.beans.Ruleset;
 import org.goobi.beans.Step;
 import org.goobi.production.enums.PluginType;
+import org.jdom2.Attribute;
 import org.jdom2.Document;
 import org.jdom2.Element;
 import org.jdom2.Namespace;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.BeforeClass;
+import org.junit.Ignore;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
@@ -52,17 +67,26 @@ import de.sub.goobi.helper.VariableReplacer;
 import de.sub.goobi.helper.XmlTools;
 import de.sub.goobi.metadaten.MetadatenHelper;
 import de.sub.goobi.persistence.managers.MetadataManager;
+import lombok.extern.log4j.Log4j2;
+import ugh.dl.Corporate;
 import ugh.dl.DigitalDocument;
 import ugh.dl.DocStruct;
+import ugh.dl.DocStructType;
 import ugh.dl.Fileformat;
 import ugh.dl.Metadata;
+import ugh.dl.MetadataGroup;
 import ugh.dl.MetadataType;
+import ugh.dl.Person;
 import ugh.dl.Prefs;
+import ugh.dl.Reference;
+import ugh.dl.VirtualFileGroup;
 import ugh.fileformats.mets.MetsMods;
 
+@Log4j2
 @RunWith(PowerMockRunner.class)
 @PrepareForTest({ MetadatenHelper.class, VariableReplacer.class, ConfigurationHelper.class, ConfigPlugins.class, MetadataManager.class })
-@PowerMockIgnore({ "javax.management.*", "javax.xml.*", "org.xml.*", "org.w3c.*", "javax.net.ssl.*", "jdk.internal.reflect.*" })
+@PowerMockIgnore({ "javax.management.*", "javax.xml.*", "org.xml.*", "org.w3c.*", "javax.net.ssl.*", "jdk.internal.reflect.*",
+        "com.sun.management.*" })
 public class NewspaperExportPluginTest {
 
     private static final Namespace modsNamespace = Namespace.getNamespace("mods", "http://www.loc.gov/mods/v3");
@@ -81,6 +105,7 @@ public class NewspaperExportPluginTest {
     private Process process;
     private Step step;
     private Prefs prefs;
+    private XMLConfiguration config;
 
     @BeforeClass
     public static void setUpClass() {
@@ -104,10 +129,12 @@ public class NewspaperExportPluginTest {
         if (!Files.exists(Paths.get(resourcesFolder))) {
             resourcesFolder = "target/test-classes/"; // to run mvn test from cli or in jenkins
         }
+        config = getConfig();
         PowerMock.mockStatic(ConfigPlugins.class);
-        EasyMock.expect(ConfigPlugins.getPluginConfig(EasyMock.anyString())).andReturn(getConfig()).anyTimes();
+        EasyMock.expect(ConfigPlugins.getPluginConfig(EasyMock.anyString())).andReturn(config).anyTimes();
         PowerMock.replay(ConfigPlugins.class);
         process = prepareProcess();
+        NewspaperExportConfiguration.clearCache();
 
     }
 
@@ -135,6 +162,25 @@ public class NewspaperExportPluginTest {
         assertNull(plugin.getProblems());
     }
 
+    @Test
+    public void testProblemsOfLastExport() throws Exception {
+        NewspaperExportPlugin plugin = new NewspaperExportPlugin();
+        Thread exportThread = new Thread(() -> {
+            try {
+                plugin.startExport(process);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        exportThread.start();
+        exportThread.join();
+
+        // the problems are kept by the plugin and not by the thread of the export
+        List<String> problems = plugin.getProblems();
+        assertNotNull(problems);
+        assertTrue(problems.isEmpty());
+    }
+
     @Test
     public void testExportFulltext() {
         NewspaperExportPlugin plugin = new NewspaperExportPlugin();
@@ -152,6 +198,22 @@ public class NewspaperExportPluginTest {
         assertTrue(plugin.isExportImages());
     }
 
+    @Test
+    public void testExportImagesOverridesConfiguration() throws Exception {
+        config.setExpressionEngine(new DefaultExpressionEngine());
+        config.setProperty("config.export.images", false);
+        config.setProperty("config.export.fulltext", false);
+        NewspaperExportConfiguration.clearCache();
+
+        NewspaperExportPlugin plugin = new NewspaperExportPlugin();
+        plugin.setExportImages(true);
+        plugin.startExport(process);
+
+        // the images are exported because of the plugin, the ALTO files are not exported
+        assertEquals(13, exportFolder.listFiles((dir, name) -> name.endsWith("_tif")).length);
+        assertEquals(0, exportFolder.listFiles((dir, name) -> name.endsWith("_alto")).length);
+    }
+
     @Test
     public void testExportFiles() throws Exception {
         NewspaperExportPlugin plugin = new NewspaperExportPlugin();
@@ -384,6 +446,453 @@ public class NewspaperExportPluginTest {
         assertEquals("LOG_0001", smLinks.get(5).getAttributeValue("from", xlinkNamespace));
     }
 
+    @Test
+    public void testParallelExportMatchesSequentialExport() throws Exception {
+        NewspaperExportPlugin plugin = new NewspaperExportPlugin();
+        assertTrue(plugin.startExport(process));
+
+        // keep the sequentially created files
+        File sequentialFolder = folder.newFolder("sequential");
+        for (String filename : exportFolder.list(FileFileFilter.INSTANCE)) {
+            Files.move(Paths.get(exportFolder.toString(), filename), Paths.get(sequentialFolder.toString(), filename));
+        }
+
+        config.setExpressionEngine(new DefaultExpressionEngine());
+        config.setProperty("config.export.threads", 4);
+        NewspaperExportConfiguration.clearCache();
+        assertTrue(plugin.startExport(process));
+
+        String[] files = exportFolder.list(FileFileFilter.INSTANCE);
+        assertEquals(13, files.length);
+        assertEquals(26, exportFolder.list(DirectoryFileFilter.INSTANCE).length);
+        for (String filename : files) {
+            assertEquals(readWithoutTimestamps(Paths.get(sequentialFolder.toString(), filename)),
+                    readWithoutTimestamps(Paths.get(exportFolder.toString(), filename)));
+        }
+    }
+
+    @Test
+    public void testStreamingMetsWriterMatchesUghWriter() throws Exception {
+        // the streaming writer is not used with the anchor links of the test configuration
+        config.setExpressionEngine(new DefaultExpressionEngine());
+        config.setProperty("config.digiprovPresentationAnchor", "");
+        NewspaperExportConfiguration.clearCache();
+        NewspaperExportPlugin plugin = new NewspaperExportPlugin();
+        assertTrue(plugin.startExport(process));
+
+        // keep the files created with UGH
+        File ughFolder = folder.newFolder("ugh");
+        for (String filename : exportFolder.list(FileFileFilter.INSTANCE)) {
+            Files.move(Paths.get(exportFolder.toString(), filename), Paths.get(ughFolder.toString(), filename));
+        }
+
+        config.setExpressionEngine(new DefaultExpressionEngine());
+        config.setProperty("config.export.metsWriter", "streaming");
+        NewspaperExportConfiguration.clearCache();
+        assertTrue(plugin.startExport(process));
+
+        String[] files = exportFolder.list(FileFileFilter.INSTANCE);
+        assertEquals(13, files.length);
+        assertEquals(26, exportFolder.list(DirectoryFileFilter.INSTANCE).length);
+        for (String filename : files) {
+            assertEquals(filename, describeMets(Paths.get(ughFolder.toString(), filename)),
+                    describeMets(Paths.get(exportFolder.toString(), filename)));
+        }
+    }
+
+    @Test
+    public void testStreamingMetsWriterUsesMainTitleAsLabel() throws Exception {
+        NewspaperExportConfiguration configuration = NewspaperExportConfiguration.getConfiguration("intranda_export_newspaper", "project");
+        NewspaperExportContext context = new NewspaperExportContext(process, configuration);
+        DigitalDocument digitalDocument = process.readMetadataFile().getDigitalDocument();
+        MetsHeaderParameters parameters = new MetsHeaderParameters(context, new VariableReplacer(digitalDocument, prefs, process, null),
+                Collections.emptyList());
+
+        DocStruct issue = new DigitalDocument().createDocStruct(prefs.getDocStrctTypeByName("ExportNewspaperIssue"));
+        Metadata title = new Metadata(prefs.getMetadataTypeByName(configuration.getMainTitleField()));
+        title.setValue("Allgemeine Zeitung, 3. Januar 1867");
+        issue.addMetadata(title);
+        StreamingMetsWriter writer =
+                new StreamingMetsWriter(ModsMapping.compile(prefs.getPreferenceNode("METS")), parameters, configuration.getMainTitleField());
+        Path file = folder.newFile("issue.xml").toPath();
+        try (OutputStream out = Files.newOutputStream(file)) {
+            writer.write(out, new StreamingMetsWriter.Issue(issue, digitalDocument.getPhysicalDocStruct().getType()), Collections.emptyList());
+        }
+
+        Element logicalDiv = XmlTools.readDocumentFromFile(file).getRootElement().getChild("structMap", metsNamespace).getChild("div", metsNamespace);
+        assertEquals("Allgemeine Zeitung, 3. Januar 1867", logicalDiv.getAttributeValue("LABEL"));
+    }
+
+    @Test
+    public void testStreamingMetsWriterIsNotUsedWithAnchorLinks() throws Exception {
+        NewspaperExportPlugin plugin = new NewspaperExportPlugin();
+        NewspaperExportConfiguration configuration = NewspaperExportConfiguration.getConfiguration("intranda_export_newspaper", "project");
+        NewspaperExportContext context = new NewspaperExportContext(process, configuration);
+        DigitalDocument digitalDocument = process.readMetadataFile().getDigitalDocument();
+        MetsHeaderParameters parameters = new MetsHeaderParameters(context, new VariableReplacer(digitalDocument, prefs, process, null),
+                Collections.emptyList());
+        // the test configuration contains a digiprovPresentationAnchor
+        assertEquals("digiprovPresentationAnchor", StreamingMetsWriter.getUnsupportedParameter(parameters));
+        assertNull(plugin.createStreamingMetsWriter(context, parameters, Collections.emptyList()));
+
+        config.setExpressionEngine(new DefaultExpressionEngine());
+        config.setProperty("config.digiprovPresentationAnchor", "");
+        NewspaperExportConfiguration.clearCache();
+        configuration = NewspaperExportConfiguration.getConfiguration("intranda_export_newspaper", "project");
+        context = new NewspaperExportContext(process, configuration);
+        parameters = new MetsHeaderParameters(context, new VariableReplacer(digitalDocument, prefs, process, null), Collections.emptyList());
+        assertNull(StreamingMetsWriter.getUnsupportedParameter(parameters));
+        assertNotNull(plugin.createStreamingMetsWriter(context, parameters, Collections.emptyList()));
+    }
+
+    @Test
+    public void testExportOfSeveralYears() throws Exception {
+        // move the last three issues into a second year
+        Fileformat fileformat = process.readMetadataFile();
+        DigitalDocument digitalDocument = fileformat.getDigitalDocument();
+        DocStruct newspaper = digitalDocument.getLogicalDocStruct();
+        DocStruct firstYear = newspaper.getAllChildren().get(0);
+        DocStruct secondYear = digitalDocument.createDocStruct(firstYear.getType());
+        Metadata yearIdentifier = new Metadata(prefs.getMetadataTypeByName("CatalogIDDigital"));
+        yearIdentifier.setValue("301877785_1868");
+        secondYear.addMetadata(yearIdentifier);
+        Metadata yearNumber = new Metadata(prefs.getMetadataTypeByName("CurrentNoSorting"));
+        yearNumber.setValue("1868");
+        secondYear.addMetadata(yearNumber);
+        newspaper.addChild(secondYear);
+        List<DocStruct> movedIssues = new ArrayList<>(firstYear.getAllChildren().subList(10, 13));
+        for (DocStruct issue : movedIssues) {
+            firstYear.removeChild(issue);
+            secondYear.addChild(issue);
+        }
+        process.writeMetadataFile(fileformat);
+
+        File mappingFolder = folder.newFolder("mapping");
+        config.setExpressionEngine(new DefaultExpressionEngine());
+        config.setProperty("identifierMapping[@enabled]", true);
+        config.setProperty("identifierMapping.mappingFolder", mappingFolder.toString());
+        config.setProperty("identifierMapping.urlPrefix", "https://viewer.example.org/");
+        config.setProperty("config.export.threads", 2);
+        NewspaperExportConfiguration.clearCache();
+        NewspaperExportPlugin plugin = new NewspaperExportPlugin();
+        assertTrue(plugin.startExport(process));
+
+        // all issues are exported, each year has its own mapping file
+        assertEquals(13, exportFolder.list(FileFileFilter.INSTANCE).length);
+        assertEquals(26, exportFolder.list(DirectoryFileFilter.INSTANCE).length);
+        List<String> firstYearLines = Files.readAllLines(Paths.get(mappingFolder.toString(), "301877785_1867.txt"), StandardCharsets.UTF_8);
+        List<String> secondYearLines = Files.readAllLines(Paths.get(mappingFolder.toString(), "301877785_1868.txt"), StandardCharsets.UTF_8);
+        assertFalse(firstYearLines.isEmpty());
+        assertFalse(secondYearLines.isEmpty());
+        for (String line : secondYearLines) {
+            assertTrue(line, line.startsWith("https://viewer.example.org/301877785_1868/"));
+        }
+        for (String line : firstYearLines) {
+            assertTrue(line, line.startsWith("https://viewer.example.org/301877785_1867/"));
+        }
+    }
+
+    @Test
+    public void testContinueOnErrorSkipsInvalidIssue() throws Exception {
+        // remove the date of the first issue
+        Fileformat fileformat = process.readMetadataFile();
+        DocStruct year = fileformat.getDigitalDocument().getLogicalDocStruct().getAllChildren().get(0);
+        DocStruct issue = year.getAllChildren().get(0);
+        issue.removeMetadata(issue.getAllMetadataByType(prefs.getMetadataTypeByName("DateIssued")).get(0));
+        process.writeMetadataFile(fileformat);
+
+        NewspaperExportPlugin plugin = new NewspaperExportPlugin();
+        assertFalse(plugin.startExport(process));
+        assertEquals(0, exportFolder.list(FileFileFilter.INSTANCE).length);
+
+        config.setExpressionEngine(new DefaultExpressionEngine());
+        config.setProperty("config.export.continueOnError", true);
+        NewspaperExportConfiguration.clearCache();
+        plugin = new NewspaperExportPlugin();
+        assertFalse(plugin.startExport(process));
+
+        // the other issues are exported, the skipped issue is reported
+        assertEquals(12, exportFolder.list(FileFileFilter.INSTANCE).length);
+        List<String> problems = plugin.getProblems();
+        String skippedIssue = "skipped: Abort export, issue has no publication date";
+        assertTrue(problems.toString(), problems.stream().anyMatch(problem -> problem.endsWith(skippedIssue)));
+        assertTrue(problems.toString(), problems.contains("Partial export: 12 of 13 issues exported, 1 issues skipped"));
+    }
+
+    @Test
+    public void testParallelValidationReportsFirstInvalidIssue() throws Exception {
+        // the second issue has no date, the fourth one a date in the wrong format
+        Fileformat fileformat = process.readMetadataFile();
+        DocStruct year = fileformat.getDigitalDocument().getLogicalDocStruct().getAllChildren().get(0);
+        MetadataType dateType = prefs.getMetadataTypeByName("DateIssued");
+        DocStruct secondIssue = year.getAllChildren().get(1);
+        secondIssue.removeMetadata(secondIssue.getAllMetadataByType(dateType).get(0));
+        year.getAllChildren().get(3).getAllMetadataByType(dateType).get(0).setValue("5.1.1867");
+        process.writeMetadataFile(fileformat);
+
+        config.setExpressionEngine(new DefaultExpressionEngine());
+        config.setProperty("config.export.threads", 4);
+        NewspaperExportConfiguration.clearCache();
+
+        // independent of the order in which the threads validate the issues, only the first invalid issue is reported
+        for (int run = 0; run < 10; run++) {
+            NewspaperExportPlugin plugin = new NewspaperExportPlugin();
+            assertFalse(plugin.startExport(process));
+            assertEquals(Collections.singletonList("Abort export, issue has no publication date"), plugin.getProblems());
+        }
+        assertEquals(0, exportFolder.list(FileFileFilter.INSTANCE).length);
+    }
+
+    @Test
+    public void testValidateExport() throws Exception {
+        NewspaperExportPlugin plugin = new NewspaperExportPlugin();
+        assertTrue(plugin.validateExport(process).isEmpty());
+
+        // remove the date of two issues and an ALTO file
+        Fileformat fileformat = process.readMetadataFile();
+        DocStruct year = fileformat.getDigitalDocument().getLogicalDocStruct().getAllChildren().get(0);
+        for (DocStruct issue : year.getAllChildren().subList(0, 2)) {
+            issue.removeMetadata(issue.getAllMetadataByType(prefs.getMetadataTypeByName("DateIssued")).get(0));
+        }
+        process.writeMetadataFile(fileformat);
+        Files.delete(Paths.get(process.getOcrAltoDirectory(), "00000001.xml"));
+        Path metadataFile = Paths.get(processDirectory.toString(), "meta.xml");
+        byte[] metadata = Files.readAllBytes(metadataFile);
+
+        // all problems are reported, nothing is exported or saved
+        List<String> problems = plugin.validateExport(process);
+        assertEquals(problems.toString(), 2, problems.stream().filter(problem -> problem.endsWith("issue has no publication date")).count());
+        assertTrue(problems.toString(), problems.stream().anyMatch(problem -> problem.endsWith("ALTO file 00000001.xml is missing")));
+        assertEquals(0, exportFolder.list().length);
+        assertArrayEquals(metadata, Files.readAllBytes(metadataFile));
+    }
+
+    @Test
+    public void testValidateExportWithoutZdbId() throws Exception {
+        Fileformat fileformat = process.readMetadataFile();
+        DocStruct newspaper = fileformat.getDigitalDocument().getLogicalDocStruct();
+        newspaper.removeMetadata(newspaper.getAllMetadataByType(prefs.getMetadataTypeByName("CatalogIDPeriodicalDB")).get(0));
+        DocStruct issue = newspaper.getAllChildren().get(0).getAllChildren().get(5);
+        issue.removeMetadata(issue.getAllMetadataByType(prefs.getMetadataTypeByName("DateIssued")).get(0));
+        process.writeMetadataFile(fileformat);
+        Files.delete(Paths.get(process.getOcrAltoDirectory(), "00000001.xml"));
+        // the issues are validated by several threads
+        config.setExpressionEngine(new DefaultExpressionEngine());
+        config.setProperty("config.export.threads", 4);
+        NewspaperExportConfiguration.clearCache();
+
+        // the validation continues after the problem of the newspaper, the issues and ALTO files are checked as well
+        List<String> problems = new NewspaperExportPlugin().validateExport(process);
+        assertTrue(problems.toString(), problems.contains("Export aborted, ZDB id or record id is missing"));
+        assertEquals(problems.toString(), 1, problems.stream().filter(problem -> problem.endsWith("issue has no publication date")).count());
+        assertTrue(problems.toString(), problems.stream().anyMatch(problem -> problem.endsWith("ALTO file 00000001.xml is missing")));
+    }
+
+    @Test
+    public void testExportMetrics() throws Exception {
+        InMemoryExportMetrics metrics = new InMemoryExportMetrics();
+        NewspaperExportPlugin plugin = new NewspaperExportPlugin();
+        plugin.setMetrics(metrics);
+        assertTrue(plugin.startExport(process));
+
+        assertEquals(Boolean.TRUE, metrics.getLastExportSuccessful());
+        assertEquals(1, metrics.getOperations(ExportMetrics.Phase.EXPORT));
+        assertEquals(1, metrics.getOperations(ExportMetrics.Phase.READ_METADATA));
+        assertEquals(1, metrics.getOperations(ExportMetrics.Phase.SAVE_METADATA));
+        // each preparation step is recorded once in its own phase
+        assertEquals(1, metrics.getOperations(ExportMetrics.Phase.METS_HEADER));
+        assertEquals(1, metrics.getOperations(ExportMetrics.Phase.PREPARATION));
+        assertEquals(1, metrics.getOperations(ExportMetrics.Phase.VOLUME_PREPARATION));
+        assertEquals(13, metrics.getOperations(ExportMetrics.Phase.METS));
+        assertEquals(13, metrics.getCounter(ExportMetrics.Counter.EXPORTED_ISSUES));
+        // each page has an image and an ALTO file
+        long images = metrics.getCounter(ExportMetrics.Counter.IMAGE_FILES);
+        assertTrue(images > 0);
+        assertEquals(images, metrics.getCounter(ExportMetrics.Counter.ALTO_FILES));
+        assertEquals(images, metrics.getOperations(ExportMetrics.Phase.IMAGE_COPY));
+        assertEquals(images * Files.size(Paths.get(resourcesFolder, "00000005.tif")), metrics.getCounter(ExportMetrics.Counter.IMAGE_BYTES));
+        // METS files, images and ALTO files
+        assertEquals(13 + 2 * images, metrics.getCounter(ExportMetrics.Counter.PUBLISHED_FILES));
+        // the export is sequential, no phase can take longer than the complete export
+        assertTrue(metrics.getNanos(ExportMetrics.Phase.METS) <= metrics.getNanos(ExportMetrics.Phase.EXPORT));
+    }
+
+    @Test
+    public void testChecksumFiles() throws Exception {
+        config.setExpressionEngine(new DefaultExpressionEngine());
+        config.setProperty("config.export.checksum", "SHA-256");
+        config.setProperty("config.export.checksum[@verify]", true);
+        config.setProperty("config.export.copyThreads", 2);
+        NewspaperExportConfiguration.clearCache();
+        NewspaperExportPlugin plugin = new NewspaperExportPlugin();
+        assertTrue(plugin.startExport(process));
+
+        String[] checksumFiles = exportFolder.list((dir, name) -> name.endsWith(".sha256"));
+        assertEquals(13, checksumFiles.length);
+        // one line for each image and ALTO file, the paths are relative to the export folder
+        for (String checksumFile : checksumFiles) {
+            for (String line : Files.readAllLines(Paths.get(exportFolder.toString(), checksumFile), StandardCharsets.UTF_8)) {
+                String[] parts = line.split("  ", 2);
+                Path file = Paths.get(exportFolder.toString(), parts[1]);
+                assertEquals(line, ChecksumFile.calculate(file, "SHA-256"), parts[0]);
+            }
+        }
+    }
+
+    @Test
+    public void testIncrementalExportSkipsUnchangedIssues() throws Exception {
+        config.setExpressionEngine(new DefaultExpressionEngine());
+        config.setProperty("config.export.incremental", true);
+        NewspaperExportConfiguration.clearCache();
+        NewspaperExportPlugin plugin = new NewspaperExportPlugin();
+        assertTrue(plugin.startExport(process));
+
+        // the manifest is kept in the process folder, not in the export folder
+        assertEquals(0, exportFolder.list((dir, name) -> name.endsWith(".manifest")).length);
+        File processFolder = new File(process.getProcessDataDirectory());
+        String[] manifests = processFolder.list((dir, name) -> name.endsWith(".manifest"));
+        assertEquals(1, manifests.length);
+        Path manifestFile = Paths.get(processFolder.toString(), manifests[0]);
+        ExportManifest manifest = ExportManifest.read(manifestFile);
+        List<String> issueIdentifiers = new ArrayList<>(manifest.getIssueIdentifiers());
+        assertEquals(13, issueIdentifiers.size());
+
+        // mark two exported issues, change the fingerprint of the second one and add an issue that no longer exists
+        Path unchangedIssue = Paths.get(exportFolder.toString(), issueIdentifiers.get(0) + ".xml");
+        Path changedIssue = Paths.get(exportFolder.toString(), issueIdentifiers.get(1) + ".xml");
+        Files.write(unchangedIssue, "unchanged".getBytes(StandardCharsets.UTF_8));
+        Files.write(changedIssue, "changed".getBytes(StandardCharsets.UTF_8));
+        manifest.setFingerprint(issueIdentifiers.get(1), "outdated");
+        manifest.setFingerprint("removed_issue", "outdated");
+        manifest.write(manifestFile);
+        Path removedIssue = Paths.get(exportFolder.toString(), "removed_issue.xml");
+        Files.write(removedIssue, "removed".getBytes(StandardCharsets.UTF_8));
+        Path removedImages = Files.createDirectory(Paths.get(exportFolder.toString(), "removed_issue_tif"));
+        Files.write(removedImages.resolve("00000001.tif"), new byte[1]);
+
+        assertTrue(plugin.startExport(process));
+        assertEquals("unchanged", new String(Files.readAllBytes(unchangedIssue), StandardCharsets.UTF_8));
+        assertNotEquals("changed", new String(Files.readAllBytes(changedIssue), StandardCharsets.UTF_8));
+        assertFalse(Files.exists(removedIssue));
+        assertFalse(Files.exists(removedImages));
+        assertEquals(13, exportFolder.list((dir, name) -> name.endsWith(".xml")).length);
+        assertEquals(26, exportFolder.list(DirectoryFileFilter.INSTANCE).length);
+
+        ExportManifest updatedManifest = ExportManifest.read(manifestFile);
+        assertEquals(issueIdentifiers, new ArrayList<>(updatedManifest.getIssueIdentifiers()));
+        assertNotEquals("outdated", updatedManifest.getFingerprint(issueIdentifiers.get(1)));
+    }
+
+    @Test
+    public void testIncrementalExportWithManifestFolder() throws Exception {
+        File manifestFolder = new File(folder.getRoot(), "manifests");
+        config.setExpressionEngine(new DefaultExpressionEngine());
+        config.setProperty("config.export.incremental", true);
+        config.setProperty("config.export.manifestFolder", manifestFolder.toString());
+        NewspaperExportConfiguration.clearCache();
+        NewspaperExportPlugin plugin = new NewspaperExportPlugin();
+        assertTrue(plugin.startExport(process));
+
+        assertEquals(1, manifestFolder.list((dir, name) -> name.endsWith(".manifest")).length);
+        assertEquals(0, exportFolder.list((dir, name) -> name.endsWith(".manifest")).length);
+    }
+
+    @Test
+    public void testConfigurationIsCachedUntilFileChanges() throws Exception {
+        NewspaperExportConfiguration configuration = NewspaperExportConfiguration.getConfiguration("intranda_export_newspaper", "project");
+        assertSame(configuration, NewspaperExportConfiguration.getConfiguration("intranda_export_newspaper", "project"));
+        assertEquals(exportFolder.toString() + "/", configuration.getExportFolder());
+        assertEquals("ddb", configuration.getExportMode());
+
+        Path configurationFile = Paths.get(resourcesFolder, "plugin_intranda_export_newspaper.xml");
+        FileTime lastModified = Files.getLastModifiedTime(configurationFile);
+        try {
+            Files.setLastModifiedTime(configurationFile, FileTime.fromMillis(lastModified.toMillis() + 1000));
+            assertNotSame(configuration, NewspaperExportConfiguration.getConfiguration("intranda_export_newspaper", "project"));
+        } finally {
+            Files.setLastModifiedTime(configurationFile, lastModified);
+        }
+    }
+
+    @Test
+    @Ignore("the file groups of the plugin configuration are read, but never added to the list, the project file groups are always used")
+    public void testFilegroupsOfConfiguration() {
+        NewspaperExportConfiguration configuration = NewspaperExportConfiguration.getConfiguration("intranda_export_newspaper", "project");
+        List<ProjectFileGroup> filegroups = configuration.getFilegroups();
+        assertEquals(2, filegroups.size());
+        assertEquals("DEFAULT", filegroups.get(0).getName());
+        assertEquals("FULLTEXT", filegroups.get(1).getName());
+        assertEquals("xml/alto", filegroups.get(1).getMimetype());
+    }
+
+    @Test
+    public void testIndexFilesByBasename() {
+        List<Path> files = new ArrayList<>();
+        files.add(Paths.get("/images/00000001.tif"));
+        files.add(Paths.get("/images/00000002.TIF"));
+        files.add(Paths.get("/images/00000002.jpg"));
+        files.add(Paths.get("/images/Cover"));
+
+        Map<String, Path> index = NewspaperExportPlugin.indexFilesByBasename(files);
+        assertEquals(3, index.size());
+        assertEquals(Paths.get("/images/00000001.tif"), index.get("00000001"));
+        // the first file with the same name wins
+        assertEquals(Paths.get("/images/00000002.TIF"), index.get("00000002"));
+        assertEquals(Paths.get("/images/Cover"), index.get("cover"));
+        assertNull(index.get("00000003"));
+    }
+
+    @Test
+    public void testSupplementLinkingOfLargeIssue() throws Exception {
+        NewspaperExportPlugin plugin = new NewspaperExportPlugin();
+        NewspaperExportConfiguration configuration = NewspaperExportConfiguration.getConfiguration("intranda_export_newspaper", "project");
+        NewspaperExportContext context = new NewspaperExportContext(process, configuration);
+        DocStructType pageType = prefs.getDocStrctTypeByName("page");
+        int numberOfPages = 16000;
+
+        DigitalDocument source = new DigitalDocument();
+        DocStruct issue = source.createDocStruct(prefs.getDocStrctTypeByName("NewspaperIssue"));
+        DocStruct supplement = source.createDocStruct(prefs.getDocStrctTypeByName("NewspaperSupplement"));
+        issue.addChild(supplement);
+
+        DigitalDocument target = new DigitalDocument();
+        DocStruct newIssue = target.createDocStruct(prefs.getDocStrctTypeByName("ExportNewspaperIssue"));
+        AtomicInteger lookups = new AtomicInteger();
+        Map<String, DocStruct> pagesByImageName = new HashMap<String, DocStruct>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public DocStruct get(Object key) {
+                lookups.incrementAndGet();
+                return super.get(key);
+            }
+        };
+        for (int i = 1; i <= numberOfPages; i++) {
+            // the supplement references every second page, with the path of the master folder
+            String imageName = String.format("%08d.tif", i);
+            DocStruct newPage = target.createDocStruct(pageType);
+            newPage.setImageName(imageName);
+            pagesByImageName.put(imageName, newPage);
+            if (i % 2 == 0) {
+                DocStruct oldPage = source.createDocStruct(pageType);
+                oldPage.setImageName("/opt/digiverso/metadata/1/images/master_media/" + imageName);
+                supplement.addReferenceTo(oldPage, "logical_physical");
+            }
+        }
+
+        plugin.addSupplements(context, issue, newIssue, target, pagesByImageName);
+
+        // a single lookup for each page of the supplement, the pages of the issue are not scanned
+        assertEquals(numberOfPages / 2, lookups.get());
+        List<Reference> references = newIssue.getAllChildren().get(0).getAllToReferences();
+        assertEquals(numberOfPages / 2, references.size());
+        for (int i = 0; i < references.size(); i++) {
+            DocStruct page = references.get(i).getTarget();
+            assertEquals(String.format("%08d.tif", 2 * (i + 1)), page.getImageName());
+            assertSame(pagesByImageName.get(page.getImageName()), page);
+        }
+    }
+
     // --- purlPattern regex tests ---
 
     @Test
@@ -438,10 +947,10 @@ public class NewspaperExportPluginTest {
         assertEquals(2, count);
     }
 
-    // --- getMetadataValueFromDocstruct tests ---
+    // --- PurlTemplate.getMetadataValue tests ---
 
     @Test
-    public void testGetMetadataValueFromDocstruct_existingField() throws Exception {
+    public void testGetMetadataValue_existingField() throws Exception {
         DigitalDocument dd = new DigitalDocument();
         DocStruct ds = dd.createDocStruct(prefs.getDocStrctTypeByName("Newspaper"));
         MetadataType type = prefs.getMetadataTypeByName("CatalogIDDigital");
@@ -449,14 +958,11 @@ public class NewspaperExportPluginTest {
         md.setValue("301877785");
         ds.addMetadata(md);
 
-        Method method = NewspaperExportPlugin.class.getDeclaredMethod("getMetadataValueFromDocstruct", DocStruct.class, String.class);
-        method.setAccessible(true);
-
-        assertEquals("301877785", (String) method.invoke(new NewspaperExportPlugin(), ds, "CatalogIDDigital"));
+        assertEquals("301877785", PurlTemplate.getMetadataValue(ds, "CatalogIDDigital"));
     }
 
     @Test
-    public void testGetMetadataValueFromDocstruct_missingField_returnsEmpty() throws Exception {
+    public void testGetMetadataValue_missingField_returnsNull() throws Exception {
         DigitalDocument dd = new DigitalDocument();
         DocStruct ds = dd.createDocStruct(prefs.getDocStrctTypeByName("Newspaper"));
         MetadataType type = prefs.getMetadataTypeByName("CatalogIDDigital");
@@ -464,14 +970,11 @@ public class NewspaperExportPluginTest {
         md.setValue("301877785");
         ds.addMetadata(md);
 
-        Method method = NewspaperExportPlugin.class.getDeclaredMethod("getMetadataValueFromDocstruct", DocStruct.class, String.class);
-        method.setAccessible(true);
-
-        assertEquals("", (String) method.invoke(new NewspaperExportPlugin(), ds, "PublisherName"));
+        assertNull(PurlTemplate.getMetadataValue(ds, "PublisherName"));
     }
 
     @Test
-    public void testGetMetadataValueFromDocstruct_multipleMetadata_returnsFirst() throws Exception {
+    public void testGetMetadataValue_multipleMetadata_returnsFirst() throws Exception {
         DigitalDocument dd = new DigitalDocument();
         DocStruct ds = dd.createDocStruct(prefs.getDocStrctTypeByName("NewspaperIssue"));
         MetadataType type = prefs.getMetadataTypeByName("CurrentNo");
@@ -482,10 +985,243 @@ public class NewspaperExportPluginTest {
         md2.setValue("second");
         ds.addMetadata(md2);
 
-        Method method = NewspaperExportPlugin.class.getDeclaredMethod("getMetadataValueFromDocstruct", DocStruct.class, String.class);
-        method.setAccessible(true);
+        assertEquals("first", PurlTemplate.getMetadataValue(ds, "CurrentNo"));
+    }
 
-        assertEquals("first", (String) method.invoke(new NewspaperExportPlugin(), ds, "CurrentNo"));
+    @Test
+    public void testMetsHeaderParametersKeepIssueIdentifier() throws Exception {
+        NewspaperExportConfiguration configuration = NewspaperExportConfiguration.getConfiguration("intranda_export_newspaper", "project");
+        NewspaperExportContext context = new NewspaperExportContext(process, configuration);
+        DigitalDocument digitalDocument = process.readMetadataFile().getDigitalDocument();
+
+        ProjectFileGroup filegroup = new ProjectFileGroup();
+        filegroup.setName("PRESENTATION");
+        filegroup.setPath("/data/$(meta.CatalogIDDigital)_tif/");
+        MetsHeaderParameters parameters = new MetsHeaderParameters(context, new VariableReplacer(digitalDocument, prefs, process, null),
+                Collections.singletonList(filegroup));
+
+        // each issue gets its own identifier instead of the identifier of the volume
+        List<VirtualFileGroup> first = parameters.createFilegroups("301877785_1867-01-03_2");
+        List<VirtualFileGroup> second = parameters.createFilegroups("301877785_1867-01-05_3");
+        assertEquals("/data/301877785_1867-01-03_2_tif/", first.get(0).getPathToFiles());
+        assertEquals("/data/301877785_1867-01-05_3_tif/", second.get(0).getPathToFiles());
+    }
+
+    @Test
+    public void testInheritedMetadataTemplate() throws Exception {
+        NewspaperExportPlugin plugin = new NewspaperExportPlugin();
+        NewspaperExportConfiguration configuration = NewspaperExportConfiguration.getConfiguration("intranda_export_newspaper", "project");
+        NewspaperExportContext context = new NewspaperExportContext(process, configuration);
+        DocStruct newspaper = process.readMetadataFile().getDigitalDocument().getLogicalDocStruct();
+        DocStruct newspaperYear = newspaper.getAllChildren().get(0);
+        DocStructType issueType = prefs.getDocStrctTypeByName("ExportNewspaperIssue");
+
+        DocStruct template =
+                plugin.createInheritedMetadata(context, plugin.createNewspaperMetadata(context, newspaper, issueType), newspaperYear, issueType);
+        DigitalDocument digitalDocument = new DigitalDocument();
+        DocStruct copiedFromParents = digitalDocument.createDocStruct(issueType);
+        plugin.copyMetadata(context, "year", newspaperYear, copiedFromParents);
+        plugin.copyMetadata(context, "newspaper", newspaper, copiedFromParents);
+        DocStruct copiedFromTemplate = digitalDocument.createDocStruct(issueType);
+        plugin.copyMetadata(context, "", template, copiedFromTemplate);
+
+        // the template produces the same metadata as the copy from the parents
+        assertFalse(describeMetadata(copiedFromParents).isEmpty());
+        assertEquals(describeMetadata(copiedFromParents), describeMetadata(copiedFromTemplate));
+    }
+
+    private List<String> describeMetadata(DocStruct docstruct) {
+        List<String> description = new ArrayList<>();
+        if (docstruct.getAllMetadata() != null) {
+            for (Metadata md : docstruct.getAllMetadata()) {
+                description.add(md.getType().getName() + ": " + md.getValue());
+            }
+        }
+        if (docstruct.getAllPersons() != null) {
+            for (Person p : docstruct.getAllPersons()) {
+                description.add(p.getType().getName() + ": " + p.getLastname() + ", " + p.getFirstname());
+            }
+        }
+        if (docstruct.getAllCorporates() != null) {
+            for (Corporate c : docstruct.getAllCorporates()) {
+                description.add(c.getType().getName() + ": " + c.getMainName());
+            }
+        }
+        if (docstruct.getAllMetadataGroups() != null) {
+            for (MetadataGroup mg : docstruct.getAllMetadataGroups()) {
+                description.add(mg.getType().getName());
+            }
+        }
+        return description;
+    }
+
+    /**
+     * Describes the content of a METS file independent from the IDs and the order of the MODS elements: the files, the pages, the logical
+     * structure with its MODS records, the links between them and the values of the DFG viewer sections.
+     */
+    private List<String> describeMets(Path file) throws Exception {
+        Element mets = XmlTools.readDocumentFromFile(file).getRootElement();
+        List<String> description = new ArrayList<>();
+
+        Map<String, List<String>> records = new HashMap<>();
+        for (Element dmdSec : mets.getChildren("dmdSec", metsNamespace)) {
+            List<String> values = new ArrayList<>();
+            for (Element mods : dmdSec.getChild("mdWrap", metsNamespace).getChild("xmlData", metsNamespace).getChildren()) {
+                describeLeaves(mods, "", values);
+            }
+            Collections.sort(values);
+            records.put(dmdSec.getAttributeValue("ID"), values);
+        }
+
+        List<String> viewerValues = new ArrayList<>();
+        describeLeaves(mets.getChild("amdSec", metsNamespace), "", viewerValues);
+        viewerValues.removeIf(value -> !value.contains("dv:") || value.endsWith("="));
+        Collections.sort(viewerValues);
+        description.addAll(viewerValues);
+
+        Map<String, String> filesById = new HashMap<>();
+        for (Element fileGrp : mets.getChild("fileSec", metsNamespace).getChildren("fileGrp", metsNamespace)) {
+            for (Element metsFile : fileGrp.getChildren("file", metsNamespace)) {
+                String href = metsFile.getChild("FLocat", metsNamespace).getAttributeValue("href", xlinkNamespace);
+                String fileDescription = fileGrp.getAttributeValue("USE") + " " + href + " " + metsFile.getAttributeValue("MIMETYPE");
+                filesById.put(metsFile.getAttributeValue("ID"), fileDescription);
+                description.add(fileDescription);
+            }
+        }
+
+        Map<String, String> divsById = new HashMap<>();
+        for (Element structMap : mets.getChildren("structMap", metsNamespace)) {
+            describeDivs(structMap.getChild("div", metsNamespace), 0, records, filesById, divsById, description);
+        }
+
+        List<String> links = new ArrayList<>();
+        for (Element smLink : mets.getChild("structLink", metsNamespace).getChildren()) {
+            links.add(divsById.get(smLink.getAttributeValue("from", xlinkNamespace)) + " -> "
+                    + divsById.get(smLink.getAttributeValue("to", xlinkNamespace)));
+        }
+        Collections.sort(links);
+        description.addAll(links);
+        return description;
+    }
+
+    private void describeDivs(Element div, int depth, Map<String, List<String>> records, Map<String, String> filesById,
+            Map<String, String> divsById, List<String> description) {
+        String divDescription = depth + " " + div.getAttributeValue("TYPE") + " " + div.getAttributeValue("LABEL") + " "
+                + div.getAttributeValue("ORDER") + " " + div.getAttributeValue("ORDERLABEL");
+        divsById.put(div.getAttributeValue("ID"), divDescription);
+        description.add(divDescription);
+        if (div.getAttributeValue("DMDID") != null) {
+            description.addAll(records.get(div.getAttributeValue("DMDID")));
+        }
+        for (Element fptr : div.getChildren("fptr", metsNamespace)) {
+            description.add(filesById.get(fptr.getAttributeValue("FILEID")));
+        }
+        for (Element child : div.getChildren("div", metsNamespace)) {
+            describeDivs(child, depth + 1, records, filesById, divsById, description);
+        }
+    }
+
+    private void describeLeaves(Element element, String path, List<String> values) {
+        List<String> attributes = new ArrayList<>();
+        for (Attribute attribute : element.getAttributes()) {
+            attributes.add(attribute.getQualifiedName() + "=" + attribute.getValue());
+        }
+        Collections.sort(attributes);
+        String elementPath = path + "/" + element.getQualifiedName() + attributes;
+        if (element.getChildren().isEmpty()) {
+            values.add(elementPath + "=" + element.getTextTrim());
+        }
+        for (Element child : element.getChildren()) {
+            describeLeaves(child, elementPath, values);
+        }
+    }
+
+    private String readWithoutTimestamps(Path file) throws Exception {
+        String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        return content.replaceAll("(CREATEDATE|LASTMODDATE)=\"[^\"]*\"", "");
+    }
+
+    @Test
+    public void testExportOfGeneratedVolume() throws Exception {
+        Path imageFolder = processDirectory.toPath().resolve("images").resolve("processtitle_media");
+        Path altoFolder = processDirectory.toPath().resolve("ocr").resolve("processtitle_xml");
+        new NewspaperVolumeGenerator().issues(50)
+                .pagesPerIssue(4)
+                .supplementsPerIssue(1)
+                .metadataGroups(3)
+                .generate(processDirectory.toPath(), imageFolder, altoFolder);
+
+        NewspaperExportPlugin plugin = new NewspaperExportPlugin();
+        assertTrue(plugin.startExport(process, exportFolder.toString()));
+
+        File[] metsFiles = exportFolder.listFiles((dir, name) -> name.startsWith("301877785_") && name.endsWith(".xml"));
+        assertEquals(50, metsFiles.length);
+        File[] imageFolders = exportFolder.listFiles((dir, name) -> name.endsWith("_tif"));
+        File[] altoFolders = exportFolder.listFiles((dir, name) -> name.endsWith("_alto"));
+        assertEquals(50, imageFolders.length);
+        assertEquals(50, altoFolders.length);
+        for (int i = 0; i < imageFolders.length; i++) {
+            assertEquals(4, imageFolders[i].list().length);
+            assertEquals(4, altoFolders[i].list().length);
+        }
+    }
+
+    @Test
+    public void testGetTargetRoot() {
+        assertEquals(Paths.get("/tmp/export"), NewspaperExportPlugin.getTargetRoot("/tmp/export/$(meta.CatalogIDDigital)_tif/"));
+        assertEquals(Paths.get("/tmp"), NewspaperExportPlugin.getTargetRoot("/tmp/images_$(meta.CatalogIDDigital)/"));
+        assertEquals(Paths.get("/tmp/images/"), NewspaperExportPlugin.getTargetRoot("/tmp/images/"));
+    }
+
+    /**
+     * Exports generated volumes with 1, 50 and 365 issues and compares the duration and allocation per issue. The test takes some minutes
+     * and depends on the load of the machine, it only runs with the profile scaling.
+     */
+    @Test
+    public void testExportScalesLinearly() throws Exception {
+        Assume.assumeTrue("Scaling tests are only run with the profile scaling", Boolean.getBoolean("newspaper.scalingTests"));
+        Path imageFolder = processDirectory.toPath().resolve("images").resolve("processtitle_media");
+        Path altoFolder = processDirectory.toPath().resolve("ocr").resolve("processtitle_xml");
+        int[] issueCounts = { 1, 50, 365 };
+        long[] durations = new long[issueCounts.length];
+        long[] allocations = new long[issueCounts.length];
+        // the export runs on the calling thread with the default of one thread and one transfer
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        NewspaperExportPlugin plugin = new NewspaperExportPlugin();
+        for (int i = 0; i < issueCounts.length; i++) {
+            new NewspaperVolumeGenerator().issues(issueCounts[i])
+                    .pagesPerIssue(4)
+                    .supplementsPerIssue(1)
+                    .metadataGroups(3)
+                    .generate(processDirectory.toPath(), imageFolder, altoFolder);
+            durations[i] = Long.MAX_VALUE;
+            allocations[i] = Long.MAX_VALUE;
+            // best of two runs, the first runs also warm up the jvm
+            for (int run = 0; run < 2; run++) {
+                FileUtils.cleanDirectory(exportFolder);
+                long before = threadBean.getThreadAllocatedBytes(threadId);
+                long start = System.nanoTime();
+                assertTrue(plugin.startExport(process, exportFolder.toString()));
+                durations[i] = Math.min(durations[i], System.nanoTime() - start);
+                allocations[i] = Math.min(allocations[i], threadBean.getThreadAllocatedBytes(threadId) - before);
+            }
+            File[] metsFiles = exportFolder.listFiles((dir, name) -> name.startsWith("301877785_") && name.endsWith(".xml"));
+            assertEquals(issueCounts[i], metsFiles.length);
+            log.info("Export of {} issues: {} ms, {} bytes", issueCounts[i], durations[i] / 1_000_000, allocations[i]);
+        }
+
+        // the costs of an additional issue must not grow with the size of the volume
+        double smallVolumeDuration = (durations[1] - durations[0]) / (double) (issueCounts[1] - issueCounts[0]);
+        double largeVolumeDuration = (durations[2] - durations[1]) / (double) (issueCounts[2] - issueCounts[1]);
+        double smallVolumeAllocation = (allocations[1] - allocations[0]) / (double) (issueCounts[1] - issueCounts[0]);
+        double largeVolumeAllocation = (allocations[2] - allocations[1]) / (double) (issueCounts[2] - issueCounts[1]);
+        // the allocation is reproducible, the duration gets a larger tolerance for busy build servers
+        assertTrue("Allocation per issue grows from " + smallVolumeAllocation + " to " + largeVolumeAllocation + " bytes",
+                largeVolumeAllocation <= 2 * smallVolumeAllocation);
+        assertTrue("Duration per issue grows from " + smallVolumeDuration + " to " + largeVolumeDuration + " ns",
+                largeVolumeDuration <= 3 * smallVolumeDuration);
     }
 
     private XMLConfiguration getConfig() {
@@ -569,26 +1305,16 @@ public class NewspaperExportPluginTest {
         PowerMock.replay(ConfigurationHelper.class);
         PowerMock.mockStatic(VariableReplacer.class);
 
-        // for each issue
-        for (int i = 0; i < 14; i++) {
-            // variable replacer for mets parameter
-            EasyMock.expect(VariableReplacer.simpleReplace(EasyMock.anyString(), EasyMock.anyObject())).andReturn("mets parameter").times(14);
-
-            // current identifier
-            EasyMock.expect(VariableReplacer.simpleReplace(EasyMock.anyString(), EasyMock.anyObject()))
-                    .andAnswer(
-                            new IAnswer<String>() {
-                                @Override
-                                public String answer() throws Throwable {
-                                    return EasyMock.getCurrentArgument(0);
-                                }
-                            })
-                    .times(2);
-
-            // media and ocr folder
-            EasyMock.expect(VariableReplacer.simpleReplace(EasyMock.anyString(), EasyMock.anyObject())).andReturn("processtitle_media");
-            EasyMock.expect(VariableReplacer.simpleReplace(EasyMock.anyString(), EasyMock.anyObject())).andReturn("processtitle_xml");
-        }
+        // return the input unchanged, so the folder names and identifiers resolve independently from the order of the calls
+        EasyMock.expect(VariableReplacer.simpleReplace(EasyMock.anyString(), EasyMock.anyObject()))
+                .andAnswer(
+                        new IAnswer<String>() {
+                            @Override
+                            public String answer() throws Throwable {
+                                return EasyMock.getCurrentArgument(0);
+                            }
+                        })
+                .anyTimes();
         List<MatchResult> results = new ArrayList<>();
         EasyMock.expect(VariableReplacer.findRegexMatches(EasyMock.anyString(), EasyMock.anyString())).andReturn(results).anyTimes();
         PowerMock.replay(VariableReplacer.class);
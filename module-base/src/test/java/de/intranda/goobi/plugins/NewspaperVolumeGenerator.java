@@ -0,0 +1,244 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Creates the metadata files of a newspaper process with any number of issues for load and scaling tests. The volume has the structure of
+ * the meta.xml of the test resources: one year with consecutive daily issues, each issue has its own pages and optionally supplements
+ * that reference pages of the issue. The metadata groups are added to the newspaper, the ruleset does not allow groups in issues.
+ */
+public class NewspaperVolumeGenerator {
+
+    private static final String METS_START = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<mets:mets OBJID=\"\" xmlns:mets=\"http://www.loc.gov/METS/\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\""
+            + " xmlns:mods=\"http://www.loc.gov/mods/v3\" xmlns:goobi=\"http://meta.goobi.org/v1.5.1/\""
+            + " xmlns:xlink=\"http://www.w3.org/1999/xlink\">\n"
+            + "<mets:metsHdr CREATEDATE=\"2024-12-06T12:49:19Z\"><mets:agent OTHERTYPE=\"SOFTWARE\" ROLE=\"CREATOR\" TYPE=\"OTHER\">"
+            + "<mets:name>NewspaperVolumeGenerator</mets:name></mets:agent></mets:metsHdr>\n";
+
+    private static final String ALTO = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<alto xmlns=\"http://www.loc.gov/standards/alto/ns-v2#\"><Layout><Page ID=\"Page1\" PHYSICAL_IMG_NR=\"1\"/></Layout></alto>\n";
+
+    private static final DateTimeFormatter TITLE_DATE = DateTimeFormatter.ofPattern("EEEE, 'den' dd. MMMM yyyy", Locale.GERMAN);
+
+    private int issues = 1;
+    private int pagesPerIssue = 4;
+    private int supplementsPerIssue;
+    private int metadataGroups;
+    private int imageSize = 1024;
+    private String recordId = "301877785";
+    private int year = 1867;
+
+    public NewspaperVolumeGenerator issues(int issues) {
+        this.issues = issues;
+        return this;
+    }
+
+    public NewspaperVolumeGenerator pagesPerIssue(int pagesPerIssue) {
+        this.pagesPerIssue = pagesPerIssue;
+        return this;
+    }
+
+    public NewspaperVolumeGenerator supplementsPerIssue(int supplementsPerIssue) {
+        this.supplementsPerIssue = supplementsPerIssue;
+        return this;
+    }
+
+    /**
+     * Number of Location groups of the newspaper.
+     */
+    public NewspaperVolumeGenerator metadataGroups(int metadataGroups) {
+        this.metadataGroups = metadataGroups;
+        return this;
+    }
+
+    /**
+     * Size of the dummy images in bytes.
+     */
+    public NewspaperVolumeGenerator imageSize(int imageSize) {
+        this.imageSize = imageSize;
+        return this;
+    }
+
+    public NewspaperVolumeGenerator recordId(String recordId) {
+        this.recordId = recordId;
+        return this;
+    }
+
+    public NewspaperVolumeGenerator year(int year) {
+        this.year = year;
+        return this;
+    }
+
+    /**
+     * Writes meta.xml and meta_anchor.xml into the process folder and a dummy image and ALTO file per page into the image and ALTO folder.
+     * Existing files are overwritten.
+     */
+    public void generate(Path processFolder, Path imageFolder, Path altoFolder) throws IOException {
+        Files.createDirectories(processFolder);
+        writeAnchor(processFolder.resolve("meta_anchor.xml"));
+        writeVolume(processFolder.resolve("meta.xml"), imageFolder);
+        if (imageFolder != null) {
+            Files.createDirectories(imageFolder);
+            byte[] image = new byte[imageSize];
+            Arrays.fill(image, (byte) 0x2a);
+            for (int page = 1; page <= issues * pagesPerIssue; page++) {
+                Files.write(imageFolder.resolve(getBasename(page) + ".tif"), image);
+            }
+        }
+        if (altoFolder != null) {
+            Files.createDirectories(altoFolder);
+            byte[] alto = ALTO.getBytes(StandardCharsets.UTF_8);
+            for (int page = 1; page <= issues * pagesPerIssue; page++) {
+                Files.write(altoFolder.resolve(getBasename(page) + ".xml"), alto);
+            }
+        }
+    }
+
+    private void writeAnchor(Path file) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write(METS_START);
+            startDmdSec(out, "DMDLOG_0000");
+            writeMetadata(out, "TitleDocMain", "St. Ingberter Anzeiger");
+            writeMetadata(out, "MainTitle", "St. Ingberter Anzeiger");
+            writeMetadata(out, "DocLanguage", "ger");
+            writeMetadata(out, "CatalogIDSource", recordId);
+            writeMetadata(out, "CatalogIDDigital", recordId);
+            writeMetadata(out, "CatalogIDPeriodicalDB", "1486830-1");
+            writeMetadata(out, "CatalogIDPeriodicalDBDigital", "3201144-1");
+            writeMetadata(out, "UseAndReproductionLicense", "PDM");
+            out.write("<goobi:metadata name=\"Editor\" type=\"person\"><goobi:lastName>Editor</goobi:lastName>"
+                    + "<goobi:firstName>Editor</goobi:firstName><goobi:displayName>Editor, Editor</goobi:displayName></goobi:metadata>\n");
+            for (int group = 1; group <= metadataGroups; group++) {
+                out.write("<goobi:metadata name=\"Location\" type=\"group\">");
+                writeMetadata(out, "physicalLocation", "Stadtarchiv St. Ingbert");
+                writeMetadata(out, "shelfLocator", "Zt 23-" + group);
+                out.write("</goobi:metadata>\n");
+            }
+            endDmdSec(out);
+            out.write("<mets:structMap TYPE=\"LOGICAL\"><mets:div DMDID=\"DMDLOG_0000\" ID=\"LOG_0000\" TYPE=\"Newspaper\">"
+                    + "<mets:div ID=\"LOG_0001\" TYPE=\"NewspaperVolume\"><mets:mptr LOCTYPE=\"URL\" xlink:href=\"\"/></mets:div>"
+                    + "</mets:div></mets:structMap>\n");
+            out.write("</mets:mets>\n");
+        }
+    }
+
+    private void writeVolume(Path file, Path imageFolder) throws IOException {
+        int pages = issues * pagesPerIssue;
+        String imagePath = imageFolder == null ? "/images" : imageFolder.toAbsolutePath().toString();
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write(METS_START);
+
+            startDmdSec(out, "DMDLOG_0001");
+            writeMetadata(out, "TitleDocMain", "St. Ingberter Anzeiger");
+            writeMetadata(out, "CatalogIDDigital", recordId + "_" + year);
+            out.write("<goobi:metadata anchorId=\"true\" name=\"CatalogIDDigital\">" + recordId + "</goobi:metadata>\n");
+            writeMetadata(out, "CatalogIDSource", recordId + "_" + year);
+            writeMetadata(out, "CurrentNoSorting", String.valueOf(year));
+            writeMetadata(out, "DocLanguage", "ger");
+            endDmdSec(out);
+
+            // the dmd sections of an issue are followed by the sections of its supplements
+            LocalDate date = LocalDate.of(year, 1, 1);
+            for (int issue = 0; issue < issues; issue++) {
+                startDmdSec(out, getDmdId(issue, 0));
+                writeMetadata(out, "PartNumber", "Nro. " + (issue + 1) + ".");
+                writeMetadata(out, "DateIssued", date.plusDays(issue).toString());
+                writeMetadata(out, "CurrentNo", String.valueOf(issue + 1));
+                writeMetadata(out, "TitleDocMain", "Ausgabe vom " + TITLE_DATE.format(date.plusDays(issue)) + ".");
+                endDmdSec(out);
+                for (int supplement = 1; supplement <= supplementsPerIssue; supplement++) {
+                    startDmdSec(out, getDmdId(issue, supplement));
+                    writeMetadata(out, "TitleDocMain", supplement + ". Beilage");
+                    endDmdSec(out);
+                }
+            }
+            startDmdSec(out, "DMDPHYS_0000");
+            writeMetadata(out, "pathimagefiles", "file://" + imagePath);
+            endDmdSec(out);
+
+            out.write("<mets:fileSec><mets:fileGrp USE=\"LOCAL\">\n");
+            for (int page = 1; page <= pages; page++) {
+                out.write("<mets:file ID=\"FILE_" + format(page) + "\" MIMETYPE=\"image/tiff\"><mets:FLocat LOCTYPE=\"URL\" xlink:href=\"file://"
+                        + imagePath + "/" + getBasename(page) + ".tif\"/></mets:file>\n");
+            }
+            out.write("</mets:fileGrp></mets:fileSec>\n");
+
+            out.write("<mets:structMap TYPE=\"LOGICAL\"><mets:div ID=\"LOG_0000\" TYPE=\"Newspaper\"><mets:mptr LOCTYPE=\"URL\" xlink:href=\"\"/>\n");
+            out.write("<mets:div DMDID=\"DMDLOG_0001\" ID=\"LOG_0001\" TYPE=\"NewspaperVolume\">\n");
+            for (int issue = 0; issue < issues; issue++) {
+                out.write("<mets:div DMDID=\"" + getDmdId(issue, 0) + "\" ID=\"" + getLogId(issue, 0) + "\" TYPE=\"NewspaperIssue\">");
+                for (int supplement = 1; supplement <= supplementsPerIssue; supplement++) {
+                    out.write("<mets:div DMDID=\"" + getDmdId(issue, supplement) + "\" ID=\"" + getLogId(issue, supplement)
+                            + "\" TYPE=\"NewspaperSupplement\"/>");
+                }
+                out.write("</mets:div>\n");
+            }
+            out.write("</mets:div></mets:div></mets:structMap>\n");
+
+            out.write("<mets:structMap TYPE=\"PHYSICAL\"><mets:div DMDID=\"DMDPHYS_0000\" ID=\"PHYS_0000\" TYPE=\"BoundBook\">\n");
+            for (int page = 1; page <= pages; page++) {
+                out.write("<mets:div ID=\"PHYS_" + format(page) + "\" ORDER=\"" + page + "\" ORDERLABEL=\"uncounted\" TYPE=\"page\">"
+                        + "<mets:fptr FILEID=\"FILE_" + format(page) + "\"/></mets:div>\n");
+            }
+            out.write("</mets:div></mets:structMap>\n");
+
+            out.write("<mets:structLink>\n");
+            for (int page = 1; page <= pages; page++) {
+                writeLink(out, "LOG_0001", page);
+            }
+            for (int issue = 0; issue < issues; issue++) {
+                int firstPage = issue * pagesPerIssue + 1;
+                for (int page = firstPage; page < firstPage + pagesPerIssue; page++) {
+                    writeLink(out, getLogId(issue, 0), page);
+                }
+                // each supplement starts on its own page of the issue, if there are enough pages
+                for (int supplement = 1; supplement <= supplementsPerIssue && pagesPerIssue > 0; supplement++) {
+                    writeLink(out, getLogId(issue, supplement), firstPage + (supplement - 1) % pagesPerIssue);
+                }
+            }
+            out.write("</mets:structLink>\n");
+            out.write("</mets:mets>\n");
+        }
+    }
+
+    private String getDmdId(int issue, int supplement) {
+        return "DMDLOG_" + format(2 + issue * (supplementsPerIssue + 1) + supplement);
+    }
+
+    private String getLogId(int issue, int supplement) {
+        return "LOG_" + format(2 + issue * (supplementsPerIssue + 1) + supplement);
+    }
+
+    private static String getBasename(int page) {
+        return String.format("%08d", page);
+    }
+
+    private static String format(int number) {
+        return String.format("%04d", number);
+    }
+
+    private static void startDmdSec(Writer out, String id) throws IOException {
+        out.write("<mets:dmdSec ID=\"" + id + "\"><mets:mdWrap MDTYPE=\"MODS\"><mets:xmlData><mods:mods><mods:extension><goobi:goobi>\n");
+    }
+
+    private static void endDmdSec(Writer out) throws IOException {
+        out.write("</goobi:goobi></mods:extension></mods:mods></mets:xmlData></mets:mdWrap></mets:dmdSec>\n");
+    }
+
+    private static void writeMetadata(Writer out, String name, String value) throws IOException {
+        out.write("<goobi:metadata name=\"" + name + "\">" + value + "</goobi:metadata>\n");
+    }
+
+    private static void writeLink(Writer out, String logId, int page) throws IOException {
+        out.write("<mets:smLink xlink:to=\"PHYS_" + format(page) + "\" xlink:from=\"" + logId + "\"/>\n");
+    }
+}
@@ -0,0 +1,107 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.Metadata;
+import ugh.dl.Prefs;
+
+public class PurlTemplateTest {
+
+    private static final String PATTERN = "https://viewer.example.org/piresolver?id={meta.newspaper.CatalogIDDigital}"
+            + "&year={meta.volume.CurrentNoSorting}&issue={meta.issue.CurrentNo}";
+
+    private Prefs prefs;
+    private DocStruct newspaper;
+    private DocStruct volume;
+
+    @Before
+    public void setUp() throws Exception {
+        String resourcesFolder = "src/test/resources/";
+        if (!Files.exists(Paths.get(resourcesFolder))) {
+            resourcesFolder = "target/test-classes/";
+        }
+        prefs = new Prefs();
+        prefs.loadPrefs(resourcesFolder + "ruleset_newspaper.xml");
+
+        DigitalDocument dd = new DigitalDocument();
+        newspaper = dd.createDocStruct(prefs.getDocStrctTypeByName("Newspaper"));
+        addMetadata(newspaper, "CatalogIDDigital", "301877785");
+        volume = dd.createDocStruct(prefs.getDocStrctTypeByName("NewspaperVolume"));
+        addMetadata(volume, "CurrentNoSorting", "1867");
+    }
+
+    @Test
+    public void testRender() throws Exception {
+        PurlTemplate template = PurlTemplate.compile(PATTERN, PurlTemplate.MissingValue.EMPTY, null).resolve(newspaper, volume);
+
+        assertEquals("https://viewer.example.org/piresolver?id=301877785&year=1867&issue=2", template.render(createIssue("2")));
+        assertEquals("https://viewer.example.org/piresolver?id=301877785&year=1867&issue=3", template.render(createIssue("3")));
+    }
+
+    @Test
+    public void testRenderWithoutVariables() throws Exception {
+        PurlTemplate template = PurlTemplate.compile("https://example.com/static", PurlTemplate.MissingValue.EMPTY, null).resolve(newspaper, volume);
+        assertEquals("https://example.com/static", template.render(createIssue("1")));
+    }
+
+    @Test
+    public void testDuplicateVariable() throws Exception {
+        PurlTemplate template = PurlTemplate.compile("{meta.issue.CurrentNo}-{meta.issue.CurrentNo}", PurlTemplate.MissingValue.EMPTY, null)
+                .resolve(newspaper, volume);
+        assertEquals("5-5", template.render(createIssue("5")));
+    }
+
+    @Test
+    public void testMissingValueEmpty() throws Exception {
+        PurlTemplate template = PurlTemplate.compile(PATTERN, PurlTemplate.MissingValue.EMPTY, null).resolve(newspaper, volume);
+        assertEquals("https://viewer.example.org/piresolver?id=301877785&year=1867&issue=", template.render(createIssue(null)));
+    }
+
+    @Test
+    public void testMissingValueDefault() throws Exception {
+        PurlTemplate template = PurlTemplate.compile(PATTERN, PurlTemplate.MissingValue.DEFAULT, "unknown").resolve(newspaper, volume);
+        assertEquals("https://viewer.example.org/piresolver?id=301877785&year=1867&issue=unknown", template.render(createIssue(null)));
+    }
+
+    @Test(expected = PurlTemplate.MissingValueException.class)
+    public void testMissingValueFail() throws Exception {
+        PurlTemplate template = PurlTemplate.compile(PATTERN, PurlTemplate.MissingValue.FAIL, null).resolve(newspaper, volume);
+        template.render(createIssue(null));
+    }
+
+    @Test(expected = PurlTemplate.MissingValueException.class)
+    public void testMissingNewspaperValueFailsOnResolve() throws Exception {
+        PurlTemplate template = PurlTemplate.compile("{meta.newspaper.PublisherName}", PurlTemplate.MissingValue.FAIL, null);
+        template.resolve(newspaper, volume);
+    }
+
+    @Test
+    public void testMissingValueFromConfiguration() {
+        assertEquals(PurlTemplate.MissingValue.EMPTY, PurlTemplate.MissingValue.fromConfiguration(null));
+        assertEquals(PurlTemplate.MissingValue.EMPTY, PurlTemplate.MissingValue.fromConfiguration("empty"));
+        assertEquals(PurlTemplate.MissingValue.FAIL, PurlTemplate.MissingValue.fromConfiguration("fail"));
+        assertEquals(PurlTemplate.MissingValue.DEFAULT, PurlTemplate.MissingValue.fromConfiguration("Default"));
+    }
+
+    private DocStruct createIssue(String number) throws Exception {
+        DocStruct issue = new DigitalDocument().createDocStruct(prefs.getDocStrctTypeByName("NewspaperIssue"));
+        if (number != null) {
+            addMetadata(issue, "CurrentNo", number);
+        }
+        return issue;
+    }
+
+    private void addMetadata(DocStruct docstruct, String type, String value) throws Exception {
+        Metadata md = new Metadata(prefs.getMetadataTypeByName(type));
+        md.setValue(value);
+        docstruct.addMetadata(md);
+    }
+}
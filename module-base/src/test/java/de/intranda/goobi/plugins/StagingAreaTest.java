@@ -0,0 +1,124 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StagingAreaTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testPublish() throws Exception {
+        Path exportFolder = folder.newFolder("export").toPath();
+        Path image = exportFolder.resolve("issue_tif").resolve("00000001.tif");
+        Path mets = exportFolder.resolve("issue.xml");
+        Files.createDirectories(image.getParent());
+        Files.write(image, new byte[] { 9 });
+
+        StagingArea staging = StagingArea.create(exportFolder);
+        Path stagedImage = staging.stage("issue", image);
+        Path stagedMets = staging.stageLast("issue", mets);
+        assertTrue(stagedImage.startsWith(staging.getFolder(exportFolder)));
+        Files.write(stagedImage, new byte[] { 1, 2, 3 });
+        Files.write(stagedMets, new byte[] { 4, 5 });
+        // nothing is visible before the files are published
+        assertFalse(Files.exists(mets));
+        assertArrayEquals(new byte[] { 9 }, Files.readAllBytes(image));
+
+        staging.publish();
+        assertArrayEquals(new byte[] { 1, 2, 3 }, Files.readAllBytes(image));
+        assertArrayEquals(new byte[] { 4, 5 }, Files.readAllBytes(mets));
+        assertFalse(Files.exists(staging.getFolder(exportFolder)));
+        assertEquals(2, exportFolder.toFile().list().length);
+    }
+
+    @Test
+    public void testDiscardGroup() throws Exception {
+        Path exportFolder = folder.newFolder("export").toPath();
+        try (StagingArea staging = StagingArea.create(exportFolder)) {
+            Files.write(staging.stageLast("failed", exportFolder.resolve("failed.xml")), new byte[] { 1 });
+            Files.write(staging.stageLast("exported", exportFolder.resolve("exported.xml")), new byte[] { 2 });
+            staging.discard("failed");
+            staging.publish();
+        }
+        assertFalse(Files.exists(exportFolder.resolve("failed.xml")));
+        assertTrue(Files.exists(exportFolder.resolve("exported.xml")));
+    }
+
+    @Test
+    public void testCloseWithoutPublish() throws Exception {
+        Path exportFolder = folder.newFolder("export").toPath();
+        Path stagingFolder;
+        try (StagingArea staging = StagingArea.create(exportFolder)) {
+            stagingFolder = staging.getFolder(exportFolder);
+            Files.write(staging.stageLast("issue", exportFolder.resolve("issue.xml")), new byte[] { 1 });
+        }
+        assertFalse(Files.exists(stagingFolder));
+        assertEquals(0, exportFolder.toFile().list().length);
+    }
+
+    @Test
+    public void testStagingFolderPerRoot() throws Exception {
+        Path exportFolder = folder.newFolder("export").toPath();
+        Path imageRoot = folder.newFolder("images").toPath();
+        try (StagingArea staging = StagingArea.create(exportFolder, imageRoot)) {
+            Path stagedMets = staging.stageLast("issue", exportFolder.resolve("issue.xml"));
+            Path stagedImage = staging.stage("issue", imageRoot.resolve("issue_tif").resolve("00000001.tif"));
+            // each file is staged in a hidden folder inside of its own root
+            assertEquals(exportFolder, staging.getFolder(exportFolder).getParent());
+            assertEquals(imageRoot, staging.getFolder(imageRoot).getParent());
+            assertTrue(staging.getFolder(imageRoot).getFileName().toString().startsWith("."));
+            assertTrue(stagedMets.startsWith(staging.getFolder(exportFolder)));
+            assertTrue(stagedImage.startsWith(staging.getFolder(imageRoot)));
+        }
+    }
+
+    @Test
+    public void testCrossDeviceFallbackPerRoot() throws Exception {
+        Path exportFolder = folder.newFolder("export").toPath();
+        Path imageRoot = folder.newFolder("images").toPath();
+        Path firstImage = imageRoot.resolve("issue_tif").resolve("00000001.tif");
+        Path secondImage = imageRoot.resolve("issue_tif").resolve("00000002.tif");
+        Path mets = exportFolder.resolve("issue.xml");
+        List<Path> atomicMoves = new ArrayList<>();
+        // the image root behaves like a folder on another file system
+        StagingArea staging = new StagingArea(Arrays.asList(exportFolder, imageRoot)) {
+            @Override
+            void moveAtomically(Path staged, Path target) throws IOException {
+                if (target.startsWith(imageRoot)) {
+                    throw new AtomicMoveNotSupportedException(staged.toString(), target.toString(), "Invalid cross-device link");
+                }
+                super.moveAtomically(staged, target);
+                atomicMoves.add(target);
+            }
+        };
+        Files.write(staging.stage("issue", firstImage), new byte[] { 1 });
+        Files.write(staging.stage("issue", secondImage), new byte[] { 2 });
+        Files.write(staging.stageLast("issue", mets), new byte[] { 3 });
+        Path imageStaging = staging.getFolder(imageRoot);
+
+        assertEquals(3, staging.publish());
+        assertArrayEquals(new byte[] { 1 }, Files.readAllBytes(firstImage));
+        assertArrayEquals(new byte[] { 2 }, Files.readAllBytes(secondImage));
+        assertArrayEquals(new byte[] { 3 }, Files.readAllBytes(mets));
+        // the fallback of the image root does not affect the METS file in the export folder
+        assertEquals(Arrays.asList(mets), atomicMoves);
+        assertFalse(Files.exists(imageStaging));
+        assertFalse(Files.exists(staging.getFolder(exportFolder)));
+    }
+}
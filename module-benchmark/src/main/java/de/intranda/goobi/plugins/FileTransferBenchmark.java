@@ -0,0 +1,209 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import de.sub.goobi.helper.NIOFileUtils;
+
+/**
+ * Copies a batch of images or ALTO files into an empty folder with different strategies, file sizes and numbers of parallel transfers.
+ * TRANSFER_TO and HARDLINK use the {@link FileCopyPipeline} of the export, the other strategies run on their own thread pool. Source and
+ * target are in the folder of the system property benchmark.folder, default is the temp folder. The sources stay in the page cache and the
+ * targets are not synced, the results show the costs of the export and not the speed of the disk.
+ *
+ * <p>
+ * {@link #main(String[])} runs all combinations and writes the results to a CSV file. A batch contains {@link #getFilesPerBatch(long, int)}
+ * files, the throughput is the size of the batch divided by the score.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FileTransferBenchmark {
+
+    public enum Strategy {
+        // NIOFileUtils is the implementation of the StorageProvider for local files
+        STORAGE_PROVIDER,
+        TRANSFER_TO,
+        MEMORY_MAPPED,
+        HARDLINK
+    }
+
+    // the data of a batch is limited, large files are copied in smaller batches
+    private static final long BATCH_BYTES = 256L << 20;
+    private static final int MAX_BATCH_FILES = 64;
+
+    // 50 KB ALTO file, 8 MB JPEG, 60 MB TIFF
+    @Param({ "51200", "8388608", "62914560" })
+    public int fileSize;
+
+    @Param({ "STORAGE_PROVIDER", "TRANSFER_TO", "MEMORY_MAPPED", "HARDLINK" })
+    public Strategy strategy;
+
+    @Param({ "1", "4", "8" })
+    public int transfers;
+
+    private Path folder;
+    private Path targetFolder;
+    private final List<Path> sources = new ArrayList<>();
+    private final List<Path> targets = new ArrayList<>();
+    private FileCopyPipeline pipeline;
+    private ExecutorService executor;
+    private final NIOFileUtils storage = new NIOFileUtils();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Path parent = Paths.get(System.getProperty("benchmark.folder", System.getProperty("java.io.tmpdir")));
+        folder = Files.createTempDirectory(parent, "file-transfer");
+        Path sourceFolder = Files.createDirectory(folder.resolve("source"));
+        targetFolder = Files.createDirectory(folder.resolve("target"));
+
+        byte[] content = new byte[fileSize];
+        new Random(fileSize).nextBytes(content);
+        for (int i = 0; i < getFilesPerBatch(fileSize, transfers); i++) {
+            String name = String.format("%08d", i + 1);
+            Path source = sourceFolder.resolve(name);
+            Files.write(source, content);
+            sources.add(source);
+            targets.add(targetFolder.resolve(name));
+        }
+        if (strategy == Strategy.TRANSFER_TO || strategy == Strategy.HARDLINK) {
+            pipeline = new FileCopyPipeline(transfers, strategy == Strategy.HARDLINK ? FileCopyPipeline.LinkMode.HARDLINK
+                    : FileCopyPipeline.LinkMode.COPY, true);
+        } else if (transfers > 1) {
+            executor = Executors.newFixedThreadPool(transfers);
+        }
+    }
+
+    /**
+     * Each batch is written into an empty folder, like the first export of an issue.
+     */
+    @Setup(Level.Invocation)
+    public void deleteTargets() throws IOException {
+        for (Path target : targets) {
+            Files.deleteIfExists(target);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (pipeline != null) {
+            pipeline.close();
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        // a copy must never write through a link into its source
+        for (Path source : sources) {
+            if (Files.size(source) != fileSize) {
+                throw new IllegalStateException("Source " + source + " was changed by the benchmark");
+            }
+        }
+        try (Stream<Path> files = Files.walk(folder)) {
+            for (Path file : (Iterable<Path>) files.sorted(Collections.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public void copyBatch() throws IOException, InterruptedException, ExecutionException {
+        if (pipeline != null) {
+            for (int i = 0; i < sources.size(); i++) {
+                pipeline.copy(sources.get(i), targets.get(i));
+            }
+            pipeline.await();
+        } else if (executor == null) {
+            for (int i = 0; i < sources.size(); i++) {
+                copy(sources.get(i), targets.get(i));
+            }
+        } else {
+            List<Future<Void>> futures = new ArrayList<>(sources.size());
+            for (int i = 0; i < sources.size(); i++) {
+                Path source = sources.get(i);
+                Path target = targets.get(i);
+                futures.add(executor.submit(() -> {
+                    copy(source, target);
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        }
+    }
+
+    private void copy(Path source, Path target) throws IOException {
+        if (strategy == Strategy.STORAGE_PROVIDER) {
+            storage.copyFile(source, target);
+        } else {
+            copyMapped(source, target);
+        }
+    }
+
+    private static void copyMapped(Path source, Path target) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = in.size();
+            MappedByteBuffer input = in.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            MappedByteBuffer output = out.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            output.put(input);
+        }
+    }
+
+    static int getFilesPerBatch(long fileSize, int transfers) {
+        return (int) Math.max(transfers, Math.min(MAX_BATCH_FILES, BATCH_BYTES / fileSize));
+    }
+
+    /**
+     * Runs all combinations and writes the results to the CSV file given as argument, default is file-transfer-&lt;timestamp&gt;.csv in the
+     * working directory.
+     */
+    public static void main(String[] args) throws RunnerException {
+        String report = args.length > 0 ? args[0]
+                : "file-transfer-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".csv";
+        Options options = new OptionsBuilder().include(FileTransferBenchmark.class.getSimpleName())
+                .resultFormat(ResultFormatType.CSV)
+                .result(report)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,104 @@
+package de.intranda.goobi.plugins;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.DocStructType;
+import ugh.exceptions.DocStructHasNoTypeException;
+import ugh.exceptions.MetadataTypeNotAllowedException;
+import ugh.exceptions.PreferencesException;
+import ugh.exceptions.TypeNotAllowedAsChildException;
+import ugh.exceptions.TypeNotAllowedForParentException;
+
+/**
+ * Validates the issues of the test volume and splits it into the digital documents of the issues, without writing any file. The linking of
+ * supplements is measured with synthetic issues of different sizes, the time per issue should grow linearly with the number of pages.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IssueExportBenchmark {
+
+    /**
+     * The missing metadata was already added by the fixture, the benchmark measures the checks of complete issues.
+     */
+    @Benchmark
+    public void validateIssues(NewspaperExportFixture fixture, Blackhole blackhole)
+            throws MetadataTypeNotAllowedException, DocStructHasNoTypeException {
+        for (DocStruct issue : fixture.issues) {
+            blackhole.consume(fixture.validator.validate(issue));
+        }
+    }
+
+    @Benchmark
+    public void splitVolume(NewspaperExportFixture fixture, Blackhole blackhole)
+            throws PreferencesException, TypeNotAllowedForParentException, TypeNotAllowedAsChildException {
+        for (int i = 0; i < fixture.issues.size(); i++) {
+            blackhole.consume(fixture.plugin.createIssueDocument(fixture.context, fixture.digitalDocument, fixture.inheritedMetadata,
+                    fixture.issues.get(i), fixture.issueIdentifiers.get(i), fixture.issueType, fixture.pageType, fixture.metsParameters, null));
+        }
+    }
+
+    @Benchmark
+    public DocStruct linkSupplements(NewspaperExportFixture fixture, SupplementIssue supplementIssue)
+            throws TypeNotAllowedForParentException, TypeNotAllowedAsChildException {
+        DigitalDocument target = new DigitalDocument();
+        DocStruct newIssue = target.createDocStruct(supplementIssue.exportIssueType);
+        fixture.plugin.addSupplements(fixture.context, supplementIssue.issue, newIssue, target, supplementIssue.pagesByImageName);
+        return newIssue;
+    }
+
+    /**
+     * An issue with a supplement on all of its pages.
+     */
+    @State(Scope.Benchmark)
+    public static class SupplementIssue {
+
+        @Param({ "1000", "16000" })
+        public int pages;
+
+        DocStruct issue;
+        DocStructType exportIssueType;
+        Map<String, DocStruct> pagesByImageName;
+
+        @Setup(Level.Trial)
+        public void setUp(NewspaperExportFixture fixture) throws TypeNotAllowedForParentException, TypeNotAllowedAsChildException {
+            DigitalDocument source = new DigitalDocument();
+            issue = source.createDocStruct(fixture.context.getPrefs().getDocStrctTypeByName("NewspaperIssue"));
+            DocStruct supplement = source.createDocStruct(fixture.context.getPrefs().getDocStrctTypeByName("NewspaperSupplement"));
+            issue.addChild(supplement);
+            exportIssueType = fixture.context.getPrefs().getDocStrctTypeByName("ExportNewspaperIssue");
+
+            DigitalDocument target = new DigitalDocument();
+            pagesByImageName = new HashMap<>();
+            for (int i = 1; i <= pages; i++) {
+                String imageName = String.format("%08d.tif", i);
+                DocStruct oldPage = source.createDocStruct(fixture.pageType);
+                oldPage.setImageName(imageName);
+                supplement.addReferenceTo(oldPage, "logical_physical");
+                DocStruct newPage = target.createDocStruct(fixture.pageType);
+                newPage.setImageName(imageName);
+                pagesByImageName.put(imageName, newPage);
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package de.intranda.goobi.plugins;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ugh.dl.DocStruct;
+import ugh.dl.MetadataGroup;
+import ugh.exceptions.MetadataTypeNotAllowedException;
+import ugh.exceptions.TypeNotAllowedForParentException;
+
+/**
+ * Copies metadata into a new issue, like the export does for every issue, page and supplement.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetadataCopyBenchmark {
+
+    @Benchmark
+    public DocStruct copyIssueMetadata(NewspaperExportFixture fixture) throws TypeNotAllowedForParentException {
+        DocStruct issue = fixture.createIssue();
+        fixture.plugin.copyMetadata(fixture.context, "", fixture.issues.get(0), issue);
+        return issue;
+    }
+
+    /**
+     * The metadata of the year and the newspaper that is added to each issue, copied from the template that is created once per volume.
+     * Compare it with {@link #copyParentMetadata(NewspaperExportFixture)} and -prof gc to see the allocation per issue.
+     */
+    @Benchmark
+    public DocStruct copyInheritedMetadata(NewspaperExportFixture fixture) throws TypeNotAllowedForParentException {
+        DocStruct issue = fixture.createIssue();
+        fixture.plugin.copyMetadata(fixture.context, "", fixture.inheritedMetadata, issue);
+        return issue;
+    }
+
+    /**
+     * The same metadata as {@link #copyInheritedMetadata(NewspaperExportFixture)}, translated from the year and the newspaper for each issue.
+     */
+    @Benchmark
+    public DocStruct copyParentMetadata(NewspaperExportFixture fixture) throws TypeNotAllowedForParentException {
+        DocStruct issue = fixture.createIssue();
+        fixture.plugin.copyMetadata(fixture.context, "year", fixture.newspaperYear, issue);
+        fixture.plugin.copyMetadata(fixture.context, "newspaper", fixture.newspaper, issue);
+        return issue;
+    }
+
+    /**
+     * Translates the newspaper metadata into the prefixed fields, including persons, corporates and groups.
+     */
+    @Benchmark
+    public DocStruct copyNewspaperMetadata(NewspaperExportFixture fixture) throws TypeNotAllowedForParentException {
+        DocStruct issue = fixture.createIssue();
+        fixture.plugin.copyMetadata(fixture.context, "newspaper", fixture.newspaper, issue);
+        return issue;
+    }
+
+    @Benchmark
+    public MetadataGroup cloneMetadataGroup(NewspaperExportFixture fixture) throws MetadataTypeNotAllowedException {
+        return fixture.plugin.cloneMetadataGroup(fixture.context, "newspaper", fixture.newspaperGroup);
+    }
+}
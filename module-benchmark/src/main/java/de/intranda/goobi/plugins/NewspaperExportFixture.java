@@ -0,0 +1,155 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.apache.commons.configuration.SubnodeConfiguration;
+import org.apache.commons.configuration.XMLConfiguration;
+import org.apache.commons.configuration.tree.xpath.XPathExpressionEngine;
+import org.goobi.beans.Process;
+import org.goobi.beans.Project;
+import org.goobi.beans.Ruleset;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import de.sub.goobi.helper.VariableReplacer;
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.DocStructType;
+import ugh.dl.Fileformat;
+import ugh.dl.MetadataGroup;
+import ugh.dl.Prefs;
+import ugh.exceptions.TypeNotAllowedForParentException;
+import ugh.fileformats.mets.MetsMods;
+
+/**
+ * Loads the newspaper of the test resources with the ruleset_newspaper.xml. The fixture does not need a Goobi installation: the ruleset is
+ * read directly and the variables of the METS header are not replaced.
+ */
+@State(Scope.Benchmark)
+public class NewspaperExportFixture {
+
+    private static final String[] RESOURCES = { "meta.xml", "meta_anchor.xml", "ruleset_newspaper.xml", "plugin_intranda_export_newspaper.xml" };
+
+    private Path folder;
+
+    NewspaperExportPlugin plugin;
+    NewspaperExportContext context;
+    DigitalDocument digitalDocument;
+    DocStruct newspaper;
+    DocStruct newspaperYear;
+    List<DocStruct> issues;
+    // identifiers of the issues, in the same order
+    List<String> issueIdentifiers;
+    DocStructType issueType;
+    DocStructType pageType;
+    DocStruct inheritedMetadata;
+    MetsHeaderParameters metsParameters;
+    MetadataGroup newspaperGroup;
+    IssueValidator validator;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        folder = Files.createTempDirectory("newspaper-benchmark");
+        for (String resource : RESOURCES) {
+            try (InputStream in = NewspaperExportFixture.class.getResourceAsStream("/" + resource)) {
+                if (in == null) {
+                    throw new IllegalStateException("Missing resource " + resource);
+                }
+                Files.copy(in, folder.resolve(resource), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        Prefs prefs = new Prefs();
+        prefs.loadPrefs(folder.resolve("ruleset_newspaper.xml").toString());
+        Fileformat fileformat = new MetsMods(prefs);
+        fileformat.read(folder.resolve("meta.xml").toString());
+        digitalDocument = fileformat.getDigitalDocument();
+
+        Process process = new Process();
+        process.setId(1);
+        process.setProjekt(new Project());
+        process.setRegelsatz(new Ruleset() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public Prefs getPreferences() {
+                return prefs;
+            }
+        });
+
+        XMLConfiguration globalSettings = new XMLConfiguration();
+        globalSettings.setDelimiterParsingDisabled(true);
+        globalSettings.load(folder.resolve("plugin_intranda_export_newspaper.xml").toFile());
+        globalSettings.setExpressionEngine(new XPathExpressionEngine());
+        SubnodeConfiguration projectSettings = globalSettings.configurationAt("//config[./project = '*']");
+        NewspaperExportConfiguration configuration = new NewspaperExportConfiguration(globalSettings, projectSettings);
+
+        plugin = new NewspaperExportPlugin();
+        context = new NewspaperExportContext(process, configuration);
+        newspaper = digitalDocument.getLogicalDocStruct();
+        newspaperYear = newspaper.getAllChildren().get(0);
+        issues = newspaperYear.getAllChildren();
+        issueType = prefs.getDocStrctTypeByName(configuration.getIssueDocstruct());
+        pageType = prefs.getDocStrctTypeByName("page");
+
+        MetadataExtractor.Values values = configuration.getMetadataExtractor().extract(newspaper);
+        validator = new IssueValidator(context, newspaper, newspaperYear, values.get(MetadataExtractor.Field.IDENTIFIER),
+                values.get(MetadataExtractor.Field.LANGUAGE), values.get(MetadataExtractor.Field.LICENCE));
+        // the first validation adds the missing metadata, the split works on the same issues as the export
+        issueIdentifiers = new ArrayList<>(issues.size());
+        for (DocStruct issue : issues) {
+            String issueIdentifier = validator.validate(issue);
+            if (issueIdentifier == null) {
+                throw new IllegalStateException("Invalid issue in the test data: " + context.getProblems());
+            }
+            issueIdentifiers.add(issueIdentifier);
+        }
+
+        inheritedMetadata = plugin.createInheritedMetadata(context, plugin.createNewspaperMetadata(context, newspaper, issueType), newspaperYear,
+                issueType);
+        metsParameters = new MetsHeaderParameters(context, new VariableReplacer(digitalDocument, prefs, process, null) {
+            @Override
+            public String replace(String value) {
+                return value;
+            }
+        }, configuration.getFilegroups());
+
+        List<MetadataGroup> groups = newspaper.getAllMetadataGroups() == null ? Collections.emptyList() : newspaper.getAllMetadataGroups();
+        for (MetadataGroup group : groups) {
+            if (context.getMetadataTypeTranslation().getMetadataGroupType("newspaper", group.getType()) != null) {
+                newspaperGroup = group;
+                break;
+            }
+        }
+        if (newspaperGroup == null) {
+            throw new IllegalStateException("The newspaper of the test data has no metadata group for the issues");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(folder)) {
+            for (Path file : (Iterable<Path>) files.sorted(Collections.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Creates an empty issue as target of the copied metadata.
+     */
+    DocStruct createIssue() throws TypeNotAllowedForParentException {
+        return new DigitalDocument().createDocStruct(issueType);
+    }
+}